@@ -0,0 +1,35 @@
+package com.gyamjoDechen.benchmark;
+
+import com.gyamjoDechen.controller.DatasetGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Temporary files of generated data for the benchmarks, deleted when the benchmark JVM exits.
+ */
+final class BenchmarkData {
+    static final String TARGET = DatasetGenerator.TARGET;
+
+    private BenchmarkData() {
+    }
+
+    // Write the given number of generated rows as CSV, or as a DatasetFile when binary is set
+    static String write(int rows, long seed, boolean binary) {
+        try {
+            File file = File.createTempFile("frapp-bench-" + rows + "-", binary ? ".frds" : ".csv");
+            file.deleteOnExit();
+            DatasetGenerator generator = new DatasetGenerator();
+            generator.setSeed(seed);
+            if (binary) {
+                generator.writeDataset(file.getPath(), rows);
+            } else {
+                generator.writeCsv(file.getPath(), rows);
+            }
+            return file.getPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.gyamjoDechen.benchmark;
+
+import com.gyamjoDechen.controller.DataManager;
+import com.gyamjoDechen.model.FeatureMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and cleaning generated data of the given number of rows, through both the map-based and the
+ * columnar API, and loading the same rows from a binary DatasetFile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataLoadingBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private final DataManager dataManager = new DataManager();
+    private String path;
+    private String datasetPath;
+    private List<Map<String, Object>> loadedRows;  // Rows as loaded, copied before every cleanData call
+
+    @Setup(Level.Trial)
+    public void writeData() {
+        path = BenchmarkData.write(rows, 42, false);
+        datasetPath = BenchmarkData.write(rows, 42, true);
+        loadedRows = dataManager.loadData(path);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> loadData() {
+        return dataManager.loadData(path);
+    }
+
+    @Benchmark
+    public FeatureMatrix loadMatrix() {
+        return dataManager.loadMatrix(path, BenchmarkData.TARGET);
+    }
+
+    @Benchmark
+    public FeatureMatrix loadDataset() {
+        return dataManager.loadMatrix(datasetPath, BenchmarkData.TARGET);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> cleanData(DirtyRows dirty) {
+        return dataManager.cleanData(dirty.rows);
+    }
+
+    @Benchmark
+    public FeatureMatrix cleanMatrix(DirtyMatrix dirty) {
+        return dataManager.cleanMatrix(dirty.matrix);
+    }
+
+    // cleanData fills the missing cells in place, so each call gets a fresh copy of the loaded rows (not measured)
+    @State(Scope.Thread)
+    public static class DirtyRows {
+        List<Map<String, Object>> rows;
+
+        @Setup(Level.Invocation)
+        public void reset(DataLoadingBenchmark benchmark) {
+            rows = new ArrayList<>(benchmark.loadedRows.size());
+            for (Map<String, Object> row : benchmark.loadedRows) {
+                rows.add(new HashMap<>(row));
+            }
+        }
+    }
+
+    // cleanMatrix fills the missing cells in place, so each call gets a freshly loaded matrix (not measured)
+    @State(Scope.Thread)
+    public static class DirtyMatrix {
+        FeatureMatrix matrix;
+
+        @Setup(Level.Invocation)
+        public void reset(DataLoadingBenchmark benchmark) {
+            matrix = benchmark.dataManager.loadMatrix(benchmark.path, BenchmarkData.TARGET);
+        }
+    }
+}
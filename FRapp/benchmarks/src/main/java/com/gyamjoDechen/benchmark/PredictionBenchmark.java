@@ -0,0 +1,75 @@
+package com.gyamjoDechen.benchmark;
+
+import com.gyamjoDechen.controller.DataManager;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.RandomForest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-input and batch prediction with a seeded forest trained on a dataset of the given size.
+ * Single predictions cycle through the training rows so branch predictors cannot learn one path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredictionBenchmark {
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"10", "50"})
+    public int trees;
+
+    private RandomForest forest;
+    private FeatureMatrix data;
+    private List<Map<String, Object>> inputs;
+
+    @Setup(Level.Trial)
+    public void trainForest() {
+        DataManager dataManager = new DataManager();
+        data = dataManager.cleanMatrix(dataManager.loadMatrix(BenchmarkData.write(rows, 42, false), BenchmarkData.TARGET));
+        inputs = dataManager.cleanData(dataManager.loadData(BenchmarkData.write(1000, 7, false)));
+        forest = new RandomForest(trees);
+        forest.setSeed(42);
+        forest.train(data);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String predict(Cursor cursor) {
+        return forest.predict(inputs.get(cursor.next(inputs.size())));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String[] predictBatch() {
+        return forest.predictBatch(data);
+    }
+
+    // Position in the input rows, one per benchmark thread
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int next(int size) {
+            position = position + 1 == size ? 0 : position + 1;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.gyamjoDechen.benchmark;
+
+import com.gyamjoDechen.controller.DataManager;
+import com.gyamjoDechen.controller.RecommendationManager;
+import com.gyamjoDechen.controller.ScoringServer;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.RandomForest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the HTTP scoring service on localhost: every JMH thread is a client sending requests
+ * back to back, so throughput and latency can be measured at any client count with -t.
+ * The server's latency percentiles are printed when a trial ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class ScoringServerBenchmark {
+    private static final String APPLICANT = "{\"Gender\":\"Female\",\"Income\":58000,\"Credit Score\":690,"
+            + "\"Debt-to-Income Ratio\":0.31,\"Marital Status\":\"Married\",\"Education Level\":\"Bachelor's\","
+            + "\"Employment Status\":\"Employed\"}";
+
+    @Param({"50"})
+    public int trees;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private ScoringServer server;
+    private RecommendationManager recommendationManager;
+    private List<Map<String, Object>> roleModels;
+    private final ArrayDeque<Long> roleModelIds = new ArrayDeque<>();
+    private int nextRoleModel;
+    private HttpClient client;
+    private HttpRequest predictRequest;
+    private HttpRequest batchRequest;
+    private HttpRequest recommendationsRequest;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        DataManager dataManager = new DataManager();
+        FeatureMatrix data = dataManager.cleanMatrix(dataManager.loadMatrix(BenchmarkData.write(100000, 42, false), BenchmarkData.TARGET));
+        RandomForest forest = new RandomForest(trees);
+        forest.setSeed(42);
+        forest.train(data);
+        recommendationManager = new RecommendationManager(List.of());
+        roleModels = data.toRows();
+        roleModels.removeIf(row -> !"Low".equalsIgnoreCase((String) row.get(BenchmarkData.TARGET)));
+        for (Map<String, Object> roleModel : roleModels) {
+            roleModelIds.add(recommendationManager.addRoleModel(roleModel));
+        }
+        server = new ScoringServer(forest, recommendationManager);
+        server.start(0);
+
+        client = HttpClient.newHttpClient();
+        String baseUrl = "http://localhost:" + server.getPort();
+        predictRequest = post(baseUrl + "/predict", APPLICANT);
+        batchRequest = post(baseUrl + "/predict/batch", "[" + String.join(",", Collections.nCopies(batchSize, APPLICANT)) + "]");
+        recommendationsRequest = post(baseUrl + "/recommendations", APPLICANT);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        for (String endpoint : new String[]{"/predict", "/predict/batch", "/recommendations"}) {
+            System.out.println(endpoint + ": " + server.getStats(endpoint));
+        }
+        server.stop(0);
+    }
+
+    private static HttpRequest post(String url, String body) {
+        return HttpRequest.newBuilder(URI.create(url)).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    @Benchmark
+    public String predict() throws IOException, InterruptedException {
+        return client.send(predictRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public String predictBatch() throws IOException, InterruptedException {
+        return client.send(batchRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public String recommendations() throws IOException, InterruptedException {
+        return client.send(recommendationsRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    // Recommendations while one thread keeps replacing role models, as a live system adding and retiring them would
+    @Benchmark
+    @Group("recommendationsWhileUpdating")
+    @GroupThreads(15)
+    public String recommendationsWhileUpdating() throws IOException, InterruptedException {
+        return client.send(recommendationsRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    // Only this group thread touches roleModelIds and nextRoleModel
+    @Benchmark
+    @Group("recommendationsWhileUpdating")
+    @GroupThreads(1)
+    public long replaceRoleModel() {
+        recommendationManager.removeRoleModel(roleModelIds.poll());
+        long roleModelId = recommendationManager.addRoleModel(roleModels.get(nextRoleModel++ % roleModels.size()));
+        roleModelIds.add(roleModelId);
+        return roleModelId;
+    }
+}
@@ -0,0 +1,78 @@
+package com.gyamjoDechen.benchmark;
+
+import com.gyamjoDechen.controller.DataManager;
+import com.gyamjoDechen.model.DecisionTree;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.RandomForest;
+import com.gyamjoDechen.model.SplitCriterion;
+import com.gyamjoDechen.model.SplitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Training a single tree and whole forests on a cleaned dataset of the given size with either split strategy
+ * and each split criterion.
+ * Forests are seeded, so every invocation trains the same trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TrainingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    @Param({"EXACT", "HISTOGRAM"})
+    public SplitStrategy strategy;
+
+    @Param({"ENTROPY", "FAST_ENTROPY", "GINI"})
+    public SplitCriterion criterion;
+
+    private FeatureMatrix data;
+
+    @Setup(Level.Trial)
+    public void loadData() {
+        DataManager dataManager = new DataManager();
+        data = dataManager.cleanMatrix(dataManager.loadMatrix(BenchmarkData.write(rows, 42, false), BenchmarkData.TARGET));
+    }
+
+    @Benchmark
+    public DecisionTree trainTree() {
+        DecisionTree tree = new DecisionTree();
+        tree.setSplitStrategy(strategy);
+        tree.setSplitCriterion(criterion);
+        tree.train(data);
+        return tree;
+    }
+
+    @Benchmark
+    public RandomForest trainForest(ForestSize size) {
+        RandomForest forest = new RandomForest(size.trees);
+        forest.setSeed(42);
+        forest.setSplitStrategy(strategy);
+        forest.setSplitCriterion(criterion);
+        forest.train(data);
+        return forest;
+    }
+
+    // Number of trees, kept out of the benchmark state so trainTree is not repeated for every count
+    @State(Scope.Benchmark)
+    public static class ForestSize {
+        @Param({"1", "10", "50"})
+        public int trees;
+    }
+}
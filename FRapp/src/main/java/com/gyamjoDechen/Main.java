@@ -1,13 +1,18 @@
 package com.gyamjoDechen;
 
+import com.gyamjoDechen.controller.BulkScorer;
 import com.gyamjoDechen.controller.DataManager;
+import com.gyamjoDechen.controller.ModelManager;
 import com.gyamjoDechen.controller.RecommendationManager;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.FeatureSchema;
+import com.gyamjoDechen.model.LoggingListener;
 import com.gyamjoDechen.model.RandomForest;
 import com.gyamjoDechen.model.User;
 
-import java.util.List;
+import java.io.IOException;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 public class Main {
 
@@ -18,20 +23,30 @@ public class Main {
         // Initialize the DataManager to handle dataset loading and cleaning
         DataManager dataManager = new DataManager();
 
-        // Load dataset from file
-        System.out.println("Loading dataset...");
-        List<Map<String, Object>> dataset = dataManager.loadData("C:\\Users\\sherp\\OneDrive\\Desktop\\FRapp\\src\\main\\java\\com\\gyamjoDechen\\controller\\test.csv");
-        System.out.println("Dataset loaded with " + dataset.size() + " records.");
+        // Read the dataset header; the rows are only loaded and cleaned once something needs them
+        String dataFilePath = "C:\\Users\\sherp\\OneDrive\\Desktop\\FRapp\\src\\main\\java\\com\\gyamjoDechen\\controller\\test.csv";
+        FeatureSchema schema = dataManager.loadSchema(dataFilePath, "Risk Rating");
+        Supplier<FeatureMatrix> dataset = dataManager.cleanedMatrix(dataFilePath, "Risk Rating");
 
-        // Clean the dataset
-        System.out.println("Cleaning dataset...");
-        dataset = dataManager.cleanData(dataset);
-        System.out.println("Dataset cleaned. Total records after cleaning: " + dataset.size());
+        // Load the saved model if it fits the dataset's columns, or train a RandomForest with 10 trees and save it
+        System.out.println("Preparing model...");
+        ModelManager modelManager = new ModelManager();
+        modelManager.setListener(new LoggingListener());  // Log training progress to the console
+        modelManager.setPredictionCacheSize(10000);  // Re-scoring the same applicant is answered from the cache
+        RandomForest randomForest = modelManager.loadOrTrain(dataFilePath, schema, dataset, 10);
 
-        // Initialize RandomForest with 10 trees and start the training process
-        RandomForest randomForest = new RandomForest(10);
-        System.out.println("Starting training process...");
-        randomForest.train(dataset, "Risk Rating");
+        // Bulk-scoring mode: Main --score <input.csv> <output.csv> [--vote-share]
+        if (args.length >= 3 && args[0].equals("--score")) {
+            BulkScorer bulkScorer = new BulkScorer(randomForest, dataset.get());  // Impute with the training means and modes
+            bulkScorer.setWriteVoteShare(args.length > 3 && args[3].equals("--vote-share"));
+            bulkScorer.setProgressListener(5000, System.out::println);
+            try {
+                System.out.println(bulkScorer.score(args[1], args[2]));
+            } catch (IOException e) {
+                System.out.println("Bulk scoring failed: " + e.getMessage());
+            }
+            return;
+        }
 
         // Create a User object to collect user input
         User user = new User();
@@ -42,13 +57,10 @@ public class Main {
         String prediction = randomForest.predict(userInput);
         System.out.println("Predicted Risk Rating: " + prediction);
 
-        // Filter Low Risk profiles from the dataset for role models
-        List<Map<String, Object>> lowRiskProfiles = dataset.stream()
-                .filter(entry -> "Low".equalsIgnoreCase((String) entry.get("Risk Rating")))
-                .collect(Collectors.toList());
+        // Use the Low Risk profiles of the dataset as role models
+        RecommendationManager recommendationManager = RecommendationManager.forLowRiskProfiles(dataset.get().toRows(), "Risk Rating");
 
         // Generate and offer personalized recommendations based on the prediction
-        RecommendationManager recommendationManager = new RecommendationManager(lowRiskProfiles);
         recommendationManager.offerPersonalizedRecommendations(prediction, userInput);
     }
 }
@@ -1,13 +1,49 @@
 package com.gyamjoDechen.Test;
 
+import com.gyamjoDechen.model.CompiledTree;
+import com.gyamjoDechen.model.DatasetFile;
 import com.gyamjoDechen.model.DecisionTree;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.FeatureSchema;
+import com.gyamjoDechen.model.ForestListener;
+import com.gyamjoDechen.model.MetricsListener;
+import com.gyamjoDechen.model.ModelFile;
+import com.gyamjoDechen.model.OOBReport;
+import com.gyamjoDechen.model.PredictionCache;
 import com.gyamjoDechen.model.RandomForest;
+import com.gyamjoDechen.model.RoleModelIndex;
+import com.gyamjoDechen.model.SplitCriterion;
+import com.gyamjoDechen.model.SplitStrategy;
+import com.gyamjoDechen.controller.BulkScorer;
 import com.gyamjoDechen.controller.DataManager;
+import com.gyamjoDechen.controller.DatasetGenerator;
+import com.gyamjoDechen.controller.ModelHolder;
+import com.gyamjoDechen.controller.ModelManager;
+import com.gyamjoDechen.controller.RecommendationManager;
+import com.gyamjoDechen.controller.ScoringServer;
 import com.gyamjoDechen.model.User;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.*;
 
@@ -72,6 +108,325 @@ public class FinancialRiskTestSuite {
         System.out.println("Decision tree built successfully and predicts: " + prediction);
     }
 
+    @Test
+    public void testColumnarTraining() {
+        // Test that the columnar dataset is fully cleaned and that trees trained on it agree with the row-based predict
+        System.out.println("Running testColumnarTraining...");
+
+        FeatureMatrix matrix = dataManager.cleanMatrix(dataManager.loadMatrix("C:\\Users\\sherp\\OneDrive\\Desktop\\FRapp\\src\\main\\java\\com\\gyamjoDechen\\controller\\test.csv", "Risk Rating"));
+        assertEquals("Columnar dataset has a different number of rows!", dataset.size(), matrix.getNumRows());
+
+        // No missing cells may remain in any feature column
+        FeatureSchema schema = matrix.getSchema();
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            for (int r = 0; r < matrix.getNumRows(); r++) {
+                if (schema.isNumeric(f)) {
+                    assertFalse("Missing numeric value after cleaning!", Double.isNaN(matrix.getNumericColumn(f)[r]));
+                } else {
+                    assertNotEquals("Missing category after cleaning!", FeatureMatrix.MISSING, matrix.getCategoryColumn(f)[r]);
+                }
+            }
+        }
+
+        // The columnar and map-based prediction paths must return the same label
+        DecisionTree decisionTree = new DecisionTree();
+        decisionTree.train(matrix);
+        for (int r = 0; r < 100; r++) {
+            String expected = schema.getLabels().decode(decisionTree.predictClass(matrix, r));
+            assertEquals("Columnar and map-based predictions differ!", expected, decisionTree.predict(matrix.getRow(r)));
+        }
+    }
+
+    @Test
+    public void testPresortedSweepMatchesExhaustiveSearch() {
+        // Test that the sorted sweep grows the same tree as trying every distinct value of every feature as a threshold
+        System.out.println("Running testPresortedSweepMatchesExhaustiveSearch...");
+
+        Random random = new Random(3);
+        String[] ratings = {"Low", "Medium", "High"};
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int r = 0; r < 400; r++) {
+            // Few distinct values per feature, so many rows tie on a threshold
+            Map<String, Object> row = new LinkedHashMap<>();
+            double income = random.nextInt(20);
+            double debt = random.nextInt(8);
+            double score = random.nextInt(50);
+            row.put("Income", income);
+            row.put("Debt", debt);
+            row.put("Score", score);
+            row.put("Risk Rating", ratings[income + 2 * debt + random.nextInt(10) > 25 ? 2 : score > 25 ? 1 : 0]);
+            rows.add(row);
+        }
+        FeatureMatrix matrix = FeatureMatrix.fromRows(rows, "Risk Rating");
+
+        List<String> splits = new ArrayList<>();
+        DecisionTree tree = new DecisionTree();
+        tree.setListener(new ForestListener() {
+            @Override
+            public void nodeSplit(int depth, int nodeSize, int feature, double gain) {
+                splits.add(depth + "/" + nodeSize + "/" + feature + "/" + gain);
+            }
+        });
+        tree.train(matrix);
+
+        List<String> expected = new ArrayList<>();
+        exhaustiveSplits(matrix, matrix.labelledRows(), 0, expected);
+        assertTrue("The tree did not split!", expected.size() > 10);
+        assertEquals("Sorted sweep chose different splits than the exhaustive search!", expected, splits);
+    }
+
+    // Reference depth-first growth that scans the node's rows once per candidate threshold, reporting splits in the order the tree does
+    private void exhaustiveSplits(FeatureMatrix matrix, int[] rows, int depth, List<String> splits) {
+        int[] counts = classCounts(matrix, rows);
+        if (rows.length < 2 || Arrays.stream(counts).max().getAsInt() == rows.length) {
+            return;
+        }
+        double totalEntropy = entropy(counts, rows.length);
+        int bestFeature = -1;
+        double bestThreshold = 0.0;
+        double bestGain = 0.0;
+        for (int f = 0; f < matrix.getSchema().getFeatureCount(); f++) {
+            double[] column = matrix.getNumericColumn(f);
+            double[] values = Arrays.stream(rows).mapToDouble(row -> column[row]).distinct().sorted().toArray();
+            for (int v = 0; v < values.length - 1; v++) {  // The largest value would leave the right side empty
+                double threshold = values[v];
+                int[] left = Arrays.stream(rows).filter(row -> column[row] <= threshold).toArray();
+                int[] leftCounts = classCounts(matrix, left);
+                int[] rightCounts = new int[counts.length];
+                for (int c = 0; c < counts.length; c++) {
+                    rightCounts[c] = counts[c] - leftCounts[c];
+                }
+                int rightSize = rows.length - left.length;
+                double gain = totalEntropy - ((double) left.length / rows.length * entropy(leftCounts, left.length)
+                        + (double) rightSize / rows.length * entropy(rightCounts, rightSize));
+                if (bestFeature < 0 || gain > bestGain) {
+                    bestFeature = f;
+                    bestThreshold = threshold;
+                    bestGain = gain;
+                }
+            }
+        }
+        if (bestFeature < 0) {
+            return;
+        }
+
+        splits.add(depth + "/" + rows.length + "/" + bestFeature + "/" + bestGain);
+        double[] column = matrix.getNumericColumn(bestFeature);
+        double threshold = bestThreshold;
+        exhaustiveSplits(matrix, Arrays.stream(rows).filter(row -> column[row] <= threshold).toArray(), depth + 1, splits);
+        exhaustiveSplits(matrix, Arrays.stream(rows).filter(row -> column[row] > threshold).toArray(), depth + 1, splits);
+    }
+
+    private int[] classCounts(FeatureMatrix matrix, int[] rows) {
+        int[] counts = new int[matrix.getNumClasses()];
+        for (int row : rows) {
+            counts[matrix.getLabels()[row]]++;
+        }
+        return counts;
+    }
+
+    // Entropy in bits, computed exactly as SplitCriterion.ENTROPY does so gains compare bit for bit
+    private double entropy(int[] counts, int size) {
+        double entropy = 0.0;
+        for (int count : counts) {
+            if (count > 0) {
+                double proportion = (double) count / size;
+                entropy -= proportion * Math.log(proportion) / Math.log(2);
+            }
+        }
+        return entropy;
+    }
+
+    @Test
+    public void testLoadTimeImputationMatchesCleanData() {
+        // Test that cleaning with the statistics gathered while loading fills the same values as cleanData
+        System.out.println("Running testLoadTimeImputationMatchesCleanData...");
+
+        FeatureMatrix matrix = dataManager.loadMatrix("C:\\Users\\sherp\\OneDrive\\Desktop\\FRapp\\src\\main\\java\\com\\gyamjoDechen\\controller\\test.csv", "Risk Rating");
+        assertNotNull("Loader did not gather imputation statistics!", matrix.getColumnStats());
+        dataManager.cleanMatrix(matrix);
+
+        FeatureSchema schema = matrix.getSchema();
+        for (int r = 0; r < matrix.getNumRows(); r++) {
+            Map<String, Object> expected = dataset.get(r);
+            for (int f = 0; f < schema.getFeatureCount(); f++) {
+                String name = schema.getFeatureName(f);
+                assertTrue("Missing cells left in the bitmap after cleaning!", matrix.getColumnStats().getMissing(f).isEmpty());
+                if (schema.isNumeric(f)) {
+                    assertEquals("Imputed mean differs for " + name, (double) expected.get(name), matrix.getNumericColumn(f)[r], 1e-6);
+                } else {
+                    assertEquals("Imputed mode differs for " + name, expected.get(name), schema.getDictionary(f).decode(matrix.getCategoryColumn(f)[r]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuotedFieldsAreParsed() throws IOException {
+        // Test that quoted fields may contain commas and escaped quotes and that empty cells are missing
+        System.out.println("Running testQuotedFieldsAreParsed...");
+
+        File csvFile = File.createTempFile("quoted", ".csv");
+        csvFile.deleteOnExit();
+        Files.writeString(csvFile.toPath(), "Gender,Income,Education Level,Risk Rating\r\n"
+                + "\"Male, retired\", 1200.5 ,\"PhD \"\"honoris\"\"\",Low\r\n"
+                + "Female,,,High\r\n"
+                + "\r\n"
+                + "\"Male, retired\",-3e2,Master's,\"Low\"\r\n");
+
+        FeatureMatrix matrix = dataManager.loadMatrix(csvFile.getPath(), "Risk Rating");
+        FeatureSchema schema = matrix.getSchema();
+        assertEquals("Blank lines must be skipped!", 3, matrix.getNumRows());
+
+        int gender = schema.indexOf("Gender");
+        int income = schema.indexOf("Income");
+        int education = schema.indexOf("Education Level");
+        assertEquals("Male, retired", schema.getDictionary(gender).decode(matrix.getCategoryColumn(gender)[0]));
+        assertEquals(matrix.getCategoryColumn(gender)[0], matrix.getCategoryColumn(gender)[2]);
+        assertEquals("PhD \"honoris\"", schema.getDictionary(education).decode(matrix.getCategoryColumn(education)[0]));
+        assertEquals(1200.5, matrix.getNumericColumn(income)[0], 0.0);
+        assertTrue("Empty numeric cell must be missing!", Double.isNaN(matrix.getNumericColumn(income)[1]));
+        assertEquals(FeatureMatrix.MISSING, matrix.getCategoryColumn(education)[1]);
+        assertEquals(-300.0, matrix.getNumericColumn(income)[2], 0.0);
+        assertEquals("Low", schema.getLabels().decode(matrix.getLabels()[2]));
+    }
+
+    @Test
+    public void testQuotedNewlinesAcrossChunks() throws IOException {
+        // Test that quoted fields holding newlines are parsed whole, even where the loader's chunk boundaries fall inside them
+        System.out.println("Running testQuotedNewlinesAcrossChunks...");
+
+        // About 3 MB, so the file is parsed in several chunks; most newlines are inside quotes
+        String[] notes = new String[7];
+        for (int n = 0; n < notes.length; n++) {
+            notes[n] = "Note " + n + ":\n" + "called back, said \"\"later\"\"\n".repeat(8 + n);
+        }
+        int numRows = 8000;
+        StringBuilder csv = new StringBuilder("Gender,Income,Notes,Risk Rating\n");
+        for (int r = 0; r < numRows; r++) {
+            csv.append(r % 2 == 0 ? "Female" : "Male").append(',').append(r).append(",\"").append(notes[r % notes.length])
+                    .append("\",").append(r % 3 == 0 ? "High" : "Low").append('\n');
+        }
+        File csvFile = File.createTempFile("multiline", ".csv");
+        csvFile.deleteOnExit();
+        Files.writeString(csvFile.toPath(), csv);
+
+        FeatureMatrix matrix = dataManager.loadMatrix(csvFile.getPath(), "Risk Rating");
+        FeatureSchema schema = matrix.getSchema();
+        assertEquals("Rows were split or merged at a quoted newline!", numRows, matrix.getNumRows());
+        int income = schema.indexOf("Income");
+        int notesColumn = schema.indexOf("Notes");
+        int gender = schema.indexOf("Gender");
+        for (int r = 0; r < numRows; r++) {
+            assertEquals("Rows are out of order!", r, matrix.getNumericColumn(income)[r], 0.0);
+            assertEquals("Multi-line field differs!", notes[r % notes.length].replace("\"\"", "\""),
+                    schema.getDictionary(notesColumn).decode(matrix.getCategoryColumn(notesColumn)[r]));
+            assertEquals(r % 2 == 0 ? "Female" : "Male", schema.getDictionary(gender).decode(matrix.getCategoryColumn(gender)[r]));
+            assertEquals(r % 3 == 0 ? "High" : "Low", schema.getLabels().decode(matrix.getLabels()[r]));
+        }
+
+        // The bulk scorer keeps such rows whole too, in chunks much smaller than the file
+        RandomForest forest = new RandomForest(3);
+        forest.setSeed(3);
+        forest.train(matrix);
+        String[] expected = forest.predictBatch(matrix);
+        File output = File.createTempFile("multiline-scored", ".csv");
+        output.deleteOnExit();
+        BulkScorer bulkScorer = new BulkScorer(forest, matrix);
+        bulkScorer.setThreads(2);
+        bulkScorer.setChunkBytes(4096);
+        assertEquals("Bulk scorer split or merged rows at a quoted newline!", numRows, bulkScorer.score(csvFile.getPath(), output.getPath()).getRows());
+
+        FeatureMatrix scored = dataManager.loadMatrix(output.getPath(), "Risk Rating");
+        FeatureSchema scoredSchema = scored.getSchema();
+        int scoredNotes = scoredSchema.indexOf("Notes");
+        int predicted = scoredSchema.indexOf("Predicted Risk Rating");
+        assertEquals("Wrong number of scored rows!", numRows, scored.getNumRows());
+        for (int r = 0; r < numRows; r++) {
+            assertEquals("Scored rows are out of order!", r, scored.getNumericColumn(scoredSchema.indexOf("Income"))[r], 0.0);
+            assertEquals("Multi-line field was not copied whole!", notes[r % notes.length].replace("\"\"", "\""),
+                    scoredSchema.getDictionary(scoredNotes).decode(scored.getCategoryColumn(scoredNotes)[r]));
+            assertEquals("Bulk and batch predictions differ in row " + r, expected[r],
+                    scoredSchema.getDictionary(predicted).decode(scored.getCategoryColumn(predicted)[r]));
+        }
+    }
+
+    @Test
+    public void testWeightedTrainingMatchesDuplicatedRows() {
+        // Test that a row with weight k trains the same tree as k copies of that row
+        System.out.println("Running testWeightedTrainingMatchesDuplicatedRows...");
+
+        List<Map<String, Object>> sample = dataset.subList(0, 500);
+        List<Map<String, Object>> duplicated = new ArrayList<>();
+        int[] weights = new int[sample.size()];
+        for (int r = 0; r < sample.size(); r++) {
+            weights[r] = 1 + r % 3;  // Rows count once, twice or three times
+            for (int copy = 0; copy < weights[r]; copy++) {
+                duplicated.add(sample.get(r));
+            }
+        }
+
+        DecisionTree weightedTree = new DecisionTree();
+        weightedTree.trainWeighted(FeatureMatrix.fromRows(sample, "Risk Rating"), weights);
+        DecisionTree duplicatedTree = new DecisionTree();
+        duplicatedTree.train(FeatureMatrix.fromRows(duplicated, "Risk Rating"));
+
+        assertEquals("Weighted tree has a different shape!", duplicatedTree.getCompiledTree().getNodeCount(), weightedTree.getCompiledTree().getNodeCount());
+        for (Map<String, Object> dataPoint : dataset) {
+            assertEquals("Weighted and duplicated trees predict differently!", duplicatedTree.predict(dataPoint), weightedTree.predict(dataPoint));
+        }
+    }
+
+    @Test
+    public void testGrowthLimits() {
+        // Test that depth and leaf limits bound the tree size and that best-first growth matches depth-first growth
+        System.out.println("Running testGrowthLimits...");
+
+        FeatureMatrix matrix = FeatureMatrix.fromRows(dataset, "Risk Rating");
+        DecisionTree shallowTree = new DecisionTree();
+        shallowTree.setMaxDepth(3);
+        shallowTree.train(matrix);
+        assertTrue("Tree of depth 3 has too many nodes!", shallowTree.getCompiledTree().getNodeCount() <= 15);
+
+        DecisionTree smallTree = new DecisionTree();
+        smallTree.setMaxLeafNodes(8);
+        smallTree.train(matrix);
+        assertTrue("Tree with 8 leaves has too many nodes!", smallTree.getCompiledTree().getNodeCount() <= 15);
+
+        // With the same seed and a leaf budget that is never reached, both growth orders build the same tree
+        DecisionTree depthFirst = new DecisionTree();
+        depthFirst.setMtry(3);
+        depthFirst.setSeed(11);
+        depthFirst.train(matrix);
+        DecisionTree bestFirst = new DecisionTree();
+        bestFirst.setMtry(3);
+        bestFirst.setSeed(11);
+        bestFirst.setMaxLeafNodes(1_000_000);
+        bestFirst.train(matrix);
+        assertEquals(depthFirst.getCompiledTree().getNodeCount(), bestFirst.getCompiledTree().getNodeCount());
+        for (int r = 0; r < matrix.getNumRows(); r++) {
+            assertEquals("Best-first tree predicts differently!", depthFirst.predictClass(matrix, r), bestFirst.predictClass(matrix, r));
+        }
+    }
+
+    @Test
+    public void testHistogramTraining() {
+        // Test that a tree trained on binned features still predicts from raw values
+        System.out.println("Running testHistogramTraining...");
+
+        FeatureMatrix matrix = FeatureMatrix.fromRows(dataset, "Risk Rating");
+        DecisionTree decisionTree = new DecisionTree();
+        decisionTree.setSplitStrategy(SplitStrategy.HISTOGRAM);
+        decisionTree.train(matrix);
+        assertNotNull("Histogram tree did not keep its bin edges!", decisionTree.getHistogramBins());
+
+        // Every training row falls on the same side of a bin edge as its bin, so columnar and map predictions agree
+        for (int r = 0; r < matrix.getNumRows(); r++) {
+            String expected = matrix.getSchema().getLabels().decode(decisionTree.predictClass(matrix, r));
+            assertEquals("Histogram tree predictions differ between raw and columnar input!", expected, decisionTree.predict(dataset.get(r)));
+        }
+    }
+
     @Test
     public void testRandomForestTrainAndPredict() {
         // Test RandomForest training and prediction functionality
@@ -80,7 +435,7 @@ public class FinancialRiskTestSuite {
         randomForest.train(dataset, "Risk Rating"); // Train the random forest with the dataset
 
         // Assert that all 10 trees are trained
-        assertEquals("RandomForest does not have the correct number of trees!", 10, randomForest.trees.size());
+        assertEquals("RandomForest does not have the correct number of trees!", 10, randomForest.getTrees().size());
 
         // Prepare mock input data for prediction
         Map<String, Object> mockInput = Map.of(
@@ -104,6 +459,908 @@ public class FinancialRiskTestSuite {
     }
 
 
+    @Test
+    public void testParallelTrainingIsDeterministic() {
+        // Test that a seeded forest is identical whether its trees are trained on one thread or several
+        System.out.println("Running testParallelTrainingIsDeterministic...");
+
+        FeatureMatrix matrix = FeatureMatrix.fromRows(dataset, "Risk Rating");
+        RandomForest sequential = new RandomForest(4);
+        sequential.setSeed(42);
+        sequential.setPool(new ForkJoinPool(1));
+        sequential.train(matrix);
+
+        RandomForest parallel = new RandomForest(4);
+        parallel.setSeed(42);
+        parallel.setPool(new ForkJoinPool(4));
+        parallel.train(matrix);
+
+        for (int t = 0; t < 4; t++) {
+            assertArrayEquals("OOB samples differ between thread counts!", sequential.getOobSamples().get(t), parallel.getOobSamples().get(t));
+            for (int r = 0; r < matrix.getNumRows(); r++) {
+                assertEquals("Trees differ between thread counts!", sequential.getTrees().get(t).predictClass(matrix, r), parallel.getTrees().get(t).predictClass(matrix, r));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelNodeBuildingMatchesSerial() throws IOException {
+        // Test that building large nodes in forked tasks grows exactly the tree that serial building does
+        System.out.println("Running testParallelNodeBuildingMatchesSerial...");
+
+        DatasetGenerator generator = new DatasetGenerator();
+        generator.setSeed(31);
+        FeatureMatrix matrix = generator.generate(5000);
+        byte[][] saved = new byte[2][];
+        AtomicInteger forkedNodes = new AtomicInteger();
+        for (int run = 0; run < 2; run++) {
+            RandomForest forest = new RandomForest(2);
+            forest.setSeed(17);
+            forest.setMtry(3);  // Node feature sampling must not depend on which thread builds the node
+            forest.setPool(new ForkJoinPool(4));
+            if (run == 1) {
+                forest.setParallelThreshold(64);  // Far below the default, so most nodes fork
+                forest.setListener(new ForestListener() {
+                    @Override
+                    public void nodeSplit(int depth, int nodeSize, int feature, double gain) {
+                        if (nodeSize >= 64) {
+                            forkedNodes.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            forest.train(matrix);
+            File modelFile = File.createTempFile("forest", ".model");
+            modelFile.deleteOnExit();
+            ModelFile.save(forest, modelFile.getPath());
+            saved[run] = Files.readAllBytes(modelFile.toPath());
+        }
+        assertTrue("No node was built in parallel!", forkedNodes.get() > 100);
+        assertArrayEquals("Parallel node building grew a different tree!", saved[0], saved[1]);
+    }
+
+    @Test
+    public void testCompiledTreesMatchNodeWalk() {
+        // Test that the flat-array form of every tree predicts the same labels as walking its nodes
+        System.out.println("Running testCompiledTreesMatchNodeWalk...");
+
+        randomForest.train(dataset, "Risk Rating");
+        for (DecisionTree tree : randomForest.getTrees()) {
+            CompiledTree compiledTree = tree.getCompiledTree();
+            for (Map<String, Object> dataPoint : dataset) {
+                int prediction = compiledTree.predict(tree.getSchema().encode(dataPoint));
+                assertEquals("Compiled tree disagrees with the node walk!", tree.predict(dataPoint), tree.getSchema().getLabels().decode(prediction));
+            }
+        }
+
+        // A numeric feature given as text is treated as missing by both forms instead of failing
+        Map<String, Object> textIncome = new HashMap<>(dataset.get(0));
+        textIncome.put("Income", "50000");
+        for (DecisionTree tree : randomForest.getTrees()) {
+            String expected = tree.getCompiledTree().predict(tree.getSchema().encode(textIncome)) == CompiledTree.UNKNOWN
+                    ? "Unknown" : tree.predict(dataset.get(0));
+            assertEquals("Text in a numeric feature was not treated as missing!", expected, tree.predict(textIncome));
+        }
+    }
+
+    @Test
+    public void testOOBReport() {
+        // Test that the forest-level OOB report is consistent with the OOB samples and the accuracy shortcut
+        System.out.println("Running testOOBReport...");
+
+        randomForest.train(dataset, "Risk Rating");
+        OOBReport report = randomForest.evaluateOOB();
+
+        // A row is scored when at least one tree left it out of its bootstrap sample
+        Set<Integer> oobRows = new HashSet<>();
+        for (int[] oob : randomForest.getOobSamples()) {
+            for (int row : oob) {
+                oobRows.add(row);
+            }
+        }
+        assertEquals("Scored rows differ from the union of OOB samples!", oobRows.size(), report.getScoredRows());
+
+        long[][] confusion = report.getConfusionMatrix();
+        long correct = 0;
+        for (int c = 0; c < confusion.length; c++) {
+            correct += confusion[c][c];
+        }
+        assertEquals((double) correct / report.getScoredRows(), report.getAccuracy(), 1e-12);
+        assertEquals(report.getAccuracy(), randomForest.calculateOOBAccuracy("Risk Rating"), 1e-12);
+        System.out.println(report);
+    }
+
+    @Test
+    public void testMetricsListener() {
+        // Test that the metrics listener counts trees, splits and predictions of a forest
+        System.out.println("Running testMetricsListener...");
+
+        MetricsListener metrics = new MetricsListener();
+        randomForest.setListener(metrics);
+        randomForest.train(dataset, "Risk Rating");
+        assertEquals(1, metrics.getTrainingRuns());
+        assertEquals(randomForest.getTrees().size(), metrics.getTreesTrained());
+
+        // Every split adds two nodes to a tree that starts as a single root
+        long nodes = 0;
+        for (DecisionTree tree : randomForest.getTrees()) {
+            nodes += tree.getCompiledTree().getNodeCount();
+        }
+        assertEquals(nodes, metrics.getNodesTrained());
+        assertEquals((nodes - randomForest.getTrees().size()) / 2, metrics.getNodeSplits());
+
+        for (int i = 0; i < 20; i++) {
+            randomForest.predict(dataset.get(i));
+        }
+        assertEquals(20, metrics.getPredictions().getCount());
+        assertTrue(metrics.getPredictions().getMaxNanos() > 0);
+        System.out.println(metrics);
+    }
+
+    @Test
+    public void testPredictionCache() {
+        // Test that cached predictions match uncached ones, that the cache is bounded and that retraining invalidates it
+        System.out.println("Running testPredictionCache...");
+
+        randomForest.setSeed(1);
+        randomForest.train(dataset, "Risk Rating");
+        List<String> expected = new ArrayList<>();
+        for (Map<String, Object> dataPoint : dataset) {
+            expected.add(randomForest.predict(dataPoint));
+        }
+
+        PredictionCache cache = new PredictionCache(100);
+        randomForest.setPredictionCache(cache);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int r = 0; r < 50; r++) {
+                assertEquals("Cached prediction differs!", expected.get(r), randomForest.predict(new HashMap<>(dataset.get(r))));
+            }
+        }
+        assertEquals("First pass must miss!", 50, cache.getMisses());
+        assertEquals("Second pass must hit!", 50, cache.getHits());
+        for (int r = 0; r < dataset.size(); r++) {
+            assertEquals("Cached prediction differs!", expected.get(r), randomForest.predict(dataset.get(r)));
+        }
+        assertEquals("Cache grew past its bound!", 100, cache.size());
+        assertTrue("Nothing was evicted!", cache.getEvictions() > 0);
+
+        // After retraining on different data the cache must not return the old forest's answers
+        randomForest.setSeed(2);
+        randomForest.train(dataset.subList(0, dataset.size() / 2), "Risk Rating");
+        randomForest.setPredictionCache(null);
+        List<String> retrained = new ArrayList<>();
+        for (int r = 0; r < 200; r++) {
+            retrained.add(randomForest.predict(dataset.get(r)));
+        }
+        randomForest.setPredictionCache(cache);
+        long hitsBefore = cache.getHits();
+        for (int r = 0; r < 200; r++) {
+            assertEquals("Stale cached prediction after retraining!", retrained.get(r), randomForest.predict(dataset.get(r)));
+        }
+        assertTrue("Stale entries were hit!", cache.getHits() - hitsBefore < 200);
+
+        // Two generations sharing a cache keep their own entries instead of clearing each other's
+        PredictionCache shared = new PredictionCache(100);
+        double[] encoded = randomForest.getSchema().encode(dataset.get(0));
+        shared.put(encoded, 1, "Low");
+        shared.put(encoded, 2, "High");
+        for (int lookup = 0; lookup < 10; lookup++) {
+            assertEquals("Generations share an entry!", "Low", shared.get(encoded, 1));
+            assertEquals("Generations share an entry!", "High", shared.get(encoded, 2));
+        }
+        assertNull("Unknown generation was hit!", shared.get(encoded, 3));
+        assertEquals("Switching generations cleared the cache!", 0, shared.getInvalidations());
+        shared.clear();
+        assertEquals("clear() left entries behind!", 0, shared.size());
+
+        // A large cache is split into segments but still holds what fits and stays within its bound
+        PredictionCache segmented = new PredictionCache(10000);
+        for (int i = 0; i < 2000; i++) {
+            segmented.put(new double[]{i, i % 7}, 1, "Low");
+        }
+        for (int i = 0; i < 2000; i++) {
+            assertEquals("Segmented cache lost an entry!", "Low", segmented.get(new double[]{i, i % 7}, 1));
+        }
+        for (int i = 0; i < 50000; i++) {
+            segmented.put(new double[]{i, -1}, 1, "High");
+        }
+        assertEquals("Segmented cache is not filled to its bound!", 10000, segmented.size());
+        System.out.println("Prediction cache: " + cache);
+    }
+
+    @Test
+    public void testBatchPredictionMatchesSinglePredictions() {
+        // Test that scoring a columnar block gives the same labels as predicting row by row
+        System.out.println("Running testBatchPredictionMatchesSinglePredictions...");
+
+        randomForest.train(dataset, "Risk Rating");
+        FeatureMatrix block = dataManager.cleanMatrix(dataManager.loadMatrix("C:\\Users\\sherp\\OneDrive\\Desktop\\FRapp\\src\\main\\java\\com\\gyamjoDechen\\controller\\test.csv", "Risk Rating"));
+        String[] predictions = randomForest.predictBatch(block);
+
+        assertEquals("Batch prediction returned the wrong number of labels!", block.getNumRows(), predictions.length);
+        for (int r = 0; r < block.getNumRows(); r++) {
+            assertEquals("Batch and single predictions differ!", randomForest.predict(block.getRow(r)), predictions[r]);
+        }
+    }
+
+    @Test
+    public void testModelFileRoundTrip() throws IOException {
+        // Test that a saved and reloaded forest predicts exactly like the trained one, and that corrupt files are rejected
+        System.out.println("Running testModelFileRoundTrip...");
+
+        randomForest.train(dataset, "Risk Rating");
+        File modelFile = File.createTempFile("forest", ".model");
+        modelFile.deleteOnExit();
+        ModelFile.save(randomForest, modelFile.getPath());
+
+        ModelFile.save(randomForest, modelFile.getPath());  // Replaces the existing file
+        File[] leftovers = modelFile.getParentFile().listFiles((dir, name) -> name.startsWith(modelFile.getName()) && name.endsWith(".tmp"));
+        assertEquals("Saving left a temporary file behind!", 0, leftovers.length);
+
+        RandomForest loaded = ModelFile.load(modelFile.getPath());
+        assertEquals("Loaded forest has the wrong number of trees!", randomForest.getTrees().size(), loaded.getTrees().size());
+        for (Map<String, Object> dataPoint : dataset) {
+            assertEquals("Loaded forest predicts differently!", randomForest.predict(dataPoint), loaded.predict(dataPoint));
+        }
+
+        // A file of an older format version is rejected, so ModelManager retrains instead of loading it
+        File oldVersion = File.createTempFile("forest-v1", ".model");
+        oldVersion.deleteOnExit();
+        Files.copy(modelFile.toPath(), oldVersion.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (RandomAccessFile file = new RandomAccessFile(oldVersion, "rw")) {
+            file.seek(4);
+            file.writeInt(1);
+        }
+        try {
+            ModelFile.load(oldVersion.getPath());
+            fail("Version 1 model file was accepted!");
+        } catch (IOException expected) {
+            assertTrue("Wrong rejection reason: " + expected.getMessage(), expected.getMessage().contains("version 1"));
+        }
+
+        // Flip one byte of the payload and expect the checksum to catch it
+        try (RandomAccessFile file = new RandomAccessFile(modelFile, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        try {
+            ModelFile.load(modelFile.getPath());
+            fail("Corrupt model file was accepted!");
+        } catch (IOException expected) {
+            System.out.println("Corrupt model rejected: " + expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testSavedModelIsCheckedAgainstHeader() throws IOException {
+        // Test that a saved model fitting the data file's header is loaded without reading the rows, and that a mismatch retrains
+        System.out.println("Running testSavedModelIsCheckedAgainstHeader...");
+
+        DatasetGenerator generator = new DatasetGenerator();
+        generator.setSeed(11);
+        File csvFile = File.createTempFile("header", ".csv");
+        csvFile.deleteOnExit();
+        generator.writeCsv(csvFile.getPath(), 2000);
+        ModelManager modelManager = new ModelManager();
+        File modelFile = new File(modelManager.getModelPath(csvFile.getPath()));
+        modelFile.deleteOnExit();
+
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<FeatureMatrix> cleaned = dataManager.cleanedMatrix(csvFile.getPath(), DatasetGenerator.TARGET);
+        Supplier<FeatureMatrix> data = () -> {
+            loads.incrementAndGet();
+            return cleaned.get();
+        };
+        FeatureSchema schema = dataManager.loadSchema(csvFile.getPath(), DatasetGenerator.TARGET);
+        RandomForest trained = modelManager.loadOrTrain(csvFile.getPath(), schema, data, 3);
+        assertEquals("Training should load the data once!", 1, loads.get());
+        assertTrue("Model file was not saved!", modelFile.isFile());
+
+        RandomForest loaded = modelManager.loadOrTrain(csvFile.getPath(), schema, data, 3);
+        assertEquals("A fitting saved model should not load the data!", 1, loads.get());
+        assertEquals("Loaded forest has the wrong number of trees!", trained.getTrees().size(), loaded.getTrees().size());
+
+        // A header with a column less no longer fits the saved model
+        FeatureSchema full = cleaned.get().getSchema();
+        String[] names = new String[full.getFeatureCount() - 1];
+        boolean[] numeric = new boolean[names.length];
+        for (int f = 0; f < names.length; f++) {
+            names[f] = full.getFeatureName(f);
+            numeric[f] = full.isNumeric(f);
+        }
+        modelManager.loadOrTrain(csvFile.getPath(), new FeatureSchema(names, numeric, DatasetGenerator.TARGET), data, 3);
+        assertEquals("A mismatching saved model should retrain on the data!", 2, loads.get());
+    }
+
+    @Test
+    public void testGeneratedDatasetFormats() throws IOException {
+        // Test that generated data reads back identically from CSV and from a dataset file, and that corrupt dataset files are rejected
+        System.out.println("Running testGeneratedDatasetFormats...");
+
+        DatasetGenerator generator = new DatasetGenerator();
+        generator.setSeed(7);
+        generator.setHighRiskShare(0.3);
+        int numRows = 100000;  // More than one dataset block
+        File csvFile = File.createTempFile("generated", ".csv");
+        File datasetFile = File.createTempFile("generated", ".frds");
+        csvFile.deleteOnExit();
+        datasetFile.deleteOnExit();
+        generator.writeCsv(csvFile.getPath(), numRows);
+        generator.writeDataset(datasetFile.getPath(), numRows);
+
+        FeatureMatrix expected = generator.generate(numRows);
+        FeatureMatrix fromDataset = dataManager.loadMatrix(datasetFile.getPath(), DatasetGenerator.TARGET);
+        FeatureMatrix fromCsv = dataManager.loadMatrix(csvFile.getPath(), DatasetGenerator.TARGET).alignTo(expected.getSchema());
+        assertEquals("Dataset file has the wrong number of rows!", numRows, fromDataset.getNumRows());
+        assertEquals("CSV file has the wrong number of rows!", numRows, fromCsv.getNumRows());
+        FeatureSchema schema = expected.getSchema();
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            if (schema.isNumeric(f)) {
+                assertArrayEquals("Dataset file differs in " + schema.getFeatureName(f), expected.getNumericColumn(f), fromDataset.getNumericColumn(f), 0.0);
+                assertArrayEquals("CSV file differs in " + schema.getFeatureName(f), expected.getNumericColumn(f), fromCsv.getNumericColumn(f), 0.0);
+            } else {
+                assertArrayEquals("Dataset file differs in " + schema.getFeatureName(f), expected.getCategoryColumn(f), fromDataset.getCategoryColumn(f));
+                assertArrayEquals("CSV file differs in " + schema.getFeatureName(f), expected.getCategoryColumn(f), fromCsv.getCategoryColumn(f));
+            }
+        }
+        assertArrayEquals("Dataset file labels differ!", expected.getLabels(), fromDataset.getLabels());
+        assertArrayEquals("CSV file labels differ!", expected.getLabels(), fromCsv.getLabels());
+
+        // Reading only the header or footer gives the same columns as loading the whole file
+        assertTrue("Dataset file header schema differs!", dataManager.loadSchema(datasetFile.getPath(), DatasetGenerator.TARGET).hasSameColumns(fromDataset.getSchema()));
+        assertTrue("CSV header schema differs!", dataManager.loadSchema(csvFile.getPath(), DatasetGenerator.TARGET)
+                .hasSameColumns(dataManager.loadMatrix(csvFile.getPath(), DatasetGenerator.TARGET).getSchema()));
+
+        // The requested class balance is met
+        int high = 0;
+        for (int label : expected.getLabels()) {
+            high += schema.getLabels().decode(label).equals("High") ? 1 : 0;
+        }
+        assertEquals("Generated class balance is off!", 0.3, (double) high / numRows, 0.01);
+
+        // Flip one byte of the first block and expect its checksum to catch it
+        try (RandomAccessFile file = new RandomAccessFile(datasetFile, "rw")) {
+            file.seek(100);
+            int value = file.read();
+            file.seek(100);
+            file.write(value ^ 0xFF);
+        }
+        try {
+            DatasetFile.load(datasetFile.getPath());
+            fail("Corrupt dataset file was accepted!");
+        } catch (IOException expectedError) {
+            System.out.println("Corrupt dataset rejected: " + expectedError.getMessage());
+        }
+    }
+
+    @Test
+    public void testRoleModelStats() {
+        // Test that the incrementally maintained role-model statistics match a full scan, also after removals
+        System.out.println("Running testRoleModelStats...");
+
+        RecommendationManager recommendationManager = new RecommendationManager(List.of());
+        List<Map<String, Object>> roleModels = new ArrayList<>();
+        List<Long> roleModelIds = new ArrayList<>();
+        for (Map<String, Object> row : dataset) {
+            if ("Low".equalsIgnoreCase((String) row.get("Risk Rating"))) {
+                roleModels.add(row);
+                roleModelIds.add(recommendationManager.addRoleModel(row));
+            }
+        }
+        assertEquals("Wrong number of role models!", roleModels.size(), recommendationManager.getRoleModelStats().getCount());
+        assertEquals("Wrong number of low-risk role models!", roleModels.size(),
+                RecommendationManager.forLowRiskProfiles(dataset, "Risk Rating").getRoleModelStats().getCount());
+        assertRoleModelStats(recommendationManager, roleModels);
+
+        // Remove the first half of the role models; the statistics must describe the rest
+        int removed = roleModels.size() / 2;
+        for (long roleModelId : roleModelIds.subList(0, removed)) {
+            recommendationManager.removeRoleModel(roleModelId);
+        }
+        assertRoleModelStats(recommendationManager, roleModels.subList(removed, roleModels.size()));
+        try {
+            recommendationManager.removeRoleModel(roleModelIds.get(0));
+            fail("A role model was removed twice!");
+        } catch (IllegalArgumentException expectedError) {
+            System.out.println("Second removal rejected: " + expectedError.getMessage());
+        }
+
+        // The gap analysis points out values in the weakest quarter of the role models, and only those
+        Map<String, Object> weakApplicant = new HashMap<>(roleModels.get(roleModels.size() - 1));
+        weakApplicant.put("Income", 0.0);
+        weakApplicant.put("Credit Score", 300.0);
+        weakApplicant.put("Debt-to-Income Ratio", 5.0);
+        String weakRecommendations = recommendationManager.getRecommendations("High", weakApplicant);
+        assertTrue("Low income was not compared with the 25th percentile!", weakRecommendations.contains("income is in the lowest quarter"));
+        assertTrue("Low credit score was not compared with the 25th percentile!", weakRecommendations.contains("credit score is in the lowest quarter"));
+        assertTrue("High debt was not compared with the 75th percentile!", weakRecommendations.contains("75th percentile"));
+        Map<String, Object> strongApplicant = new HashMap<>(weakApplicant);
+        strongApplicant.put("Income", recommendationManager.getRoleModelStats().getPercentile("Income", 90));
+        strongApplicant.put("Credit Score", 850.0);
+        strongApplicant.put("Debt-to-Income Ratio", 0.0);
+        assertFalse("A strong profile was reported in the weakest quarter!",
+                recommendationManager.getRecommendations("Low", strongApplicant).contains("percentile"));
+    }
+
+    @Test
+    public void testRoleModelIndexMatchesBruteForce() {
+        // Test that the nearest role models found by the index are the k closest ones of a full scan
+        System.out.println("Running testRoleModelIndexMatchesBruteForce...");
+
+        String[] numericKeys = {"Income", "Credit Score", "Debt-to-Income Ratio"};
+        String[] categoricalKeys = {"Employment Status", "Education Level"};
+        RoleModelIndex index = new RoleModelIndex(numericKeys, categoricalKeys);
+        List<Map<String, Object>> roleModels = new ArrayList<>();
+        List<Long> roleModelIds = new ArrayList<>();
+        for (Map<String, Object> row : dataset) {
+            if ("Low".equalsIgnoreCase((String) row.get("Risk Rating"))) {
+                roleModels.add(row);
+                roleModelIds.add(index.add(row));
+            }
+        }
+        assertRoleModelIndexMatchesBruteForce(index, roleModels);
+
+        // A few changes go into the existing trees without a rebuild
+        int rebuilds = index.getRebuilds();
+        List<Map<String, Object>> kept = new ArrayList<>(roleModels);
+        List<Long> keptIds = new ArrayList<>(roleModelIds);
+        for (int i = 0; i < 5; i++) {
+            index.remove(keptIds.remove(0));
+            kept.remove(0);
+            keptIds.add(index.add(roleModels.get(i)));
+            kept.add(roleModels.get(i));
+        }
+        assertEquals("Small changes must not rebuild the index!", rebuilds, index.getRebuilds());
+        assertRoleModelIndexMatchesBruteForce(index, kept);
+
+        // Remove every other role model; the tombstones eventually trigger a rebuild
+        List<Map<String, Object>> remaining = new ArrayList<>();
+        for (int i = 0; i < kept.size(); i++) {
+            if (i % 2 == 0) {
+                index.remove(keptIds.get(i));
+            } else {
+                remaining.add(kept.get(i));
+            }
+        }
+        assertTrue("Removing half of the role models did not rebuild the index!", index.getRebuilds() > rebuilds);
+        assertEquals("Wrong number of role models!", remaining.size(), index.size());
+        assertRoleModelIndexMatchesBruteForce(index, remaining);
+
+        // Additions in sorted order keep the trees balanced enough to answer exactly
+        RoleModelIndex sortedIndex = new RoleModelIndex(numericKeys, categoricalKeys);
+        List<Map<String, Object>> byIncome = new ArrayList<>(roleModels);
+        byIncome.sort(Comparator.comparingDouble(row -> ((Number) row.get("Income")).doubleValue()));
+        byIncome.forEach(sortedIndex::add);
+        assertRoleModelIndexMatchesBruteForce(sortedIndex, byIncome);
+    }
+
+    private void assertRoleModelIndexMatchesBruteForce(RoleModelIndex index, List<Map<String, Object>> roleModels) {
+        int k = 10;
+        for (int q = 0; q < 50; q++) {
+            Map<String, Object> user = dataset.get(q * 7);
+            List<Map<String, Object>> nearest = index.nearest(user, k);
+            assertEquals("Wrong number of neighbours!", Math.min(k, roleModels.size()), nearest.size());
+
+            double[] expected = roleModels.stream().mapToDouble(roleModel -> index.distance(user, roleModel)).sorted().limit(k).toArray();
+            for (int i = 0; i < nearest.size(); i++) {
+                assertEquals("Neighbour " + i + " is not among the closest role models!", expected[i], index.distance(user, nearest.get(i)), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testScoringServer() throws Exception {
+        // Test that the HTTP service returns the forest's predictions and rejects bad requests
+        System.out.println("Running testScoringServer...");
+
+        randomForest.train(dataset, "Risk Rating");
+        ScoringServer scoringServer = new ScoringServer(randomForest, RecommendationManager.forLowRiskProfiles(dataset, "Risk Rating"));
+        scoringServer.start(0);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            String baseUrl = "http://localhost:" + scoringServer.getPort();
+            String applicant = "{\"Gender\":\"Male\",\"Income\":60000,\"Credit Score\":720,\"Debt-to-Income Ratio\":0.2,"
+                    + "\"Marital Status\":\"Single\",\"Education Level\":\"High School\",\"Employment Status\":\"Employed\"}";
+            Map<String, Object> input = new HashMap<>(Map.of("Gender", "Male", "Income", 60000.0, "Credit Score", 720.0,
+                    "Debt-to-Income Ratio", 0.2, "Marital Status", "Single", "Education Level", "High School", "Employment Status", "Employed"));
+            String expected = randomForest.predict(input);
+
+            HttpResponse<String> single = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/predict"))
+                    .POST(HttpRequest.BodyPublishers.ofString(applicant)).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("Single prediction failed!", 200, single.statusCode());
+            assertEquals("Served prediction differs!", "{\"prediction\":\"" + expected + "\",\"modelVersion\":1}", single.body());
+
+            HttpResponse<String> batch = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/predict/batch"))
+                    .POST(HttpRequest.BodyPublishers.ofString("[" + applicant + ",{\"Income\":60000}," + applicant + "]")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals("Batch prediction failed!", 200, batch.statusCode());
+            assertEquals("Served batch predictions differ!", "{\"predictions\":[\"" + expected + "\",\""
+                    + randomForest.predict(Map.of("Income", 60000.0)) + "\",\"" + expected + "\"],\"modelVersion\":1}", batch.body());
+
+            HttpResponse<String> recommendations = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/recommendations"))
+                    .POST(HttpRequest.BodyPublishers.ofString(applicant)).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("Recommendations failed!", 200, recommendations.statusCode());
+            assertTrue("Recommendations are missing!", recommendations.body().contains("Recommendations Based on Role Models"));
+
+            HttpResponse<String> malformed = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/predict"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"Income\":")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("Malformed JSON was not rejected!", 400, malformed.statusCode());
+            HttpResponse<String> wrongMethod = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/predict")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals("GET was not rejected!", 405, wrongMethod.statusCode());
+
+            ScoringServer.EndpointStats predictStats = scoringServer.getStats("/predict");
+            assertEquals("Requests were not counted!", 3, predictStats.getRequests());
+            assertEquals("Errors were not counted!", 2, predictStats.getErrors());
+            System.out.println("/predict: " + predictStats);
+        } finally {
+            scoringServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testBulkScoringMatchesBatchPrediction() throws IOException {
+        // Test that streaming a file through the bulk scorer in small chunks gives the in-memory predictions in input order
+        System.out.println("Running testBulkScoringMatchesBatchPrediction...");
+
+        String csvPath = "C:\\Users\\sherp\\OneDrive\\Desktop\\FRapp\\src\\main\\java\\com\\gyamjoDechen\\controller\\test.csv";
+        FeatureMatrix training = dataManager.cleanMatrix(dataManager.loadMatrix(csvPath, "Risk Rating"));
+        randomForest.train(training);
+        String[] expected = randomForest.predictBatch(training);
+
+        File output = File.createTempFile("scored", ".csv");
+        output.deleteOnExit();
+        BulkScorer bulkScorer = new BulkScorer(randomForest, training);
+        bulkScorer.setThreads(3);
+        bulkScorer.setChunkBytes(4096);  // Many chunks, so they finish out of order
+        bulkScorer.setQueueCapacity(2);
+        bulkScorer.setWriteVoteShare(true);
+        List<BulkScorer.Report> progress = new ArrayList<>();
+        Thread caller = Thread.currentThread();
+        bulkScorer.setProgressListener(1, progressReport -> {
+            assertSame("Progress was reported off the calling thread!", caller, Thread.currentThread());
+            progress.add(progressReport);
+        });
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);  // Decimal comma; the vote shares must still be one CSV field
+        BulkScorer.Report report;
+        try {
+            report = bulkScorer.score(csvPath, output.getPath());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+        System.out.println(report);
+        assertEquals("Wrong number of rows scored!", expected.length, report.getRows());
+        assertTrue("The file was not split into chunks!", report.getChunks() > 1);
+        long reportedRows = 0;
+        for (BulkScorer.Report progressReport : progress) {
+            assertTrue("Progress went backwards!", progressReport.getRows() >= reportedRows);
+            reportedRows = progressReport.getRows();
+        }
+        assertTrue("Progress reported more rows than were scored!", reportedRows <= report.getRows());
+
+        List<String> inputLines = Files.readAllLines(new File(csvPath).toPath());
+        inputLines.removeIf(String::isBlank);
+        List<String> outputLines = Files.readAllLines(output.toPath());
+        assertEquals("Header was not extended!", inputLines.get(0).strip() + ",Predicted Risk Rating,Vote Share", outputLines.get(0));
+        assertEquals("Wrong number of output lines!", expected.length + 1, outputLines.size());
+        for (int r = 0; r < expected.length; r++) {
+            String line = outputLines.get(r + 1);
+            int shareStart = line.lastIndexOf(',');
+            int predictionStart = line.lastIndexOf(',', shareStart - 1);
+            assertEquals("Input row was not copied in order!", inputLines.get(r + 1).strip(), line.substring(0, predictionStart));
+            assertEquals("Bulk and batch predictions differ in row " + r, expected[r], line.substring(predictionStart + 1, shareStart));
+            double share = Double.parseDouble(line.substring(shareStart + 1));
+            assertTrue("Vote share out of range!", share > 0.0 && share <= 1.0);
+        }
+    }
+
+    @Test
+    public void testSplitCriteria() {
+        // Test that the table-driven entropy grows the same trees as the exact one and that every criterion can be selected
+        System.out.println("Running testSplitCriteria...");
+
+        DatasetGenerator generator = new DatasetGenerator();
+        generator.setSeed(3);
+        FeatureMatrix data = generator.generate(20000);
+        Map<SplitCriterion, DecisionTree> trees = new EnumMap<>(SplitCriterion.class);
+        for (SplitCriterion criterion : SplitCriterion.values()) {
+            DecisionTree tree = new DecisionTree();
+            tree.setSplitCriterion(criterion);
+            tree.train(data);
+            trees.put(criterion, tree);
+        }
+
+        int agree = 0;
+        int entropyCorrect = 0;
+        int giniCorrect = 0;
+        for (int r = 0; r < data.getNumRows(); r++) {
+            agree += trees.get(SplitCriterion.ENTROPY).predictClass(data, r) == trees.get(SplitCriterion.FAST_ENTROPY).predictClass(data, r) ? 1 : 0;
+            entropyCorrect += trees.get(SplitCriterion.ENTROPY).predictClass(data, r) == data.getLabels()[r] ? 1 : 0;
+            giniCorrect += trees.get(SplitCriterion.GINI).predictClass(data, r) == data.getLabels()[r] ? 1 : 0;
+        }
+        assertTrue("Table-driven entropy disagrees with entropy!", agree >= data.getNumRows() * 0.99);
+        assertTrue("Gini tree fits its training data much worse than entropy!", giniCorrect >= entropyCorrect * 0.98);
+
+        randomForest.setSplitCriterion(SplitCriterion.GINI);
+        for (DecisionTree tree : randomForest.getTrees()) {
+            assertEquals("Forest did not pass the criterion to its trees!", SplitCriterion.GINI, tree.getSplitCriterion());
+        }
+    }
+
+    @Test
+    public void testCategorySubsetSplits() throws IOException {
+        // Test that one split can send several categories left, for two classes and for more
+        System.out.println("Running testCategorySubsetSplits...");
+
+        String[] levels = {"High School", "Bachelor's", "Master's", "PhD"};
+        List<Map<String, Object>> twoClasses = new ArrayList<>();
+        List<Map<String, Object>> threeClasses = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String level = levels[i % 4];
+            twoClasses.add(new HashMap<>(Map.of("Education Level", level, "Risk Rating", i % 2 == 0 ? "High" : "Low")));
+            threeClasses.add(new HashMap<>(Map.of("Education Level", level, "Risk Rating", i % 4 < 2 ? "Low" : i % 4 == 2 ? "Medium" : "High")));
+        }
+
+        // {High School, Master's} against {Bachelor's, PhD} needs a chain of one-category splits but a single subset split
+        DecisionTree twoClassTree = new DecisionTree();
+        twoClassTree.train(twoClasses, "Risk Rating");
+        assertEquals("Two classes were not separated by one subset split!", 3, twoClassTree.getCompiledTree().getNodeCount());
+
+        DecisionTree threeClassTree = new DecisionTree();
+        threeClassTree.train(threeClasses, "Risk Rating");
+        assertEquals("Three classes need exactly two subset splits!", 5, threeClassTree.getCompiledTree().getNodeCount());
+        for (Map<String, Object> row : threeClasses) {
+            assertEquals("Subset split sends a category the wrong way!", row.get("Risk Rating"), threeClassTree.predict(row));
+        }
+        assertNotEquals("Unseen category was not sent right!", "Unknown", threeClassTree.predict(Map.of("Education Level", "Diploma")));
+
+        // Masks survive a model file round trip
+        RandomForest forest = new RandomForest(5);
+        forest.train(threeClasses, "Risk Rating");
+        File modelFile = File.createTempFile("subsets", ".model");
+        modelFile.deleteOnExit();
+        ModelFile.save(forest, modelFile.getPath());
+        RandomForest loaded = ModelFile.load(modelFile.getPath());
+        for (Map<String, Object> row : threeClasses) {
+            assertEquals("Loaded forest predicts differently!", forest.predict(row), loaded.predict(row));
+        }
+    }
+
+    @Test
+    public void testIncrementalRefresh() throws InterruptedException {
+        // Test that a refresh appends the new rows and retrains only the oldest trees, cycling through the forest
+        System.out.println("Running testIncrementalRefresh...");
+
+        DatasetGenerator generator = new DatasetGenerator();
+        generator.setSeed(11);
+        FeatureMatrix history = generator.generate(3000);
+        generator.setSeed(12);
+        FeatureMatrix newRows = generator.generate(1000);
+        randomForest.setSeed(5);
+        randomForest.train(history);
+
+        List<DecisionTree> before = new ArrayList<>(randomForest.getTrees());
+        List<int[]> oobBefore = new ArrayList<>(randomForest.getOobSamples());
+        randomForest.refresh(newRows, 3);
+        for (int t = 0; t < before.size(); t++) {
+            assertEquals("Wrong trees were retrained!", t >= 3, randomForest.getTrees().get(t) == before.get(t));
+        }
+
+        // New rows are out of bag for every kept tree, and the retrained trees drew from all 4000 rows
+        assertTrue("OOB evaluation failed after refreshing!", randomForest.evaluateOOB().getScoredRows() > 3000);
+        for (int t = 0; t < 3; t++) {
+            int[] oob = randomForest.getOobSamples().get(t);
+            assertTrue("Retrained tree's OOB rows are out of range!", oob[oob.length - 1] < 4000);
+        }
+        for (int t = 3; t < before.size(); t++) {
+            int[] oob = randomForest.getOobSamples().get(t);
+            assertEquals("Kept tree does not count the new rows as OOB!", oobBefore.get(t).length + 1000, oob.length);
+            assertEquals("Kept tree does not count the new rows as OOB!", 3999, oob[oob.length - 1]);
+        }
+
+        // The next refresh moves on to the following oldest trees
+        List<DecisionTree> afterFirst = new ArrayList<>(randomForest.getTrees());
+        randomForest.refresh(newRows, 3);
+        for (int t = 0; t < afterFirst.size(); t++) {
+            assertEquals("Refresh did not pick the oldest trees!", t < 3 || t >= 6, randomForest.getTrees().get(t) == afterFirst.get(t));
+        }
+        assertEquals("Batch prediction broke after refreshing!", 1000, randomForest.predictBatch(newRows).length);
+
+        // Readers running during refreshes see either the old forest or the new one, never new trees with old data
+        AtomicReference<Throwable> readerError = new AtomicReference<>();
+        AtomicBoolean refreshing = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            try {
+                while (refreshing.get()) {
+                    randomForest.evaluateOOB();
+                    randomForest.predictBatch(newRows);
+                }
+            } catch (Throwable e) {
+                readerError.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 3; i++) {
+            randomForest.refresh(newRows, 2);
+        }
+        refreshing.set(false);
+        reader.join();
+        assertNull("A reader saw a half-refreshed forest: " + readerError.get(), readerError.get());
+
+        try {
+            randomForest.refresh(newRows, 11);
+            fail("Retraining more trees than the forest has was accepted!");
+        } catch (IllegalArgumentException expected) {
+            System.out.println("Rejected: " + expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testRefreshImputesNewRows() throws IOException {
+        // Test that rows with missing cells are appended with their statistics and imputed by a refresh like the training data
+        System.out.println("Running testRefreshImputesNewRows...");
+
+        DatasetGenerator generator = new DatasetGenerator();
+        generator.setSeed(21);
+        FeatureMatrix history = dataManager.cleanMatrix(generator.generate(3000));
+        generator.setSeed(22);
+        generator.setMissingRate(0.2);
+        FeatureMatrix holed = generator.generate(1000);
+        FeatureSchema schema = holed.getSchema();
+
+        // The appended statistics cover the new rows, so cleaning the result leaves no missing cell
+        FeatureMatrix appended = history.append(holed);
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            BitSet expectedMissing = new BitSet();
+            for (int r = 0; r < holed.getNumRows(); r++) {
+                if (schema.isNumeric(f) ? Double.isNaN(holed.getNumericColumn(f)[r]) : holed.getCategoryColumn(f)[r] == FeatureMatrix.MISSING) {
+                    expectedMissing.set(3000 + r);
+                }
+            }
+            assertFalse("Generator left no cell missing!", expectedMissing.isEmpty());
+            assertEquals("Missing cells of the appended rows were not recorded!", expectedMissing, appended.getColumnStats().getMissing(f));
+        }
+        dataManager.cleanMatrix(appended);
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            for (int r = 0; r < appended.getNumRows(); r++) {
+                assertFalse("Appended cell was not imputed!", schema.isNumeric(f)
+                        ? Double.isNaN(appended.getNumericColumn(f)[r]) : appended.getCategoryColumn(f)[r] == FeatureMatrix.MISSING);
+            }
+        }
+
+        // Refreshing with the raw rows grows the same trees as refreshing with rows imputed from the training statistics
+        int numFeatures = schema.getFeatureCount();
+        double[][] numericColumns = new double[numFeatures][];
+        int[][] categoryColumns = new int[numFeatures][];
+        for (int f = 0; f < numFeatures; f++) {
+            if (schema.isNumeric(f)) {
+                numericColumns[f] = holed.getNumericColumn(f).clone();
+                for (int r = 0; r < holed.getNumRows(); r++) {
+                    if (Double.isNaN(numericColumns[f][r])) {
+                        numericColumns[f][r] = history.getColumnStats().getMean(f);
+                    }
+                }
+            } else {
+                categoryColumns[f] = holed.getCategoryColumn(f).clone();
+                for (int r = 0; r < holed.getNumRows(); r++) {
+                    if (categoryColumns[f][r] == FeatureMatrix.MISSING) {
+                        categoryColumns[f][r] = history.getColumnStats().getMode(f);
+                    }
+                }
+            }
+        }
+        FeatureMatrix imputed = new FeatureMatrix(schema, holed.getNumRows(), numericColumns, categoryColumns, holed.getLabels());
+        byte[][] saved = new byte[2][];
+        for (int run = 0; run < 2; run++) {
+            RandomForest forest = new RandomForest(4);
+            forest.setSeed(23);
+            forest.train(history);
+            forest.refresh(run == 0 ? holed : imputed, 2);
+            File modelFile = File.createTempFile("refreshed", ".model");
+            modelFile.deleteOnExit();
+            ModelFile.save(forest, modelFile.getPath());
+            saved[run] = Files.readAllBytes(modelFile.toPath());
+        }
+        assertArrayEquals("Refresh did not impute the new rows' missing cells!", saved[0], saved[1]);
+    }
+
+    @Test
+    public void testModelHotSwap() throws Exception {
+        // Test that the holder keeps serving during a retrain, swaps the new model in, and rolls back
+        System.out.println("Running testModelHotSwap...");
+
+        DatasetGenerator generator = new DatasetGenerator();
+        generator.setSeed(21);
+        FeatureMatrix data = generator.generate(2000);
+        randomForest.setSeed(7);
+        randomForest.train(data);
+        ModelHolder modelHolder = new ModelHolder(randomForest);
+        Map<String, Object> applicant = data.toRows().get(0);
+        try {
+            CountDownLatch trainerStarted = new CountDownLatch(1);
+            CountDownLatch releaseTrainer = new CountDownLatch(1);
+            CompletableFuture<ModelHolder.Snapshot> retrained = modelHolder.retrain(() -> {
+                trainerStarted.countDown();
+                try {
+                    releaseTrainer.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                RandomForest forest = new RandomForest(5);
+                forest.setSeed(8);
+                forest.train(data);
+                return forest;
+            });
+            assertTrue("Retraining did not start!", trainerStarted.await(10, TimeUnit.SECONDS));
+            ModelHolder.Prediction during = modelHolder.predict(applicant);
+            assertEquals("Serving changed during retraining!", 1, during.getVersion());
+            assertEquals("Served prediction differs!", randomForest.predict(applicant), during.getLabel());
+
+            releaseTrainer.countDown();
+            ModelHolder.Snapshot swapped = retrained.get(60, TimeUnit.SECONDS);
+            assertEquals("Retrained model has the wrong version!", 2, swapped.getVersion());
+            assertEquals("Retrained model is not serving!", 2, modelHolder.predict(applicant).getVersion());
+            assertTrue("Published forest was not frozen!", swapped.getForest().isFrozen());
+            try {
+                swapped.getForest().train(data);
+                fail("A published forest was retrained in place!");
+            } catch (IllegalStateException expected) {
+                System.out.println("Rejected: " + expected.getMessage());
+            }
+            for (Runnable setter : new Runnable[]{
+                    () -> swapped.getForest().setMaxDepth(2),
+                    () -> swapped.getForest().setListener(ForestListener.NONE),
+                    () -> swapped.getForest().setPredictionCache(null),
+                    () -> swapped.getForest().setUseCompiledTrees(false)}) {
+                try {
+                    setter.run();
+                    fail("A published forest was reconfigured!");
+                } catch (IllegalStateException expected) {
+                    // Settings of a frozen forest are fixed
+                }
+            }
+
+            assertSame("Rollback did not restore the previous model!", randomForest, modelHolder.rollback().getForest());
+            assertEquals("Rolled back model has the wrong version!", 1, modelHolder.predict(applicant).getVersion());
+            try {
+                modelHolder.rollback();
+                fail("Rolled back past the previous model!");
+            } catch (IllegalStateException expected) {
+                System.out.println("Rejected: " + expected.getMessage());
+            }
+
+            // A failed retrain leaves the current model serving
+            try {
+                modelHolder.retrain(() -> {
+                    throw new IllegalArgumentException("no data");
+                }).get(10, TimeUnit.SECONDS);
+                fail("A failed retrain completed normally!");
+            } catch (ExecutionException expected) {
+                assertTrue("Wrong failure was reported!", expected.getCause() instanceof IllegalArgumentException);
+            }
+            assertEquals("A failed retrain replaced the model!", 1, modelHolder.current().getVersion());
+        } finally {
+            modelHolder.close();
+        }
+    }
+
+    private void assertRoleModelStats(RecommendationManager recommendationManager, List<Map<String, Object>> roleModels) {
+        for (String key : new String[]{"Income", "Credit Score", "Debt-to-Income Ratio"}) {
+            double[] values = roleModels.stream().mapToDouble(row -> ((Number) row.get(key)).doubleValue()).sorted().toArray();
+            double mean = Arrays.stream(values).average().orElse(0.0);
+            assertEquals("Mean of " + key + " differs from a full scan!", mean,
+                    recommendationManager.getRoleModelStats().getMean(key), 1e-9 * Math.abs(mean));
+            for (double percentile : new double[]{10, 50, 90}) {
+                double exact = values[(int) (percentile / 100.0 * (values.length - 1))];
+                assertEquals("Percentile " + percentile + " of " + key + " is outside the sketch accuracy!", exact,
+                        recommendationManager.getRoleModelStats().getPercentile(key, percentile), 0.0100001 * Math.abs(exact));
+            }
+        }
+    }
+
     @Test
     public void testModelAccuracy() {
         System.out.println("Running testModelAccuracy...");
@@ -0,0 +1,463 @@
+package com.gyamjoDechen.controller;
+
+import com.gyamjoDechen.model.CategoryDictionary;
+import com.gyamjoDechen.model.ColumnStats;
+import com.gyamjoDechen.model.CompiledTree;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.FeatureSchema;
+import com.gyamjoDechen.model.RandomForest;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Scores CSV files of any size with a trained forest in a three-stage pipeline:
+ *   1. a reader thread reads the file in chunks of whole rows and parses them with a CsvChunkParser,
+ *   2. worker threads impute missing cells and score whole chunks with RandomForest.predictBatchClasses,
+ *   3. the calling thread writes every input row with its predicted rating (and optionally the share of
+ *      trees that voted for it) to the output CSV, in input order.
+ * The stages are connected by bounded queues, so at most queueCapacity + 2 chunks are held at any time
+ * and memory use does not depend on the file size.
+ *
+ * Missing cells are imputed like DataManager.cleanMatrix does, but with the means and modes frozen from
+ * the training data instead of ones computed from the file being scored. Columns the forest was not
+ * trained on are ignored. Quoted fields may contain newlines, as with DataManager.loadMatrix: chunks are cut
+ * where the parser found a row to end, and each row is copied to the output from its exact byte range.
+ */
+public class BulkScorer {
+    private final RandomForest randomForest;
+    private final FeatureSchema schema;
+    private final double[] imputedValues;  // Per model feature: the training mean, or the training mode's code
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private int chunkBytes = 4 << 20;
+    private int queueCapacity = 2 * threads;
+    private boolean writeVoteShare;
+    private long progressIntervalMillis;
+    private Consumer<Report> progressListener;
+
+    /**
+     * Creates a scorer for a forest trained on the given data; the data's imputation statistics
+     * (gathered if it has none) become the frozen imputation values.
+     */
+    public BulkScorer(RandomForest randomForest, FeatureMatrix trainingData) {
+        this.randomForest = randomForest;
+        this.schema = randomForest.getSchema();
+        if (schema == null) {
+            throw new IllegalArgumentException("The forest must be trained before it can score");
+        }
+
+        // Freeze the training mean or mode of every model feature, translated by name into the model schema
+        FeatureSchema trainingSchema = trainingData.getSchema();
+        ColumnStats stats = trainingData.getColumnStats() != null ? trainingData.getColumnStats() : ColumnStats.of(trainingData);
+        imputedValues = new double[schema.getFeatureCount()];
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            int source = trainingSchema.indexOf(schema.getFeatureName(f));
+            if (source < 0 || trainingSchema.isNumeric(source) != schema.isNumeric(f)) {
+                imputedValues[f] = schema.isNumeric(f) ? Double.NaN : FeatureMatrix.MISSING;  // Nothing to impute with
+            } else if (schema.isNumeric(f)) {
+                imputedValues[f] = stats.getMean(source);
+            } else {
+                int mode = stats.getMode(source);
+                imputedValues[f] = mode == FeatureMatrix.MISSING ? FeatureMatrix.MISSING
+                        : schema.getDictionary(f).lookup(trainingSchema.getDictionary(source).decode(mode));
+            }
+        }
+    }
+
+    // Number of threads scoring chunks
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    // Approximate size of the chunks the input is read in; a longer line gets a chunk of its own
+    public void setChunkBytes(int chunkBytes) {
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("chunkBytes must be at least 1");
+        }
+        this.chunkBytes = chunkBytes;
+    }
+
+    // Number of chunks that may be read ahead of the writer
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    // Also write the fraction of trees that voted for the predicted rating
+    public void setWriteVoteShare(boolean writeVoteShare) {
+        this.writeVoteShare = writeVoteShare;
+    }
+
+    // Report the rows written so far and the rate to the listener at this interval while scoring (null to report nothing);
+    // the listener runs on the thread that called score
+    public void setProgressListener(long intervalMillis, Consumer<Report> listener) {
+        if (listener != null && intervalMillis < 1) {
+            throw new IllegalArgumentException("intervalMillis must be at least 1");
+        }
+        this.progressIntervalMillis = intervalMillis;
+        this.progressListener = listener;
+    }
+
+    /**
+     * Scores every row of the input CSV and writes it to the output CSV followed by a "Predicted <target>"
+     * column (and a "Vote Share" column when enabled). Returns the number of rows and the throughput.
+     */
+    public Report score(String inputPath, String outputPath) throws IOException {
+        long startTime = System.nanoTime();
+        try (FileChannel input = FileChannel.open(Paths.get(inputPath), StandardOpenOption.READ);
+             OutputStream output = new BufferedOutputStream(new FileOutputStream(outputPath), 1 << 16)) {
+            // Read the header and map its columns onto the model features
+            ChunkReader reader = new ChunkReader(input, chunkBytes);
+            byte[] headerLine = reader.readLine();
+            if (headerLine == null) {
+                throw new IOException(inputPath + " is empty");
+            }
+            String header = new String(headerLine, StandardCharsets.UTF_8);
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);  // Byte order mark
+            }
+            header = header.strip();
+            List<String> headers = CsvChunkParser.splitLine(header);
+            int[] columnRoles = new int[headers.size()];
+            for (int i = 0; i < headers.size(); i++) {
+                columnRoles[i] = headers.get(i).isEmpty() ? CsvChunkParser.IGNORED : schema.indexOf(headers.get(i));
+                if (columnRoles[i] < 0) {
+                    columnRoles[i] = CsvChunkParser.IGNORED;
+                }
+            }
+            boolean[] numeric = new boolean[schema.getFeatureCount()];
+            for (int f = 0; f < numeric.length; f++) {
+                numeric[f] = schema.isNumeric(f);
+            }
+            CsvChunkParser parser = new CsvChunkParser(columnRoles, numeric);
+
+            output.write(header.getBytes(StandardCharsets.UTF_8));
+            output.write(csvField("Predicted " + schema.getTargetFeature(), true));
+            if (writeVoteShare) {
+                output.write(",Vote Share".getBytes(StandardCharsets.UTF_8));
+            }
+            output.write('\n');
+
+            return runPipeline(reader, parser, output, startTime);
+        }
+    }
+
+    private Report runPipeline(ChunkReader reader, CsvChunkParser parser, OutputStream output, long startTime) throws IOException {
+        // The writer takes chunks in input order from 'ordered'; workers take them in any order from 'work'
+        BlockingQueue<Batch> ordered = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch> work = new ArrayBlockingQueue<>(queueCapacity + threads + 1);  // Always has room for the end markers
+        List<Thread> stageThreads = new ArrayList<>();
+
+        stageThreads.add(new Thread(() -> {
+            try {
+                Batch batch;
+                while ((batch = reader.readBatch(parser)) != null) {
+                    ordered.put(batch);
+                    work.put(batch);
+                }
+                ordered.put(Batch.END);
+            } catch (InterruptedException e) {
+                // Scoring was abandoned
+            } catch (Throwable e) {
+                Batch failed = new Batch(null, null);
+                failed.done.completeExceptionally(e);
+                try {
+                    ordered.put(failed);  // The writer rethrows the failure when it reaches this batch
+                } catch (InterruptedException interrupted) {
+                    // Scoring was abandoned
+                }
+            } finally {
+                for (int t = 0; t < threads; t++) {
+                    work.offer(Batch.END);
+                }
+            }
+        }, "bulk-scorer-reader"));
+        for (int t = 0; t < threads; t++) {
+            stageThreads.add(new Thread(() -> {
+                try {
+                    Batch batch;
+                    while ((batch = work.take()) != Batch.END) {
+                        try {
+                            score(batch);
+                            batch.done.complete(batch);
+                        } catch (Throwable e) {
+                            batch.done.completeExceptionally(e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Scoring was abandoned
+                }
+            }, "bulk-scorer-" + t));
+        }
+        for (Thread thread : stageThreads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // Write the chunks in input order as they are scored
+        byte[][] labelFields = new byte[schema.getLabels().size()][];
+        for (int c = 0; c < labelFields.length; c++) {
+            labelFields[c] = csvField(schema.getLabels().decode(c), true);
+        }
+        byte[] unknownField = csvField("Unknown", true);
+        long rows = 0;
+        int chunks = 0;
+        long lastProgress = System.nanoTime();
+        try {
+            Batch batch;
+            while ((batch = ordered.take()) != Batch.END) {
+                batch.done.join();
+                rows += writeRows(batch, labelFields, unknownField, output);
+                chunks++;
+                if (progressListener != null && System.nanoTime() - lastProgress >= progressIntervalMillis * 1_000_000) {
+                    lastProgress = System.nanoTime();
+                    progressListener.accept(new Report(rows, chunks, lastProgress - startTime));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bulk scoring was interrupted");
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } finally {
+            for (Thread thread : stageThreads) {
+                thread.interrupt();  // No-op for threads that have finished
+            }
+        }
+        output.flush();
+        return new Report(rows, chunks, System.nanoTime() - startTime);
+    }
+
+    // Stage 2: encode a parsed chunk in the model schema, impute it and score it
+    private void score(Batch batch) {
+        CsvChunkParser.Chunk chunk = batch.chunk;
+        int numRows = chunk.getNumRows();
+        int numFeatures = schema.getFeatureCount();
+        double[][] numericColumns = new double[numFeatures][];
+        int[][] categoryColumns = new int[numFeatures][];
+        for (int f = 0; f < numFeatures; f++) {
+            if (schema.isNumeric(f)) {
+                double[] column = chunk.getNumericColumn(f);
+                double mean = imputedValues[f];
+                for (int r = 0; r < numRows; r++) {
+                    if (Double.isNaN(column[r])) {
+                        column[r] = mean;
+                    }
+                }
+                numericColumns[f] = column;
+            } else {
+                // Translate chunk-local codes into the model dictionary; unseen categories stay UNSEEN
+                List<String> categories = chunk.getCategories(f);
+                CategoryDictionary dictionary = schema.getDictionary(f);
+                int[] codes = new int[categories.size()];
+                for (int code = 0; code < codes.length; code++) {
+                    codes[code] = dictionary.lookup(categories.get(code));
+                }
+                int[] column = chunk.getCategoryColumn(f);
+                int mode = (int) imputedValues[f];
+                for (int r = 0; r < numRows; r++) {
+                    column[r] = column[r] == FeatureMatrix.MISSING ? mode : codes[column[r]];
+                }
+                categoryColumns[f] = column;
+            }
+        }
+        FeatureMatrix matrix = new FeatureMatrix(schema, numRows, numericColumns, categoryColumns, chunk.getLabels());
+        batch.voteShares = writeVoteShare ? new double[numRows] : null;
+        batch.classes = randomForest.predictBatchClasses(matrix, batch.voteShares);
+    }
+
+    // Stage 3: copy every row of the chunk to the output with its prediction, using the row bounds found by the parser
+    private int writeRows(Batch batch, byte[][] labelFields, byte[] unknownField, OutputStream output) throws IOException {
+        byte[] bytes = batch.bytes;
+        CsvChunkParser.Chunk chunk = batch.chunk;
+        int numRows = chunk.getNumRows();
+        for (int row = 0; row < numRows; row++) {
+            int start = chunk.getRowStart(row);
+            int end = chunk.getRowEnd(row);
+            output.write(bytes, start, (end > start && bytes[end - 1] == '\r' ? end - 1 : end) - start);
+            int prediction = batch.classes[row];
+            output.write(prediction == CompiledTree.UNKNOWN ? unknownField : labelFields[prediction]);
+            if (batch.voteShares != null) {
+                output.write(',');
+                output.write(formatShare(batch.voteShares[row]));
+            }
+            output.write('\n');
+        }
+        return numRows;
+    }
+
+    // Locale.ROOT, so a locale with a decimal comma cannot split the column
+    private static byte[] formatShare(double share) {
+        return String.format(Locale.ROOT, "%.4f", share).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // A value as a CSV field, quoted if needed, optionally preceded by the separator
+    private static byte[] csvField(String value, boolean leadingComma) {
+        String field = value.contains(",") || value.contains("\"") ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+        return ((leadingComma ? "," : "") + field).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A chunk of input lines as it moves through the pipeline.
+     */
+    private static final class Batch {
+        static final Batch END = new Batch(null, null);
+
+        final byte[] bytes;
+        final CsvChunkParser.Chunk chunk;
+        final CompletableFuture<Batch> done = new CompletableFuture<>();
+        int[] classes;
+        double[] voteShares;
+
+        Batch(byte[] bytes, CsvChunkParser.Chunk chunk) {
+            this.bytes = bytes;
+            this.chunk = chunk;
+        }
+    }
+
+    /**
+     * Reads a file sequentially in chunks that end at a row boundary, carrying a partial last row
+     * over to the next chunk.
+     */
+    private static final class ChunkReader {
+        private final FileChannel channel;
+        private final int chunkBytes;
+        private byte[] pending = new byte[0];  // Bytes after the last newline of the previous read
+        private boolean endOfFile;
+
+        ChunkReader(FileChannel channel, int chunkBytes) {
+            this.channel = channel;
+            this.chunkBytes = chunkBytes;
+        }
+
+        // The first line without its newline, or null for an empty file
+        byte[] readLine() throws IOException {
+            int newline;
+            while ((newline = indexOf(pending, (byte) '\n', 0)) < 0 && !endOfFile) {
+                fill();
+            }
+            if (newline < 0) {
+                byte[] line = pending;
+                pending = new byte[0];
+                return line.length == 0 ? null : line;
+            }
+            byte[] line = Arrays.copyOf(pending, newline);
+            pending = Arrays.copyOfRange(pending, newline + 1, pending.length);
+            return line;
+        }
+
+        // The next chunk of whole rows with its parsed columns, or null at the end of the file.
+        // The rows starting before the last newline are parsed; if the last of them is still open at the end of
+        // the bytes read (a quoted field holding that newline), more bytes are read and the chunk parsed again
+        Batch readBatch(CsvChunkParser parser) throws IOException {
+            while (!endOfFile && (pending.length < chunkBytes || lastNewline(pending) < 0)) {
+                fill();
+            }
+            if (pending.length == 0) {
+                return null;
+            }
+            CsvChunkParser.Chunk chunk;
+            while (true) {
+                chunk = parser.parse(ByteBuffer.wrap(pending), 0, endOfFile ? pending.length : lastNewline(pending) + 1);
+                int end = chunk.getEnd();
+                if (endOfFile || (!chunk.endsInsideQuotes() && pending[end - 1] == '\n')) {
+                    break;
+                }
+                fill();
+            }
+            int cut = chunk.getEnd();
+            byte[] bytes = cut == pending.length ? pending : Arrays.copyOf(pending, cut);
+            pending = cut == pending.length ? new byte[0] : Arrays.copyOfRange(pending, cut, pending.length);
+            return new Batch(bytes, chunk);
+        }
+
+        // Append up to chunkBytes more bytes of the file to the pending bytes
+        private void fill() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(chunkBytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    endOfFile = true;
+                    break;
+                }
+            }
+            byte[] grown = Arrays.copyOf(pending, pending.length + buffer.position());
+            System.arraycopy(buffer.array(), 0, grown, pending.length, buffer.position());
+            pending = grown;
+        }
+
+        private static int lastNewline(byte[] bytes) {
+            for (int i = bytes.length - 1; i >= 0; i--) {
+                if (bytes[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int indexOf(byte[] bytes, byte value, int from) {
+            for (int i = from; i < bytes.length; i++) {
+                if (bytes[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Rows and chunks scored and the time taken.
+     */
+    public static class Report {
+        private final long rows;
+        private final int chunks;
+        private final long nanos;
+
+        Report(long rows, int chunks, long nanos) {
+            this.rows = rows;
+            this.chunks = chunks;
+            this.nanos = nanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getRowsPerSecond() {
+            return nanos == 0 ? 0.0 : rows / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Scored %d rows in %d chunks in %.2f s (%.0f rows/s)", rows, chunks, nanos / 1e9, getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.gyamjoDechen.controller;
+
+import com.gyamjoDechen.model.ColumnStats;
+import com.gyamjoDechen.model.FeatureMatrix;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses a chunk of CSV bytes straight into primitive columns.
+ * Bytes are read in place from a ByteBuffer, e.g. a memory-mapped slice of the file, and cells are never
+ * turned into Strings: numbers go through a hand-rolled parser and categorical values are looked up by
+ * their bytes in a per-chunk dictionary, so only the first occurrence of each category allocates.
+ * Quoted fields may contain commas, newlines and doubled quotes ("").
+ * One parser may be used by several threads at once; all per-chunk state lives in the returned Chunk.
+ */
+public class CsvChunkParser {
+    // Role of a CSV column that is not loaded
+    public static final int IGNORED = -1;
+    // Role of the target column
+    public static final int TARGET = -2;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final int[] columnRoles;   // Per CSV column: feature index, TARGET or IGNORED
+    private final boolean[] numeric;   // Per feature: numeric or categorical
+
+    public CsvChunkParser(int[] columnRoles, boolean[] numeric) {
+        this.columnRoles = columnRoles.clone();
+        this.numeric = numeric.clone();
+    }
+
+    /**
+     * Parses the rows that start in bytes[start, end), reading the buffer by absolute position; start must be
+     * at the start of a row. A row whose quoted field holds a newline is read to its end even past end, up to
+     * the buffer's limit, so Chunk.getEnd tells where the next row starts.
+     */
+    public Chunk parse(ByteBuffer bytes, int start, int end) {
+        Chunk chunk = new Chunk(numeric, Math.max(16, (end - start) / 48));
+        int limit = bytes.limit();
+        byte[] field = new byte[256];
+        int position = start;
+        boolean inQuotes = false;
+        while (position < end) {
+            // Skip blank lines
+            byte first = bytes.get(position);
+            if (first == '\n' || first == '\r') {
+                position++;
+                continue;
+            }
+            chunk.startRow(position);
+            int column = 0;
+            boolean endOfRow = false;
+            while (!endOfRow) {
+                // Copy the field into the buffer, removing quotes and surrounding whitespace
+                int length = 0;
+                boolean quoted = false;
+                inQuotes = false;
+                while (position < limit) {
+                    byte b = bytes.get(position);
+                    if (inQuotes) {
+                        if (b == '"') {
+                            if (position + 1 < limit && bytes.get(position + 1) == '"') {
+                                position++;  // Doubled quote inside a quoted field
+                            } else {
+                                inQuotes = false;
+                                position++;
+                                continue;
+                            }
+                        }
+                    } else if (b == ',' || b == '\n') {
+                        break;
+                    } else if (quoted && b <= ' ') {
+                        position++;  // Whitespace after the closing quote
+                        continue;
+                    } else if (b == '"' && isBlank(field, length)) {
+                        quoted = true;
+                        inQuotes = true;
+                        length = 0;  // Drop whitespace before the opening quote
+                        position++;
+                        continue;
+                    }
+                    if (length == field.length) {
+                        field = Arrays.copyOf(field, length * 2);
+                    }
+                    field[length++] = b;
+                    position++;
+                }
+                endOfRow = position >= limit || bytes.get(position) == '\n';
+                if (endOfRow) {
+                    chunk.rowEnds[chunk.numRows] = Math.min(position, limit);
+                }
+                position++;  // Skip the separator or newline
+
+                int from = 0;
+                int to = length;
+                if (!quoted) {
+                    while (from < to && field[from] <= ' ') from++;
+                    while (to > from && field[to - 1] <= ' ') to--;
+                }
+                if (column < columnRoles.length) {
+                    chunk.setCell(columnRoles[column], field, from, to);
+                }
+                column++;
+            }
+            chunk.endRow();
+        }
+        chunk.end = Math.min(position, limit);
+        chunk.endsInsideQuotes = inQuotes;
+        return chunk;
+    }
+
+    // Split one line (such as the header) into trimmed fields using the same quoting rules as parse
+    public static List<String> splitLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuotes = false;
+        for (int i = 0; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : ',';
+            if (inQuotes) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    inQuotes = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == ',') {
+                fields.add(quoted ? field.toString() : field.toString().trim());
+                field.setLength(0);
+                quoted = false;
+            } else if (c == '"' && field.toString().isBlank()) {
+                quoted = true;
+                inQuotes = true;
+                field.setLength(0);
+            } else if (!quoted || c > ' ') {
+                field.append(c);
+            }
+        }
+        return fields;
+    }
+
+    private static boolean isBlank(byte[] field, int length) {
+        for (int i = 0; i < length; i++) {
+            if (field[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a decimal number from bytes[from, to) the way Double.parseDouble would.
+     * Plain decimals with up to 18 significant digits and a small exponent are computed with one exact
+     * multiplication or division; anything else falls back to Double.parseDouble. Empty input is
+     * missing (NaN) and invalid input is 0.0, matching DataManager.loadData.
+     */
+    static double parseNumber(byte[] bytes, int from, int to) {
+        if (from == to) {
+            return Double.NaN;
+        }
+        int i = from;
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (digits < 18) {
+                    if (mantissa != 0 || b != '0') {
+                        digits++;
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (seenPoint) {
+                        scale--;
+                    }
+                } else {
+                    return parseSlow(bytes, from, to);  // Too many digits for the exact fast path
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return parseSlow(bytes, from, to);  // Exponent, NaN, Infinity or invalid input
+            }
+        }
+        if (!seenDigit) {
+            return parseSlow(bytes, from, to);
+        }
+        double value = mantissa;
+        if (mantissa >= (1L << 53) || -scale >= POWERS_OF_TEN.length) {
+            return parseSlow(bytes, from, to);
+        }
+        if (scale < 0) {
+            value /= POWERS_OF_TEN[-scale];
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseSlow(byte[] bytes, int from, int to) {
+        try {
+            return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+
+    /**
+     * Rows parsed from one chunk: primitive columns plus chunk-local category and label dictionaries.
+     * Codes are local to the chunk and numbered in order of first appearance within it.
+     * Imputation statistics for the chunk's rows are gathered as each row is completed.
+     */
+    public static class Chunk {
+        private final boolean[] numeric;
+        private int numRows;
+        private int capacity;
+        final double[][] numericColumns;
+        final int[][] categoryColumns;
+        int[] labels;
+        int[] rowStarts;           // Position of each row's first byte
+        int[] rowEnds;             // Position of each row's terminating newline, or the buffer's limit
+        final ByteDictionary[] dictionaries;
+        final ByteDictionary labelDictionary = new ByteDictionary();
+        final ColumnStats stats;
+        int end;                   // Position after the last row parsed
+        boolean endsInsideQuotes;  // The last row ran into the buffer's limit inside a quoted field
+
+        Chunk(boolean[] numeric, int capacity) {
+            this.numeric = numeric;
+            this.stats = new ColumnStats(numeric);
+            this.capacity = capacity;
+            this.numericColumns = new double[numeric.length][];
+            this.categoryColumns = new int[numeric.length][];
+            this.dictionaries = new ByteDictionary[numeric.length];
+            for (int f = 0; f < numeric.length; f++) {
+                if (numeric[f]) {
+                    numericColumns[f] = new double[capacity];
+                } else {
+                    categoryColumns[f] = new int[capacity];
+                    dictionaries[f] = new ByteDictionary();
+                }
+            }
+            this.labels = new int[capacity];
+            this.rowStarts = new int[capacity];
+            this.rowEnds = new int[capacity];
+        }
+
+        public int getNumRows() {
+            return numRows;
+        }
+
+        // Position in the parsed buffer where the next row starts; past the parsed range if its last row held a quoted newline
+        public int getEnd() {
+            return end;
+        }
+
+        // Whether the last row was cut off by the end of the buffer inside a quoted field
+        public boolean endsInsideQuotes() {
+            return endsInsideQuotes;
+        }
+
+        // Bytes [getRowStart(row), getRowEnd(row)) of the parsed buffer hold the row as written, quoted newlines included
+        public int getRowStart(int row) {
+            return rowStarts[row];
+        }
+
+        public int getRowEnd(int row) {
+            return rowEnds[row];
+        }
+
+        public double[] getNumericColumn(int feature) {
+            return numericColumns[feature];
+        }
+
+        public int[] getCategoryColumn(int feature) {
+            return categoryColumns[feature];
+        }
+
+        public int[] getLabels() {
+            return labels;
+        }
+
+        // Chunk-local category values of a feature, indexed by local code
+        public List<String> getCategories(int feature) {
+            return dictionaries[feature].values;
+        }
+
+        // Imputation statistics of the chunk, with chunk-local rows and codes
+        public ColumnStats getStats() {
+            return stats;
+        }
+
+        // Chunk-local label values, indexed by local code
+        public List<String> getLabelValues() {
+            return labelDictionary.values;
+        }
+
+        // Begin a row at the given position with every cell missing
+        private void startRow(int position) {
+            if (numRows == capacity) {
+                capacity *= 2;
+                for (int f = 0; f < numeric.length; f++) {
+                    if (numeric[f]) {
+                        numericColumns[f] = Arrays.copyOf(numericColumns[f], capacity);
+                    } else {
+                        categoryColumns[f] = Arrays.copyOf(categoryColumns[f], capacity);
+                    }
+                }
+                labels = Arrays.copyOf(labels, capacity);
+                rowStarts = Arrays.copyOf(rowStarts, capacity);
+                rowEnds = Arrays.copyOf(rowEnds, capacity);
+            }
+            rowStarts[numRows] = position;
+            for (int f = 0; f < numeric.length; f++) {
+                if (numeric[f]) {
+                    numericColumns[f][numRows] = Double.NaN;
+                } else {
+                    categoryColumns[f][numRows] = FeatureMatrix.MISSING;
+                }
+            }
+            labels[numRows] = FeatureMatrix.MISSING;
+        }
+
+        private void setCell(int role, byte[] field, int from, int to) {
+            if (role == IGNORED) {
+                return;
+            }
+            if (role == TARGET) {
+                labels[numRows] = from == to ? FeatureMatrix.MISSING : labelDictionary.encode(field, from, to);
+            } else if (numeric[role]) {
+                numericColumns[role][numRows] = parseNumber(field, from, to);
+            } else {
+                categoryColumns[role][numRows] = from == to ? FeatureMatrix.MISSING : dictionaries[role].encode(field, from, to);
+            }
+        }
+
+        // Add the completed row to the statistics
+        private void endRow() {
+            for (int f = 0; f < numeric.length; f++) {
+                if (numeric[f]) {
+                    stats.addValue(f, numRows, numericColumns[f][numRows]);
+                } else {
+                    stats.addCategory(f, numRows, categoryColumns[f][numRows]);
+                }
+            }
+            numRows++;
+        }
+    }
+
+    /**
+     * Open-addressing hash table from raw value bytes to chunk-local codes.
+     */
+    static class ByteDictionary {
+        private byte[][] keys = new byte[16][];
+        private int[] codes = new int[16];
+        final List<String> values = new ArrayList<>();
+
+        int encode(byte[] bytes, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if (Arrays.equals(keys[slot], 0, keys[slot].length, bytes, from, to)) {
+                    return codes[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            // First occurrence of this value in the chunk
+            int code = values.size();
+            keys[slot] = Arrays.copyOfRange(bytes, from, to);
+            codes[slot] = code;
+            values.add(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+            if (values.size() * 2 > keys.length) {
+                grow();
+            }
+            return code;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            int[] oldCodes = codes;
+            keys = new byte[oldKeys.length * 2][];
+            codes = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                byte[] key = oldKeys[i];
+                if (key != null) {
+                    int hash = 1;
+                    for (byte b : key) {
+                        hash = 31 * hash + b;
+                    }
+                    int slot = (hash ^ (hash >>> 16)) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                    codes[slot] = oldCodes[i];
+                }
+            }
+        }
+    }
+}
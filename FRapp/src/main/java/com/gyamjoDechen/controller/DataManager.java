@@ -1,7 +1,22 @@
 package com.gyamjoDechen.controller;
 
+import com.gyamjoDechen.model.CategoryDictionary;
+import com.gyamjoDechen.model.ColumnStats;
+import com.gyamjoDechen.model.DatasetFile;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.FeatureSchema;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 
 /**
  * Handles loading and cleaning of data from CSV files.
@@ -9,52 +24,316 @@ import java.util.*;
  */
 public class DataManager {
 
+    // Columns that hold numerical values; every other non-target column is categorical
+    private static final Set<String> NUMERIC_COLUMNS = Set.of("Income", "Credit Score", "Debt-to-Income Ratio");
+
+    // Bounds on the size of the chunks a file is split into for parallel parsing
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    private static final long MAX_CHUNK_BYTES = 64 << 20;
+
     /**
      * Loads data from a CSV file and returns it as a list of maps.
      * Each map represents a row where the column headers are the keys.
+     * The file is parsed by loadMatrix with no target column and converted back to rows.
      */
     public List<Map<String, Object>> loadData(String filePath) {
-        List<Map<String, Object>> dataset = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            // Read the header row to get column names.
-            String line;
-            String[] headers = br.readLine().split(",");
-
-            // Read each row of data
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(",", -1);  // Split the row into values
-                Map<String, Object> dataPoint = new HashMap<>();
-
-                // Assign values to their respective keys (columns)
-                for (int i = 0; i < headers.length; i++) {
-                    String key = headers[i].trim();  // Remove any spaces from the header
-                    String value = values[i].trim();  // Remove spaces from the value
-
-                    // Handle numerical columns (Income, Credit Score, Debt-to-Income Ratio)
-                    if (key.equals("Income") || key.equals("Credit Score") || key.equals("Debt-to-Income Ratio")) {
-                        if (!value.isEmpty()) {
-                            try {
-                                // If the value is valid, parse it as a double
-                                dataPoint.put(key, Double.parseDouble(value));
-                            } catch (NumberFormatException e) {
-                                // If parsing fails, set it to 0.0
-                                dataPoint.put(key, 0.0);
-                            }
-                        } else {
-                            // If the value is empty, set it to null
-                            dataPoint.put(key, null);
-                        }
+        try {
+            return loadMatrix(filePath, null).toRows();
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();  // Handle any I/O exceptions
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Loads data from a CSV file straight into a columnar FeatureMatrix.
+     * Numerical columns become double[] columns and every other column is dictionary-encoded,
+     * with targetFeature used as the label column. Missing cells are left for cleanMatrix.
+     *
+     * The file is memory-mapped in newline-aligned chunks that a CsvChunkParser parses in parallel
+     * straight from the mapped pages. A row belongs to the chunk it starts in, so a quoted field holding a
+     * newline is read past its chunk's end. A chunk boundary chosen inside such a field is detected and
+     * the chunk after it is parsed again from where the row really ends.
+     * Chunk-local dictionaries are merged in file order, so category codes are the same as a
+     * sequential read would assign. The imputation statistics gathered while parsing are attached to
+     * the matrix for cleanMatrix.
+     * Binary DatasetFiles, e.g. from DatasetGenerator, are recognised by their magic number and loaded directly.
+     */
+    public FeatureMatrix loadMatrix(String filePath, String targetFeature) {
+        try {
+            if (DatasetFile.isDatasetFile(filePath)) {
+                return loadDataset(filePath, targetFeature);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load " + filePath, e);
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            // Read the header row to get column names and split them into features and target
+            long headerEnd = nextLineStart(channel, 0);
+            List<String> headers = readHeader(channel, headerEnd);
+            int[] columnRoles = columnRoles(headers, targetFeature);
+            FeatureSchema schema = headerSchema(headers, targetFeature);
+            boolean[] numeric = new boolean[schema.getFeatureCount()];
+            for (int f = 0; f < numeric.length; f++) {
+                numeric[f] = schema.isNumeric(f);
+            }
+
+            // Split the rest of the file into chunks that end at a line boundary
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            long chunkSize = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, (fileSize - headerEnd) / (4L * parallelism)));
+            List<long[]> ranges = new ArrayList<>();
+            long start = headerEnd;
+            while (start < fileSize) {
+                long end = start + chunkSize >= fileSize ? fileSize : nextLineStart(channel, start + chunkSize);
+                ranges.add(new long[]{start, end});
+                start = end;
+            }
+
+            // Map and parse the chunks in parallel, assuming every chunk starts at the start of a row
+            CsvChunkParser parser = new CsvChunkParser(columnRoles, numeric);
+            List<ForkJoinTask<CsvChunkParser.Chunk>> tasks = new ArrayList<>();
+            for (long[] range : ranges) {
+                tasks.add(ForkJoinPool.commonPool().submit(() -> parseRange(channel, parser, range[0], range[1])));
+            }
+
+            // Check the assumption in file order: a chunk is only valid if the rows before it ended at its start.
+            // Otherwise the previous chunk's last row had a quoted newline and ran into this chunk, so this
+            // chunk is parsed again from where that row ended, or skipped if the row covered all of it
+            List<CsvChunkParser.Chunk> chunks = new ArrayList<>();
+            long next = headerEnd;
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                CsvChunkParser.Chunk chunk = tasks.get(i).join();
+                if (next >= range[1]) {
+                    continue;
+                }
+                long chunkStart = range[0];
+                if (next != chunkStart) {
+                    chunkStart = next;
+                    chunk = parseRange(channel, parser, chunkStart, range[1]);
+                }
+                next = chunkStart + chunk.getEnd();
+                if (chunk.endsInsideQuotes() && next < fileSize) {
+                    throw new IOException("Quoted field is still open at byte " + next + "; a row may run at most "
+                            + (MAX_CHUNK_BYTES >> 20) + " MB past its chunk");
+                }
+                chunks.add(chunk);
+            }
+            return mergeChunks(schema, chunks);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load " + filePath, e);
+        }
+    }
+
+    /**
+     * Returns the schema loadMatrix would give the file, reading only its header row (or a DatasetFile's footer).
+     * Its dictionaries are empty, but it is enough to check whether a saved model fits the file's columns
+     * before the whole file is loaded.
+     */
+    public FeatureSchema loadSchema(String filePath, String targetFeature) {
+        try {
+            if (DatasetFile.isDatasetFile(filePath)) {
+                FeatureSchema schema = DatasetFile.loadSchema(filePath);
+                if (targetFeature != null && !targetFeature.equals(schema.getTargetFeature())) {
+                    throw new IllegalArgumentException(filePath + " has target column " + schema.getTargetFeature() + ", not " + targetFeature);
+                }
+                return schema;
+            }
+            try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+                return headerSchema(readHeader(channel, nextLineStart(channel, 0)), targetFeature);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load " + filePath, e);
+        }
+    }
+
+    /**
+     * Returns a supplier that loads and cleans the file on its first call and hands out the same matrix
+     * afterwards, e.g. so the data is only read once the saved model turns out to be unusable.
+     */
+    public Supplier<FeatureMatrix> cleanedMatrix(String filePath, String targetFeature) {
+        return new Supplier<>() {
+            private FeatureMatrix data;
+
+            @Override
+            public synchronized FeatureMatrix get() {
+                if (data == null) {
+                    data = cleanMatrix(loadMatrix(filePath, targetFeature));
+                }
+                return data;
+            }
+        };
+    }
+
+    /**
+     * Loads a binary DatasetFile, whose label column is fixed when it is written.
+     */
+    private FeatureMatrix loadDataset(String filePath, String targetFeature) throws IOException {
+        FeatureMatrix data = DatasetFile.load(filePath);
+        String target = data.getSchema().getTargetFeature();
+        if (targetFeature != null && !targetFeature.equals(target)) {
+            throw new IllegalArgumentException(filePath + " has target column " + target + ", not " + targetFeature);
+        }
+        return data;
+    }
+
+    /**
+     * Concatenates parsed chunks into one FeatureMatrix, translating chunk-local codes into the schema's dictionaries.
+     */
+    private FeatureMatrix mergeChunks(FeatureSchema schema, List<CsvChunkParser.Chunk> chunks) {
+        int numFeatures = schema.getFeatureCount();
+        int numRows = 0;
+        for (CsvChunkParser.Chunk chunk : chunks) {
+            numRows += chunk.getNumRows();
+        }
+
+        // Encode each chunk's values in chunk order, which is the order a sequential read would see them
+        int[][][] featureCodes = new int[chunks.size()][numFeatures][];
+        int[][] labelCodes = new int[chunks.size()][];
+        boolean[] numeric = new boolean[numFeatures];
+        for (int f = 0; f < numFeatures; f++) {
+            numeric[f] = schema.isNumeric(f);
+        }
+        ColumnStats stats = new ColumnStats(numeric);
+        int rowOffset = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            CsvChunkParser.Chunk chunk = chunks.get(c);
+            for (int f = 0; f < numFeatures; f++) {
+                if (!schema.isNumeric(f)) {
+                    featureCodes[c][f] = encodeAll(chunk.getCategories(f), schema.getDictionary(f));
+                }
+            }
+            labelCodes[c] = encodeAll(chunk.getLabelValues(), schema.getLabels());
+            stats.merge(chunk.getStats(), rowOffset, featureCodes[c]);
+            rowOffset += chunk.getNumRows();
+        }
+
+        double[][] numericColumns = new double[numFeatures][];
+        int[][] categoryColumns = new int[numFeatures][];
+        for (int f = 0; f < numFeatures; f++) {
+            if (schema.isNumeric(f)) {
+                numericColumns[f] = new double[numRows];
+            } else {
+                categoryColumns[f] = new int[numRows];
+            }
+        }
+        int[] labels = new int[numRows];
+
+        // Copy every chunk into its slice of the columns in parallel
+        List<ForkJoinTask<?>> copies = new ArrayList<>();
+        int offset = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            CsvChunkParser.Chunk chunk = chunks.get(c);
+            int chunkOffset = offset;
+            int[][] codes = featureCodes[c];
+            int[] labelCode = labelCodes[c];
+            copies.add(ForkJoinPool.commonPool().submit(() -> {
+                int n = chunk.getNumRows();
+                for (int f = 0; f < numFeatures; f++) {
+                    if (schema.isNumeric(f)) {
+                        System.arraycopy(chunk.getNumericColumn(f), 0, numericColumns[f], chunkOffset, n);
                     } else {
-                        // For other columns, add the value as is, or null if it's empty
-                        dataPoint.put(key, value.isEmpty() ? null : value);
+                        remap(chunk.getCategoryColumn(f), codes[f], categoryColumns[f], chunkOffset, n);
                     }
                 }
-                dataset.add(dataPoint);  // Add the row to the dataset
+                remap(chunk.getLabels(), labelCode, labels, chunkOffset, n);
+            }));
+            offset += chunk.getNumRows();
+        }
+        for (ForkJoinTask<?> copy : copies) {
+            copy.join();
+        }
+        FeatureMatrix matrix = new FeatureMatrix(schema, numRows, numericColumns, categoryColumns, labels);
+        matrix.setColumnStats(stats);
+        return matrix;
+    }
+
+    // Encodes chunk-local values into a dictionary; returns the global code for each local code
+    private int[] encodeAll(List<String> values, CategoryDictionary dictionary) {
+        int[] codes = new int[values.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = dictionary.encode(values.get(i));
+        }
+        return codes;
+    }
+
+    // Copies n local codes into target at offset, translating them and keeping MISSING as is
+    private void remap(int[] local, int[] codes, int[] target, int offset, int n) {
+        for (int r = 0; r < n; r++) {
+            int code = local[r];
+            target[offset + r] = code == FeatureMatrix.MISSING ? code : codes[code];
+        }
+    }
+
+    // Maps the file from start and parses the rows that start before end; a row may run on up to MAX_CHUNK_BYTES past end
+    // Column names of a CSV header row ending at headerEnd
+    private static List<String> readHeader(FileChannel channel, long headerEnd) throws IOException {
+        String header = new String(readBytes(channel, 0, headerEnd), StandardCharsets.UTF_8);
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);  // Byte order mark
+        }
+        return CsvChunkParser.splitLine(header.strip());
+    }
+
+    // Role of every CSV column: its feature index, or CsvChunkParser.TARGET for the target column
+    private static int[] columnRoles(List<String> headers, String targetFeature) {
+        int[] columnRoles = new int[headers.size()];
+        int numFeatures = 0;
+        for (int i = 0; i < headers.size(); i++) {
+            columnRoles[i] = headers.get(i).equals(targetFeature) ? CsvChunkParser.TARGET : numFeatures++;
+        }
+        return columnRoles;
+    }
+
+    // Schema of a CSV file: every column except the target is a feature, numerical if it is in NUMERIC_COLUMNS
+    private static FeatureSchema headerSchema(List<String> headers, String targetFeature) {
+        List<String> featureNames = new ArrayList<>();
+        for (String key : headers) {
+            if (!key.equals(targetFeature)) {
+                featureNames.add(key);
             }
-        } catch (IOException e) {
-            e.printStackTrace();  // Handle any I/O exceptions
         }
-        return dataset;  // Return the loaded dataset
+        boolean[] numeric = new boolean[featureNames.size()];
+        for (int f = 0; f < numeric.length; f++) {
+            numeric[f] = NUMERIC_COLUMNS.contains(featureNames.get(f));
+        }
+        return new FeatureSchema(featureNames.toArray(new String[0]), numeric, targetFeature);
+    }
+
+    private static CsvChunkParser.Chunk parseRange(FileChannel channel, CsvChunkParser parser, long start, long end) throws IOException {
+        long mapEnd = Math.min(channel.size(), end + MAX_CHUNK_BYTES);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, mapEnd - start);
+        return parser.parse(buffer, 0, (int) (end - start));
+    }
+
+    // Reads bytes [start, end) of the file onto the heap, e.g. the header row
+    private static byte[] readBytes(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.array();
+    }
+
+    // Returns the position just after the first newline at or after position, or the file size if there is none
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long fileSize = channel.size();
+        while (position < fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
     }
 
     /**
@@ -75,6 +354,49 @@ public class DataManager {
         return data;  // Return the cleaned dataset
     }
 
+    /**
+     * Cleans a columnar dataset in place by imputing missing numerical values with the column mean
+     * and missing categorical values with the column mode.
+     * Uses the statistics and missing-cell bitmaps gathered by loadMatrix when present, so only the
+     * missing cells are touched; otherwise the statistics are gathered in one pass first.
+     */
+    public FeatureMatrix cleanMatrix(FeatureMatrix data) {
+        FeatureSchema schema = data.getSchema();
+        ColumnStats stats = data.getColumnStats() != null ? data.getColumnStats() : ColumnStats.of(data);
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            BitSet missing = stats.getMissing(f);
+            if (schema.isNumeric(f)) {
+                imputeNumericalWithMean(data.getNumericColumn(f), missing, stats.getMean(f));
+            } else {
+                imputeCategoricalWithMode(data.getCategoryColumn(f), missing, stats.getMode(f));
+            }
+            missing.clear();  // The column has no missing cells left
+        }
+        data.setColumnStats(stats);
+        return data;  // Return the cleaned dataset
+    }
+
+    /**
+     * Sets the missing cells of a numerical column to the column mean.
+     */
+    private void imputeNumericalWithMean(double[] column, BitSet missing, double mean) {
+        for (int r = missing.nextSetBit(0); r >= 0; r = missing.nextSetBit(r + 1)) {
+            column[r] = mean;
+        }
+    }
+
+    /**
+     * Sets the missing cells of an encoded categorical column to the most frequent code.
+     */
+    private void imputeCategoricalWithMode(int[] column, BitSet missing, int mode) {
+        if (mode == FeatureMatrix.MISSING) {
+            throw new RuntimeException("No mode found");
+        }
+        for (int r = missing.nextSetBit(0); r >= 0; r = missing.nextSetBit(r + 1)) {
+            column[r] = mode;
+        }
+    }
+
     /**
      * Imputes missing numerical values by replacing them with the mean of the column.
      */
@@ -0,0 +1,445 @@
+package com.gyamjoDechen.controller;
+
+import com.gyamjoDechen.model.DatasetFile;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.FeatureSchema;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Generates synthetic datasets with the columns of the risk CSV, for benchmarks and load tests far
+ * bigger than the sample files. Rows are streamed to a CSV file or to a DatasetFile.
+ *
+ * Credit score, debt-to-income ratio, income and employment status are drawn from independent normal
+ * latent variables, and the label is High when a weighted sum of those latents plus Gaussian noise lies
+ * above the quantile that gives the requested share of High rows. Gender, education and marital status
+ * carry no signal. Rows are generated in blocks on the common ForkJoinPool, each block from its own
+ * generator split off the seed in block order, so the output depends only on the settings and the seed.
+ */
+public class DatasetGenerator {
+    public static final String TARGET = "Risk Rating";
+
+    private static final String[] FEATURES = {"Gender", "Education Level", "Marital Status", "Income", "Credit Score",
+            "Employment Status", "Debt-to-Income Ratio"};
+    private static final boolean[] NUMERIC = {false, false, false, true, true, false, true};
+    private static final int GENDER = 0, EDUCATION = 1, MARITAL = 2, INCOME = 3, CREDIT_SCORE = 4, EMPLOYMENT = 5, DEBT_TO_INCOME = 6;
+
+    private static final String[] GENDERS = {"Male", "Female", "Non-binary"};
+    private static final String[] EDUCATION_LEVELS = {"High School", "Bachelor's", "Master's", "PhD"};
+    private static final String[] MARITAL_STATUSES = {"Single", "Married", "Divorced", "Widowed"};
+    private static final String[] EMPLOYMENT_STATUSES = {"Employed", "Self-employed", "Unemployed"};
+    private static final String[] LABELS = {"Low", "High"};
+    private static final int HIGH = 1;
+
+    // Weights of the credit, debt, income and employment latents in the risk score, normalised to unit variance
+    private static final double[] RISK_WEIGHTS = normalise(0.6, 0.5, 0.3, 0.5);
+    private static final double EMPLOYMENT_TERCILE = 0.4307;  // Standard normal tercile boundary
+    private static final int BLOCK_ROWS = DatasetFile.MAX_BLOCK_ROWS;
+
+    private double missingRate = 0.05;  // Chance that any feature cell is left empty
+    private double highRiskShare = 0.4;  // Expected fraction of High rows, as in data.csv
+    private double labelNoise = 0.5;  // Standard deviation of the label noise relative to the risk score
+    private long seed = 42;
+
+    public void setMissingRate(double missingRate) {
+        if (!(missingRate >= 0.0 && missingRate <= 1.0)) {
+            throw new IllegalArgumentException("missingRate must be between 0 and 1");
+        }
+        this.missingRate = missingRate;
+    }
+
+    public double getMissingRate() {
+        return missingRate;
+    }
+
+    public void setHighRiskShare(double highRiskShare) {
+        if (!(highRiskShare > 0.0 && highRiskShare < 1.0)) {
+            throw new IllegalArgumentException("highRiskShare must be strictly between 0 and 1");
+        }
+        this.highRiskShare = highRiskShare;
+    }
+
+    public double getHighRiskShare() {
+        return highRiskShare;
+    }
+
+    // 0 makes the label a deterministic function of the latents; larger values blur the class boundary
+    public void setLabelNoise(double labelNoise) {
+        if (!(labelNoise >= 0.0) || Double.isInfinite(labelNoise)) {
+            throw new IllegalArgumentException("labelNoise must be a non-negative number");
+        }
+        this.labelNoise = labelNoise;
+    }
+
+    public double getLabelNoise() {
+        return labelNoise;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Schema of the generated data, with the dictionaries filled in a fixed order
+    public static FeatureSchema createSchema() {
+        FeatureSchema schema = new FeatureSchema(FEATURES, NUMERIC, TARGET);
+        encodeAll(schema, GENDER, GENDERS);
+        encodeAll(schema, EDUCATION, EDUCATION_LEVELS);
+        encodeAll(schema, MARITAL, MARITAL_STATUSES);
+        encodeAll(schema, EMPLOYMENT, EMPLOYMENT_STATUSES);
+        for (String label : LABELS) {
+            schema.getLabels().encode(label);
+        }
+        return schema;
+    }
+
+    // Generate rows in memory
+    public FeatureMatrix generate(int numRows) {
+        FeatureSchema schema = createSchema();
+        double[][] numericColumns = new double[FEATURES.length][];
+        int[][] categoryColumns = new int[FEATURES.length][];
+        for (int f = 0; f < FEATURES.length; f++) {
+            if (NUMERIC[f]) {
+                numericColumns[f] = new double[numRows];
+            } else {
+                categoryColumns[f] = new int[numRows];
+            }
+        }
+        int[] labels = new int[numRows];
+        int[] next = {0};
+        try {
+            generateBlocks(schema, numRows, Function.identity(), block -> {
+                for (int f = 0; f < FEATURES.length; f++) {
+                    if (NUMERIC[f]) {
+                        System.arraycopy(block.getNumericColumn(f), 0, numericColumns[f], next[0], block.getNumRows());
+                    } else {
+                        System.arraycopy(block.getCategoryColumn(f), 0, categoryColumns[f], next[0], block.getNumRows());
+                    }
+                }
+                System.arraycopy(block.getLabels(), 0, labels, next[0], block.getNumRows());
+                next[0] += block.getNumRows();
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // Nothing is written, so this cannot happen
+        }
+        return new FeatureMatrix(schema, numRows, numericColumns, categoryColumns, labels);
+    }
+
+    // Stream rows to a CSV file with the header and column order of data.csv
+    public void writeCsv(String filePath, long numRows) throws IOException {
+        FeatureSchema schema = createSchema();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, (String.join(",", FEATURES) + "," + TARGET + "\n").getBytes(StandardCharsets.UTF_8));
+            generateBlocks(schema, numRows, block -> formatCsv(schema, block), bytes -> writeFully(channel, bytes));
+        }
+    }
+
+    // Stream rows to a binary DatasetFile
+    public void writeDataset(String filePath, long numRows) throws IOException {
+        FeatureSchema schema = createSchema();
+        try (DatasetFile.Writer writer = new DatasetFile.Writer(filePath, schema)) {
+            generateBlocks(schema, numRows, Function.identity(), writer::write);
+        }
+    }
+
+    /**
+     * Generates the rows block by block on the common pool and hands each block, after the given
+     * conversion, to the sink in block order. A bounded window of blocks is in flight at a time, so
+     * memory stays constant however many rows are generated.
+     */
+    private <T> void generateBlocks(FeatureSchema schema, long numRows, Function<FeatureMatrix, T> conversion,
+                                    BlockSink<T> sink) throws IOException {
+        double threshold = inverseNormal(1.0 - highRiskShare);
+        SplittableRandom seeds = new SplittableRandom(seed);
+        int window = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+        Deque<ForkJoinTask<T>> inFlight = new ArrayDeque<>();
+        long submitted = 0;
+        while (submitted < numRows || !inFlight.isEmpty()) {
+            while (submitted < numRows && inFlight.size() < window) {
+                int rows = (int) Math.min(BLOCK_ROWS, numRows - submitted);
+                SplittableRandom random = seeds.split();
+                inFlight.add(ForkJoinPool.commonPool().submit(() -> conversion.apply(generateBlock(schema, rows, random, threshold))));
+                submitted += rows;
+            }
+            sink.accept(inFlight.poll().join());
+        }
+    }
+
+    private FeatureMatrix generateBlock(FeatureSchema schema, int rows, SplittableRandom random, double threshold) {
+        double[][] numericColumns = new double[FEATURES.length][];
+        int[][] categoryColumns = new int[FEATURES.length][];
+        for (int f = 0; f < FEATURES.length; f++) {
+            if (NUMERIC[f]) {
+                numericColumns[f] = new double[rows];
+            } else {
+                categoryColumns[f] = new int[rows];
+            }
+        }
+        int[] labels = new int[rows];
+        double noiseScale = 1.0 / Math.sqrt(1.0 + labelNoise * labelNoise);
+
+        for (int r = 0; r < rows; r++) {
+            // Latent risk factors: low credit, high debt, low income and unemployment all raise the risk
+            double credit = random.nextGaussian();
+            double debt = random.nextGaussian();
+            double income = random.nextGaussian();
+            double employment = random.nextGaussian();
+
+            numericColumns[CREDIT_SCORE][r] = Math.max(300, Math.min(850, Math.round(680 - 75 * credit)));
+            numericColumns[DEBT_TO_INCOME][r] = Math.max(1, Math.min(999999, Math.round(1e6 * (0.3 + 0.12 * debt)))) / 1e6;
+            numericColumns[INCOME][r] = Math.round(Math.exp(10.9 - 0.45 * income));
+            categoryColumns[EMPLOYMENT][r] = employment < -EMPLOYMENT_TERCILE ? 0 : employment < EMPLOYMENT_TERCILE ? 1 : 2;
+            categoryColumns[GENDER][r] = random.nextInt(GENDERS.length);
+            categoryColumns[EDUCATION][r] = random.nextInt(EDUCATION_LEVELS.length);
+            categoryColumns[MARITAL][r] = random.nextInt(MARITAL_STATUSES.length);
+
+            // The noisy score is standard normal, so the quantile threshold gives the requested class balance
+            double score = RISK_WEIGHTS[0] * credit + RISK_WEIGHTS[1] * debt + RISK_WEIGHTS[2] * income + RISK_WEIGHTS[3] * employment;
+            if (labelNoise > 0.0) {
+                score = (score + labelNoise * random.nextGaussian()) * noiseScale;
+            }
+            labels[r] = score > threshold ? HIGH : 0;
+
+            // Blank out cells at the configured rate
+            if (missingRate > 0.0) {
+                for (int f = 0; f < FEATURES.length; f++) {
+                    if (random.nextDouble() < missingRate) {
+                        if (NUMERIC[f]) {
+                            numericColumns[f][r] = Double.NaN;
+                        } else {
+                            categoryColumns[f][r] = FeatureMatrix.MISSING;
+                        }
+                    }
+                }
+            }
+        }
+        return new FeatureMatrix(schema, rows, numericColumns, categoryColumns, labels);
+    }
+
+    // Format a block as CSV lines without going through String, using pre-encoded category bytes
+    private static byte[] formatCsv(FeatureSchema schema, FeatureMatrix block) {
+        byte[][][] categories = new byte[FEATURES.length][][];
+        for (int f = 0; f < FEATURES.length; f++) {
+            if (!NUMERIC[f]) {
+                categories[f] = encodeValues(schema.getDictionary(f).size(), schema.getDictionary(f)::decode);
+            }
+        }
+        byte[][] labels = encodeValues(LABELS.length, code -> LABELS[code]);
+
+        CsvBuffer out = new CsvBuffer(block.getNumRows() * 96);
+        for (int r = 0; r < block.getNumRows(); r++) {
+            for (int f = 0; f < FEATURES.length; f++) {
+                if (NUMERIC[f]) {
+                    double value = block.getNumericColumn(f)[r];
+                    if (f == DEBT_TO_INCOME) {
+                        out.appendMicros(value);
+                    } else {
+                        out.appendLong(value);
+                    }
+                } else {
+                    int code = block.getCategoryColumn(f)[r];
+                    if (code != FeatureMatrix.MISSING) {
+                        out.append(categories[f][code]);
+                    }
+                }
+                out.append((byte) ',');
+            }
+            out.append(labels[block.getLabels()[r]]);
+            out.append((byte) '\n');
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[][] encodeValues(int count, IntFunction<String> decode) {
+        byte[][] values = new byte[count][];
+        for (int code = 0; code < count; code++) {
+            values[code] = decode.apply(code).getBytes(StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void encodeAll(FeatureSchema schema, int feature, String[] values) {
+        for (String value : values) {
+            schema.getDictionary(feature).encode(value);
+        }
+    }
+
+    private static double[] normalise(double... weights) {
+        double norm = 0.0;
+        for (double weight : weights) {
+            norm += weight * weight;
+        }
+        double scale = 1.0 / Math.sqrt(norm);
+        return Arrays.stream(weights).map(weight -> weight * scale).toArray();
+    }
+
+    /**
+     * Inverse of the standard normal CDF (Acklam's rational approximation, relative error below 1.2e-9).
+     */
+    static double inverseNormal(double p) {
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00};
+        final double low = 0.02425;
+
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+    /**
+     * Writes a synthetic dataset from the command line:
+     *   DatasetGenerator rows output.csv|output.frds [--missing rate] [--high share] [--noise sd] [--seed n]
+     * Files ending in .csv are written as CSV, anything else as a DatasetFile.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length % 2 != 0) {
+            System.err.println("Usage: DatasetGenerator rows output.csv|output.frds [--missing rate] [--high share] [--noise sd] [--seed n]");
+            System.exit(2);
+        }
+        long numRows = Long.parseLong(args[0]);
+        String output = args[1];
+        DatasetGenerator generator = new DatasetGenerator();
+        for (int i = 2; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--missing" -> generator.setMissingRate(Double.parseDouble(args[i + 1]));
+                case "--high" -> generator.setHighRiskShare(Double.parseDouble(args[i + 1]));
+                case "--noise" -> generator.setLabelNoise(Double.parseDouble(args[i + 1]));
+                case "--seed" -> generator.setSeed(Long.parseLong(args[i + 1]));
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        if (output.endsWith(".csv")) {
+            generator.writeCsv(output, numRows);
+        } else {
+            generator.writeDataset(output, numRows);
+        }
+        System.out.printf("Wrote %d rows to %s in %.1f s%n", numRows, output, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Receives generated blocks in order
+    private interface BlockSink<T> {
+        void accept(T block) throws IOException;
+    }
+
+    /**
+     * Growable byte array with ASCII number formatting for the CSV writer.
+     */
+    private static final class CsvBuffer {
+        private byte[] bytes;
+        private int size;
+
+        CsvBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void append(byte value) {
+            ensureCapacity(1);
+            bytes[size++] = value;
+        }
+
+        void append(byte[] values) {
+            ensureCapacity(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        // A whole number, or nothing for NaN
+        void appendLong(double value) {
+            if (!Double.isNaN(value)) {
+                appendDigits((long) value);
+            }
+        }
+
+        // A value with six decimals, or nothing for NaN
+        void appendMicros(double value) {
+            if (Double.isNaN(value)) {
+                return;
+            }
+            long micros = Math.round(value * 1e6);
+            if (micros < 0) {
+                append((byte) '-');
+                micros = -micros;
+            }
+            appendDigits(micros / 1_000_000);
+            append((byte) '.');
+            ensureCapacity(6);
+            long fraction = micros % 1_000_000;
+            for (int i = 5; i >= 0; i--) {
+                bytes[size + i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            size += 6;
+        }
+
+        private void appendDigits(long value) {
+            if (value < 0) {
+                append((byte) '-');
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest != 0; rest /= 10) {
+                digits++;
+            }
+            ensureCapacity(digits);
+            int end = size + digits;
+            int position = end;
+            do {
+                bytes[--position] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            size = end;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.gyamjoDechen.controller;
+
+import com.gyamjoDechen.model.RandomForest;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Holds the forest that serves predictions and replaces it without pausing them.
+ * Every published forest is frozen into a numbered, immutable Snapshot. Readers take the current snapshot
+ * with one atomic read and use it for a whole request, so a swap never mixes two models in one answer.
+ * Retraining builds a new forest on a background thread while the current one keeps serving, and the
+ * snapshot a swap replaced is kept so it can be rolled back to.
+ */
+public class ModelHolder {
+    // The serving snapshot and the one it replaced, swapped together so readers never see half a swap
+    private final AtomicReference<State> state;
+    private final AtomicLong versions = new AtomicLong();
+
+    // Builds the forest for retrain(); null until set
+    private volatile Supplier<RandomForest> trainer;
+
+    // Background thread for retraining, started on first use; a single thread runs one retrain at a time
+    private ExecutorService retrainer;
+    private boolean closed;
+
+    // Serve the given trained forest as version 1
+    public ModelHolder(RandomForest forest) {
+        state = new AtomicReference<>(new State(snapshot(forest), null));
+    }
+
+    // Snapshot serving predictions right now
+    public Snapshot current() {
+        return state.get().current;
+    }
+
+    // Predict with the current snapshot and report which version answered
+    public Prediction predict(Map<String, Object> input) {
+        Snapshot snapshot = current();
+        return new Prediction(snapshot.getForest().predict(input), snapshot.getVersion());
+    }
+
+    // Serve the given trained forest from now on, keeping the current snapshot for rollback
+    public Snapshot publish(RandomForest forest) {
+        Snapshot snapshot = snapshot(forest);
+        state.updateAndGet(current -> new State(snapshot, current.current));
+        return snapshot;
+    }
+
+    // Go back to the snapshot the current one replaced; the current one is dropped
+    public Snapshot rollback() {
+        return state.updateAndGet(current -> {
+            if (current.previous == null) {
+                throw new IllegalStateException("There is no previous model to roll back to");
+            }
+            return new State(current.previous, null);
+        }).current;
+    }
+
+    // Set how retrain() builds a new forest, e.g. () -> modelManager.trainAndSave(dataFilePath, data, 10)
+    public void setTrainer(Supplier<RandomForest> trainer) {
+        this.trainer = trainer;
+    }
+
+    // Retrain with the trainer set by setTrainer
+    public CompletableFuture<Snapshot> retrain() {
+        Supplier<RandomForest> currentTrainer = trainer;
+        if (currentTrainer == null) {
+            throw new IllegalStateException("No trainer has been set");
+        }
+        return retrain(currentTrainer);
+    }
+
+    /**
+     * Builds a new forest with the trainer on the background thread and publishes it once it is trained;
+     * predictions keep using the current snapshot meanwhile. If the trainer fails the current snapshot
+     * stays in place and the returned future completes exceptionally.
+     */
+    public CompletableFuture<Snapshot> retrain(Supplier<RandomForest> trainer) {
+        return CompletableFuture.supplyAsync(trainer, retrainer()).thenApply(this::publish);
+    }
+
+    // Stop the background thread once a running retrain has finished; predictions keep working
+    public synchronized void close() {
+        closed = true;
+        if (retrainer != null) {
+            retrainer.shutdown();
+        }
+    }
+
+    private synchronized ExecutorService retrainer() {
+        if (closed) {
+            throw new IllegalStateException("The model holder is closed");
+        }
+        if (retrainer == null) {
+            retrainer = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "model-retrainer");
+                thread.setDaemon(true);  // A retrain in progress must not keep the application alive
+                return thread;
+            });
+        }
+        return retrainer;
+    }
+
+    private Snapshot snapshot(RandomForest forest) {
+        if (forest.getSchema() == null) {
+            throw new IllegalArgumentException("The forest must be trained before it is served");
+        }
+        forest.freeze();
+        return new Snapshot(versions.incrementAndGet(), forest);
+    }
+
+    // A published forest and its version; versions count up from 1 in publishing order
+    public static final class Snapshot {
+        private final long version;
+        private final RandomForest forest;
+
+        private Snapshot(long version, RandomForest forest) {
+            this.version = version;
+            this.forest = forest;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public RandomForest getForest() {
+            return forest;
+        }
+
+        @Override
+        public String toString() {
+            return "model version " + version;
+        }
+    }
+
+    // A predicted risk rating together with the version of the model that predicted it
+    public static final class Prediction {
+        private final String label;
+        private final long version;
+
+        private Prediction(String label, long version) {
+            this.label = label;
+            this.version = version;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public String toString() {
+            return label + " (model version " + version + ")";
+        }
+    }
+
+    private static final class State {
+        final Snapshot current;
+        final Snapshot previous;
+
+        State(Snapshot current, Snapshot previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+}
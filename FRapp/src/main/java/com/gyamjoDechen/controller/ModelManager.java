@@ -0,0 +1,99 @@
+package com.gyamjoDechen.controller;
+
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.FeatureSchema;
+import com.gyamjoDechen.model.ForestListener;
+import com.gyamjoDechen.model.ModelFile;
+import com.gyamjoDechen.model.PredictionCache;
+import com.gyamjoDechen.model.RandomForest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Provides a trained RandomForest for a dataset, reusing a saved model file when possible.
+ * The model is stored next to the dataset as "<data file>.model" so later launches only
+ * have to map the file instead of retraining.
+ */
+public class ModelManager {
+
+    // Listener attached to every forest this manager loads or trains
+    private ForestListener listener = ForestListener.NONE;
+
+    // Number of predictions cached by each provided forest; 0 means no cache
+    private int predictionCacheSize = 0;
+
+    // Send training and prediction events of the provided forests to the listener
+    public void setListener(ForestListener listener) {
+        this.listener = listener;
+    }
+
+    // Give every provided forest a prediction cache of the given size (0 to disable)
+    public void setPredictionCacheSize(int predictionCacheSize) {
+        if (predictionCacheSize < 0) {
+            throw new IllegalArgumentException("predictionCacheSize must not be negative");
+        }
+        this.predictionCacheSize = predictionCacheSize;
+    }
+
+    /**
+     * Returns the forest saved for the data file if it is newer than the data and was trained on the
+     * same columns; otherwise trains a new forest on the cleaned data and saves it.
+     */
+    public RandomForest loadOrTrain(String dataFilePath, FeatureMatrix data, int numTrees) {
+        return loadOrTrain(dataFilePath, data.getSchema(), () -> data, numTrees);
+    }
+
+    /**
+     * Like loadOrTrain, but checks the saved forest against the data file's schema, e.g. from
+     * DataManager.loadSchema, and only asks for the cleaned data when it has to train a new forest.
+     */
+    public RandomForest loadOrTrain(String dataFilePath, FeatureSchema schema, Supplier<FeatureMatrix> data, int numTrees) {
+        File dataFile = new File(dataFilePath);
+        File modelFile = new File(getModelPath(dataFilePath));
+
+        if (modelFile.isFile() && modelFile.lastModified() >= dataFile.lastModified()) {
+            try {
+                RandomForest randomForest = ModelFile.load(modelFile.getPath());
+                if (randomForest.getSchema().hasSameColumns(schema)) {
+                    System.out.println("Loaded saved model from " + modelFile.getPath());
+                    randomForest.setListener(listener);
+                    attachCache(randomForest);
+                    return randomForest;
+                }
+                System.out.println("Saved model does not match the dataset columns; retraining.");
+            } catch (IOException e) {
+                System.out.println("Could not load saved model (" + e.getMessage() + "); retraining.");
+            }
+        }
+
+        // Train a new forest and save it for the next launch
+        return trainAndSave(dataFilePath, data.get(), numTrees);
+    }
+
+    // Train a new forest on the cleaned data and save it as the data file's model for the next launch,
+    // e.g. as the trainer of a ModelHolder retraining in the background
+    public RandomForest trainAndSave(String dataFilePath, FeatureMatrix data, int numTrees) {
+        String modelPath = getModelPath(dataFilePath);
+        RandomForest randomForest = new RandomForest(numTrees);
+        randomForest.setListener(listener);
+        attachCache(randomForest);
+        randomForest.train(data);
+        try {
+            ModelFile.save(randomForest, modelPath);
+        } catch (IOException e) {
+            System.out.println("Could not save model to " + modelPath + ": " + e.getMessage());
+        }
+        return randomForest;
+    }
+
+    private void attachCache(RandomForest randomForest) {
+        randomForest.setPredictionCache(predictionCacheSize > 0 ? new PredictionCache(predictionCacheSize) : null);
+    }
+
+    // Path of the model file kept for a data file
+    public String getModelPath(String dataFilePath) {
+        return dataFilePath + ".model";
+    }
+}
@@ -1,15 +1,117 @@
 package com.gyamjoDechen.controller;
 
+import com.gyamjoDechen.model.RoleModelIndex;
+import com.gyamjoDechen.model.RoleModelStats;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 public class RecommendationManager {
 
-    private List<Map<String, Object>> roleModels;
+    // Columns on which users are compared against the role models
+    private static final String[] ROLE_MODEL_COLUMNS = {"Income", "Credit Score", "Debt-to-Income Ratio"};
+
+    // Categories a user shares with the role models most similar to them
+    private static final String[] ROLE_MODEL_CATEGORIES = {"Employment Status", "Education Level"};
+
+    // Number of similar role models the gap analysis compares a user against
+    private static final int SIMILAR_ROLE_MODELS = 25;
+
+    // Percentile of all role models below which a user's value is in their weakest quarter
+    private static final double WEAKEST_QUARTER = 25;
+
+    // Aggregates of the role models (low-risk profiles), maintained as role models come and go
+    private final RoleModelStats roleModelStats = new RoleModelStats(ROLE_MODEL_COLUMNS);
+
+    // Nearest-neighbour index of the role models, used to find the ones most similar to a user
+    private final RoleModelIndex roleModelIndex = new RoleModelIndex(ROLE_MODEL_COLUMNS, ROLE_MODEL_CATEGORIES);
 
     // Constructor to initialize the role models (low-risk profiles)
     public RecommendationManager(List<Map<String, Object>> roleModels) {
-        this.roleModels = roleModels;
+        for (Map<String, Object> roleModel : roleModels) {
+            add(roleModel);  // Not the overridable addRoleModel, which a subclass could see before it is initialized
+        }
+    }
+
+    // Builds a manager whose role models are the "Low" risk rows of a labelled dataset, in a single pass
+    public static RecommendationManager forLowRiskProfiles(List<Map<String, Object>> dataset, String targetFeature) {
+        RecommendationManager recommendationManager = new RecommendationManager(List.of());
+        for (Map<String, Object> row : dataset) {
+            if ("Low".equalsIgnoreCase((String) row.get(targetFeature))) {
+                recommendationManager.addRoleModel(row);
+            }
+        }
+        return recommendationManager;
+    }
+
+    // Adds a low-risk profile to the role models and returns the id it can be removed with
+    public long addRoleModel(Map<String, Object> roleModel) {
+        return add(roleModel);
+    }
+
+    private long add(Map<String, Object> roleModel) {
+        roleModelStats.add(roleModel);
+        return roleModelIndex.add(roleModel);
+    }
+
+    // Removes the role model added under the given id
+    public void removeRoleModel(long roleModelId) {
+        roleModelStats.remove(roleModelIndex.remove(roleModelId));
+    }
+
+    // Returns the k role models most similar to the user, nearest first
+    public List<Map<String, Object>> findSimilarRoleModels(Map<String, Object> userInput, int k) {
+        return roleModelIndex.nearest(userInput, k);
+    }
+
+    // Means of the role-model columns over the role models most similar to the user, or over all of them if there are none
+    private double[] similarRoleModelAverages(Map<String, Object> userInput) {
+        List<Map<String, Object>> similar = findSimilarRoleModels(userInput, SIMILAR_ROLE_MODELS);
+        double[] averages = new double[ROLE_MODEL_COLUMNS.length];
+        for (int c = 0; c < ROLE_MODEL_COLUMNS.length; c++) {
+            double sum = 0.0;
+            int count = 0;
+            for (Map<String, Object> roleModel : similar) {
+                Object value = roleModel.get(ROLE_MODEL_COLUMNS[c]);
+                if (value != null) {
+                    sum += ((Number) value).doubleValue();
+                    count++;
+                }
+            }
+            averages[c] = count > 0 ? sum / count : roleModelStats.getMean(ROLE_MODEL_COLUMNS[c]);
+        }
+        return averages;
+    }
+
+    /**
+     * Gaps where the user's value is in the weakest quarter of all role models: an income or credit score below
+     * their 25th percentile, or a debt-to-income ratio above their 75th. Unlike the averages of the similar role
+     * models, these compare the user with the whole low-risk population.
+     */
+    private List<String> weakestQuarterGaps(Map<String, Object> userInput) {
+        List<String> gaps = new ArrayList<>();
+        double incomeCutoff = roleModelStats.getPercentile("Income", WEAKEST_QUARTER);
+        if (((Number) userInput.get("Income")).doubleValue() < incomeCutoff) {
+            gaps.add(String.format("- Your income is in the lowest quarter of all 'Low Risk' role models (25th percentile: $%,.0f). "
+                    + "Raising it would do the most to close the gap.", incomeCutoff));
+        }
+        double creditScoreCutoff = roleModelStats.getPercentile("Credit Score", WEAKEST_QUARTER);
+        if (((Number) userInput.get("Credit Score")).doubleValue() < creditScoreCutoff) {
+            gaps.add(String.format("- Your credit score is in the lowest quarter of all 'Low Risk' role models (25th percentile: %.0f). "
+                    + "Prioritize on-time payments and lower card balances.", creditScoreCutoff));
+        }
+        double debtRatioCutoff = roleModelStats.getPercentile("Debt-to-Income Ratio", 100 - WEAKEST_QUARTER);
+        if (((Number) userInput.get("Debt-to-Income Ratio")).doubleValue() > debtRatioCutoff) {
+            gaps.add(String.format("- Your debt-to-income ratio is higher than three quarters of all 'Low Risk' role models "
+                    + "(75th percentile: %.2f). Paying down debt should come first.", debtRatioCutoff));
+        }
+        return gaps;  // Comparisons with NaN (no role models) are false, so an empty population yields no gaps
+    }
+
+    // Means and percentiles of the role models
+    public RoleModelStats getRoleModelStats() {
+        return roleModelStats;
     }
 
     // Offers personalized recommendations based on risk prediction and user input
@@ -53,13 +155,14 @@ public class RecommendationManager {
 
         // Compare user input to role models
         recommendations.append("\n--- Recommendations Based on Role Models ---\n");
-        double averageIncome = calculateAverage("Income");
-        double averageCreditScore = calculateAverage("Credit Score");
-        double averageDebtToIncomeRatio = calculateAverage("Debt-to-Income Ratio");
+        double[] averages = similarRoleModelAverages(userInput); // Benchmarks from the most similar role models
+        double averageIncome = averages[0];
+        double averageCreditScore = averages[1];
+        double averageDebtToIncomeRatio = averages[2];
 
         double userIncome = (double) userInput.get("Income");
         if (userIncome < averageIncome) {
-            recommendations.append("- Your income is below the role model average of $")
+            recommendations.append("- Your income is below the similar role models' average of $")
                     .append(averageIncome)
                     .append(". Consider seeking additional sources of income or negotiating a salary increase.\n");
         } else {
@@ -70,7 +173,7 @@ public class RecommendationManager {
         if (userCreditScore < averageCreditScore) {
             recommendations.append("- Your credit score (")
                     .append(userCreditScore)
-                    .append(") is below the role model average of ")
+                    .append(") is below the similar role models' average of ")
                     .append(averageCreditScore)
                     .append(". Focus on improving credit through consistent payments.\n");
         } else {
@@ -81,12 +184,15 @@ public class RecommendationManager {
         if (userDebtToIncome > averageDebtToIncomeRatio) {
             recommendations.append("- Your debt-to-income ratio (")
                     .append(userDebtToIncome)
-                    .append(") is higher than the role model average of ")
+                    .append(") is higher than the similar role models' average of ")
                     .append(averageDebtToIncomeRatio)
                     .append(". Work on reducing debt or increasing your income.\n");
         } else {
             recommendations.append("- Your debt-to-income ratio is within the healthy range based on role model data.\n");
         }
+        for (String gap : weakestQuarterGaps(userInput)) {
+            recommendations.append(gap).append("\n");
+        }
 
         // Multi-factor recommendations based on user input
         recommendations.append("\n--- Multi-factor Recommendations ---\n");
@@ -127,49 +233,36 @@ public class RecommendationManager {
 
     // Assesses user input against role models to provide additional recommendations
     private void assessAgainstRoleModels(Map<String, Object> userInput, String riskPrediction) {
-        double averageIncome = calculateAverage("Income");
-        double averageCreditScore = calculateAverage("Credit Score");
-        double averageDebtToIncomeRatio = calculateAverage("Debt-to-Income Ratio");
+        double[] averages = similarRoleModelAverages(userInput); // Benchmarks from the most similar role models
+        double averageIncome = averages[0];
+        double averageCreditScore = averages[1];
+        double averageDebtToIncomeRatio = averages[2];
 
         System.out.println("Comparing your profile against successful 'Low Risk' role models:");
 
         double userIncome = (double) userInput.get("Income");
         if (userIncome < averageIncome) {
-            System.out.println("- Your income is below the role model average of $" + averageIncome + ". Consider seeking additional sources of income or negotiating a salary increase.");
+            System.out.println("- Your income is below the similar role models' average of $" + averageIncome + ". Consider seeking additional sources of income or negotiating a salary increase.");
         } else {
             System.out.println("- Your income matches the benchmarks of 'Low Risk' individuals.");
         }
 
         double userCreditScore = ((Number) userInput.get("Credit Score")).doubleValue();
         if (userCreditScore < averageCreditScore) {
-            System.out.println("- Your credit score (" + userCreditScore + ") is below the role model average of " + averageCreditScore + ". Focus on improving credit through consistent payments.");
+            System.out.println("- Your credit score (" + userCreditScore + ") is below the similar role models' average of " + averageCreditScore + ". Focus on improving credit through consistent payments.");
         } else {
             System.out.println("- Your credit score is aligned with the 'Low Risk' role model benchmarks.");
         }
 
         double userDebtToIncome = (double) userInput.get("Debt-to-Income Ratio");
         if (userDebtToIncome > averageDebtToIncomeRatio) {
-            System.out.println("- Your debt-to-income ratio (" + userDebtToIncome + ") is higher than the role model average (" + averageDebtToIncomeRatio + "). Work on reducing debt or increasing your income.");
+            System.out.println("- Your debt-to-income ratio (" + userDebtToIncome + ") is higher than the similar role models' average (" + averageDebtToIncomeRatio + "). Work on reducing debt or increasing your income.");
         } else {
             System.out.println("- Your debt-to-income ratio is within the healthy range based on role model data.");
         }
-    }
-
-    // Calculates the average value of a given key (e.g., "Income", "Credit Score", etc.) across role models
-    private double calculateAverage(String key) {
-        double sum = 0.0;
-        int count = 0;
-
-        // Iterate through the role models and calculate the sum of values for the given key
-        for (Map<String, Object> roleModel : roleModels) {
-            if (roleModel.get(key) != null) {
-                sum += (double) roleModel.get(key);
-                count++;
-            }
+        for (String gap : weakestQuarterGaps(userInput)) {
+            System.out.println(gap);
         }
-
-        // Return the average or 0 if no values are available
-        return count > 0 ? sum / count : 0.0;
     }
 
     // Provides multi-factor recommendations based on additional user input such as employment status, marital status, etc.
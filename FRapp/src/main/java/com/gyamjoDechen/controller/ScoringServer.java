@@ -0,0 +1,433 @@
+package com.gyamjoDechen.controller;
+
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.FeatureSchema;
+import com.gyamjoDechen.model.QuantileSketch;
+import com.gyamjoDechen.model.RandomForest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Headless HTTP/JSON scoring service around a trained RandomForest, built on the JDK's HttpServer with a
+ * virtual thread per request, so it runs without JavaFX.
+ *
+ * Endpoints:
+ *   POST /predict          one applicant object                  -> {"prediction": "...", "modelVersion": n}
+ *   POST /predict/batch    array of applicant objects            -> {"predictions": [...], "modelVersion": n}
+ *   POST /recommendations  one applicant object                  -> {"prediction": "...", "recommendations": "...", "modelVersion": n}
+ *   GET  /stats            per-endpoint request counts and latency percentiles
+ *   GET  /health           {"status": "ok", "modelVersion": n}
+ *
+ * At most maxConcurrentRequests requests are scored at a time; a request that cannot start or finish within
+ * the request timeout is answered with 503 or 504. The model is served from a ModelHolder, so it can be
+ * retrained and swapped while the server runs; each request is scored by the single snapshot it started with.
+ */
+public class ScoringServer {
+    private final ModelHolder modelHolder;
+    private final RecommendationManager recommendationManager;
+    private int maxConcurrentRequests = 256;
+    private long requestTimeoutMillis = 2000;
+    private int maxBatchRows = 10000;
+    private int maxBodyBytes = 16 << 20;
+
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+    private Semaphore permits;
+    private ExecutorService executor;
+    private HttpServer server;
+
+    // Serve a trained forest; it is frozen, so it can no longer be retrained in place
+    public ScoringServer(RandomForest randomForest, RecommendationManager recommendationManager) {
+        this(new ModelHolder(randomForest), recommendationManager);
+    }
+
+    // Serve whichever snapshot the holder currently publishes
+    public ScoringServer(ModelHolder modelHolder, RecommendationManager recommendationManager) {
+        this.modelHolder = modelHolder;
+        this.recommendationManager = recommendationManager;
+        for (String endpoint : new String[]{"/predict", "/predict/batch", "/recommendations"}) {
+            stats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    // Number of requests scored at the same time; further requests wait for a slot until their timeout
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    // Time a request may spend waiting for a slot and being scored
+    public void setRequestTimeoutMillis(long requestTimeoutMillis) {
+        if (requestTimeoutMillis < 1) {
+            throw new IllegalArgumentException("requestTimeoutMillis must be at least 1");
+        }
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    // Largest number of applicants in one batch request
+    public void setMaxBatchRows(int maxBatchRows) {
+        if (maxBatchRows < 1) {
+            throw new IllegalArgumentException("maxBatchRows must be at least 1");
+        }
+        this.maxBatchRows = maxBatchRows;
+    }
+
+    // Largest request body accepted
+    public void setMaxBodyBytes(int maxBodyBytes) {
+        if (maxBodyBytes < 1) {
+            throw new IllegalArgumentException("maxBodyBytes must be at least 1");
+        }
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    // Start listening on the given port of every interface (0 picks a free port)
+    public synchronized void start(int port) throws IOException {
+        start(new InetSocketAddress(port));
+    }
+
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The server is already running");
+        }
+        permits = new Semaphore(maxConcurrentRequests);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/predict", exchange -> handle(exchange, "/predict", this::predict));
+        server.createContext("/predict/batch", exchange -> handle(exchange, "/predict/batch", this::predictBatch));
+        server.createContext("/recommendations", exchange -> handle(exchange, "/recommendations", this::recommend));
+        server.createContext("/stats", exchange -> respond(exchange, 200, statsJson()));
+        server.createContext("/health", exchange -> respond(exchange, 200, health()));
+        server.start();
+    }
+
+    private Object health() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", "ok");
+        result.put("modelVersion", modelHolder.current().getVersion());
+        return result;
+    }
+
+    // Stop accepting requests, give running ones up to the delay to finish and shut down
+    public synchronized void stop(int delaySeconds) {
+        if (server != null) {
+            server.stop(delaySeconds);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    // Port the server listens on
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("The server is not running");
+        }
+        return server.getAddress().getPort();
+    }
+
+    public ModelHolder getModelHolder() {
+        return modelHolder;
+    }
+
+    private Object predict(Object body) {
+        ModelHolder.Snapshot snapshot = modelHolder.current();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("prediction", snapshot.getForest().predict(applicant(body)));
+        result.put("modelVersion", snapshot.getVersion());
+        return result;
+    }
+
+    private Object predictBatch(Object body) {
+        if (body instanceof Map && ((Map<?, ?>) body).get("applicants") instanceof List) {
+            body = ((Map<?, ?>) body).get("applicants");
+        }
+        if (!(body instanceof List)) {
+            throw new IllegalArgumentException("Expected an array of applicants");
+        }
+        List<?> array = (List<?>) body;
+        if (array.size() > maxBatchRows) {
+            throw new IllegalArgumentException("A batch holds at most " + maxBatchRows + " applicants");
+        }
+        ModelHolder.Snapshot snapshot = modelHolder.current();
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (array.isEmpty()) {
+            result.put("predictions", List.of());
+            result.put("modelVersion", snapshot.getVersion());
+            return result;
+        }
+        // Give every row all model features in the same order, since FeatureMatrix takes its columns from the first row
+        FeatureSchema schema = snapshot.getForest().getSchema();
+        List<Map<String, Object>> rows = new ArrayList<>(array.size());
+        for (Object element : array) {
+            Map<String, Object> applicant = applicant(element);
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int f = 0; f < schema.getFeatureCount(); f++) {
+                row.put(schema.getFeatureName(f), applicant.get(schema.getFeatureName(f)));
+            }
+            rows.add(row);
+        }
+        // Score the batch as one columnar block; the target column is absent
+        result.put("predictions", snapshot.getForest().predictBatch(FeatureMatrix.fromRows(rows, null)));
+        result.put("modelVersion", snapshot.getVersion());
+        return result;
+    }
+
+    private Object recommend(Object body) {
+        Map<String, Object> applicant = applicant(body);
+        for (String key : new String[]{"Income", "Credit Score", "Debt-to-Income Ratio"}) {
+            if (!(applicant.get(key) instanceof Number)) {
+                throw new IllegalArgumentException("Recommendations need a numeric \"" + key + "\"");
+            }
+        }
+        ModelHolder.Prediction prediction = modelHolder.predict(applicant);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("prediction", prediction.getLabel());
+        // Role-model queries share the index's read lock, so concurrent requests are not serialised here
+        result.put("recommendations", recommendationManager.getRecommendations(prediction.getLabel(), applicant));
+        result.put("modelVersion", prediction.getVersion());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> applicant(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected an applicant object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Runs a scoring endpoint: checks the method, reads the JSON body, waits for a concurrency slot and
+     * scores on a separate virtual thread so the response can be sent when the timeout expires.
+     */
+    private void handle(HttpExchange exchange, String endpoint, ScoringHandler handler) throws IOException {
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis);
+        EndpointStats endpointStats = stats.get(endpoint);
+        int status;
+        Object response;
+        try {
+            if (!exchange.getRequestURI().getPath().equals(endpoint)) {
+                status = 404;
+                response = error("No endpoint " + exchange.getRequestURI().getPath());
+            } else if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                status = 405;
+                response = error("Use POST");
+            } else {
+                Object body = Json.parse(readBody(exchange));
+                if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    endpointStats.rejected.increment();
+                    status = 503;
+                    response = error("Server is busy");
+                } else {
+                    // The scoring task returns the slot when it ends, even after its request timed out
+                    Future<Object> result = executor.submit(() -> {
+                        try {
+                            return handler.score(body);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                    try {
+                        response = result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        status = 200;
+                    } catch (TimeoutException e) {
+                        result.cancel(true);
+                        endpointStats.timedOut.increment();
+                        status = 504;
+                        response = error("Request timed out after " + requestTimeoutMillis + " ms");
+                    } catch (ExecutionException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        } catch (BodyTooLargeException e) {
+            status = 413;
+            response = error(e.getMessage());
+        } catch (IllegalArgumentException | ClassCastException e) {
+            status = 400;
+            response = error(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            response = error("Server is shutting down");
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable e) {
+            status = 500;
+            response = error("Internal error: " + e);
+        }
+        endpointStats.record(status, System.nanoTime() - startTime);
+        respond(exchange, status, response);
+    }
+
+    private String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (body.size() + read > maxBodyBytes) {
+                    throw new BodyTooLargeException("Request body is larger than " + maxBodyBytes + " bytes");
+                }
+                body.write(buffer, 0, read);
+            }
+            return body.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, Object> error(String message) {
+        return Map.of("error", String.valueOf(message));
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object response) throws IOException {
+        byte[] bytes = Json.write(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Map<String, Object> statsJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    // Per-endpoint counters and latency statistics
+    public EndpointStats getStats(String endpoint) {
+        EndpointStats endpointStats = stats.get(endpoint);
+        if (endpointStats == null) {
+            throw new IllegalArgumentException("No endpoint " + endpoint);
+        }
+        return endpointStats;
+    }
+
+    /**
+     * Scores a parsed JSON request body into a JSON-writable response.
+     */
+    private interface ScoringHandler {
+        Object score(Object body);
+    }
+
+    private static final class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        BodyTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Request counts by outcome and the latency of every request, with percentiles from a QuantileSketch.
+     */
+    public static class EndpointStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final QuantileSketch latencies = new QuantileSketch(0.01);
+
+        void record(int status, long nanos) {
+            requests.increment();
+            if (status != 200) {
+                errors.increment();
+            }
+            maxNanos.accumulate(nanos);
+            synchronized (latencies) {
+                latencies.add(nanos);
+            }
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        // Requests answered with anything but 200, including rejected and timed-out ones
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        // Requests that found no free slot before their timeout
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        public long getTimedOut() {
+            return timedOut.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        // Latency below which the given share (0-1) of requests finished, or NaN before the first request
+        public double getLatencyNanos(double quantile) {
+            synchronized (latencies) {
+                return latencies.getQuantile(quantile);
+            }
+        }
+
+        Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("requests", getRequests());
+            json.put("errors", getErrors());
+            json.put("rejected", getRejected());
+            json.put("timedOut", getTimedOut());
+            json.put("p50Millis", getLatencyNanos(0.5) / 1e6);
+            json.put("p99Millis", getLatencyNanos(0.99) / 1e6);
+            json.put("maxMillis", getMaxNanos() / 1e6);
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d errors, %d rejected, %d timed out), p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    getRequests(), getErrors(), getRejected(), getTimedOut(),
+                    getLatencyNanos(0.5) / 1e6, getLatencyNanos(0.99) / 1e6, getMaxNanos() / 1e6);
+        }
+    }
+
+    /**
+     * Serves the saved or newly trained model of a dataset: ScoringServer <data file> [port].
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ScoringServer <data file> [port]");
+            System.exit(2);
+        }
+        String dataFilePath = args[0];
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+
+        DataManager dataManager = new DataManager();
+        Supplier<FeatureMatrix> dataset = dataManager.cleanedMatrix(dataFilePath, "Risk Rating");
+        ModelManager modelManager = new ModelManager();
+        modelManager.setPredictionCacheSize(10000);  // Applications are often re-scored as they move through origination
+        ModelHolder modelHolder = new ModelHolder(modelManager.loadOrTrain(dataFilePath,
+                dataManager.loadSchema(dataFilePath, "Risk Rating"), dataset, 10));  // Checked against the header first
+        RecommendationManager recommendationManager = RecommendationManager.forLowRiskProfiles(dataset.get().toRows(), "Risk Rating");
+
+        ScoringServer scoringServer = new ScoringServer(modelHolder, recommendationManager);
+        scoringServer.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> scoringServer.stop(1)));
+        System.out.println("Scoring server listening on http://localhost:" + scoringServer.getPort());
+    }
+}
@@ -0,0 +1,45 @@
+package com.gyamjoDechen.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the distinct values of a categorical column to small integer codes.
+ * Codes are handed out in order of first appearance, starting at 0.
+ */
+public class CategoryDictionary {
+    // Code returned by lookup() for a value that was never seen while loading
+    public static final int UNSEEN = -2;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    // Returns the code for the given value, adding it to the dictionary if it is new
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    // Returns the code for the given value without modifying the dictionary
+    public int lookup(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : UNSEEN;
+    }
+
+    // Returns the original value for a code
+    public String decode(int code) {
+        return values.get(code);
+    }
+
+    // Number of distinct values in the dictionary
+    public int size() {
+        return values.size();
+    }
+}
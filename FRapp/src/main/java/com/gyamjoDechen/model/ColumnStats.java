@@ -0,0 +1,156 @@
+package com.gyamjoDechen.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Per-feature statistics used to impute missing values, gathered in one pass as rows are read.
+ * Numeric features keep a running count, mean and sum of squared deviations (Welford's method),
+ * categorical features keep a frequency counter per code, and every feature records the rows
+ * with a missing value in a bitmap.
+ */
+public class ColumnStats {
+    private final boolean[] numeric;
+    private final long[] count;          // Non-missing values seen per feature
+    private final double[] mean;         // Running mean of numeric features
+    private final double[] m2;           // Running sum of squared deviations from the mean
+    private final int[][] frequencies;   // [feature][code] for categorical features, null for numeric ones
+    private final BitSet[] missing;      // Rows with a missing value per feature
+
+    public ColumnStats(boolean[] numeric) {
+        this.numeric = numeric.clone();
+        this.count = new long[numeric.length];
+        this.mean = new double[numeric.length];
+        this.m2 = new double[numeric.length];
+        this.frequencies = new int[numeric.length][];
+        this.missing = new BitSet[numeric.length];
+        for (int f = 0; f < numeric.length; f++) {
+            if (!numeric[f]) {
+                frequencies[f] = new int[8];
+            }
+            missing[f] = new BitSet();
+        }
+    }
+
+    // Gather statistics for every row of a matrix, for data that was not built by a loader
+    public static ColumnStats of(FeatureMatrix data) {
+        return of(data, 0, data.getNumRows());
+    }
+
+    // Gather statistics for rows [from, to) of a matrix; missing cells are recorded at their row in the matrix
+    public static ColumnStats of(FeatureMatrix data, int from, int to) {
+        FeatureSchema schema = data.getSchema();
+        boolean[] numeric = new boolean[schema.getFeatureCount()];
+        for (int f = 0; f < numeric.length; f++) {
+            numeric[f] = schema.isNumeric(f);
+        }
+        ColumnStats stats = new ColumnStats(numeric);
+        for (int f = 0; f < numeric.length; f++) {
+            if (numeric[f]) {
+                double[] column = data.getNumericColumn(f);
+                for (int r = from; r < to; r++) {
+                    stats.addValue(f, r, column[r]);
+                }
+            } else {
+                int[] column = data.getCategoryColumn(f);
+                for (int r = from; r < to; r++) {
+                    stats.addCategory(f, r, column[r]);
+                }
+            }
+        }
+        return stats;
+    }
+
+    // Record the value of a numeric feature in a row; NaN marks the row as missing
+    public void addValue(int feature, int row, double value) {
+        if (Double.isNaN(value)) {
+            missing[feature].set(row);
+            return;
+        }
+        long n = ++count[feature];
+        double delta = value - mean[feature];
+        mean[feature] += delta / n;
+        m2[feature] += delta * (value - mean[feature]);
+    }
+
+    // Record the code of a categorical feature in a row; MISSING marks the row as missing
+    public void addCategory(int feature, int row, int code) {
+        if (code == FeatureMatrix.MISSING) {
+            missing[feature].set(row);
+            return;
+        }
+        int[] counts = frequencies[feature];
+        if (code >= counts.length) {
+            counts = frequencies[feature] = Arrays.copyOf(counts, Math.max(code + 1, counts.length * 2));
+        }
+        counts[code]++;
+        count[feature]++;
+    }
+
+    /**
+     * Adds the statistics of a later block of rows, such as one parsed chunk of a file.
+     * Its rows are shifted by rowOffset and its category codes translated through codeMaps[feature]
+     * (null for numeric features). Means are combined with Chan's parallel update, so the result
+     * does not depend on how the rows were split.
+     */
+    public void merge(ColumnStats other, int rowOffset, int[][] codeMaps) {
+        for (int f = 0; f < numeric.length; f++) {
+            if (numeric[f]) {
+                long n = count[f] + other.count[f];
+                if (other.count[f] > 0) {
+                    double delta = other.mean[f] - mean[f];
+                    mean[f] += delta * other.count[f] / n;
+                    m2[f] += other.m2[f] + delta * delta * count[f] * other.count[f] / n;
+                }
+                count[f] = n;
+            } else {
+                int[] otherCounts = other.frequencies[f];
+                for (int code = 0; code < otherCounts.length; code++) {
+                    if (otherCounts[code] > 0) {
+                        int mapped = codeMaps[f][code];
+                        if (mapped >= frequencies[f].length) {
+                            frequencies[f] = Arrays.copyOf(frequencies[f], Math.max(mapped + 1, frequencies[f].length * 2));
+                        }
+                        frequencies[f][mapped] += otherCounts[code];
+                    }
+                }
+                count[f] += other.count[f];
+            }
+            BitSet otherMissing = other.missing[f];
+            for (int r = otherMissing.nextSetBit(0); r >= 0; r = otherMissing.nextSetBit(r + 1)) {
+                missing[f].set(rowOffset + r);
+            }
+        }
+    }
+
+    public long getCount(int feature) {
+        return count[feature];
+    }
+
+    // Mean of a numeric feature, or 0.0 if it has no values
+    public double getMean(int feature) {
+        return mean[feature];
+    }
+
+    // Sample variance of a numeric feature, or 0.0 if it has fewer than two values
+    public double getVariance(int feature) {
+        return count[feature] > 1 ? m2[feature] / (count[feature] - 1) : 0.0;
+    }
+
+    // Most frequent code of a categorical feature (lowest code on ties), or MISSING if it has no values
+    public int getMode(int feature) {
+        int[] counts = frequencies[feature];
+        int mode = FeatureMatrix.MISSING;
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0 && (mode == FeatureMatrix.MISSING || counts[code] > counts[mode])) {
+                mode = code;
+            }
+        }
+        return mode;
+    }
+
+    // Rows where the feature is missing
+    public BitSet getMissing(int feature) {
+        return missing[feature];
+    }
+}
@@ -0,0 +1,108 @@
+package com.gyamjoDechen.model;
+
+/**
+ * Flat-array form of a trained DecisionTree used for fast inference.
+ * Node i is a leaf when feature[i] is LEAF; otherwise rows with value <= threshold[i] (numeric features)
+ * or whose category code is set in the bitmask categoryMask[i] (categorical features) continue at left[i],
+ * all others at right[i]. Codes of 64 and above, and unseen categories, always go right.
+ * Prediction is an iterative loop over primitive arrays with no maps, boxing or pointer chasing.
+ */
+public class CompiledTree {
+    // Feature index stored for leaf nodes
+    public static final int LEAF = -1;
+    // Class returned when a row is missing a feature the tree needs
+    public static final int UNKNOWN = -1;
+    // Number of category codes a split's bitmask can hold
+    public static final int MAX_MASK_CATEGORIES = Long.SIZE;
+
+    private final int[] feature;
+    private final double[] threshold;
+    private final long[] categoryMask;
+    private final int[] left;
+    private final int[] right;
+    private final int[] leafClass;
+    private final boolean[] numericFeature;
+
+    CompiledTree(int[] feature, double[] threshold, long[] categoryMask, int[] left, int[] right, int[] leafClass, boolean[] numericFeature) {
+        this.feature = feature;
+        this.threshold = threshold;
+        this.categoryMask = categoryMask;
+        this.left = left;
+        this.right = right;
+        this.leafClass = leafClass;
+        this.numericFeature = numericFeature;
+    }
+
+    // Predict the class index of an encoded row (see FeatureSchema.encode), or UNKNOWN if a needed feature is missing
+    public int predict(double[] row) {
+        int node = 0;
+        int f;
+        while ((f = feature[node]) != LEAF) {
+            double value = row[f];
+            if (Double.isNaN(value)) {
+                return UNKNOWN;
+            }
+            boolean goLeft = numericFeature[f] ? value <= threshold[node] : inCategorySet(categoryMask[node], (int) value);
+            node = goLeft ? left[node] : right[node];
+        }
+        return leafClass[node];
+    }
+
+    // Predict the class index of one row of a columnar dataset with the same schema, or UNKNOWN if a needed feature is missing
+    public int predict(FeatureMatrix data, int row) {
+        int node = 0;
+        int f;
+        while ((f = feature[node]) != LEAF) {
+            boolean goLeft;
+            if (numericFeature[f]) {
+                double value = data.getNumericColumn(f)[row];
+                if (Double.isNaN(value)) {
+                    return UNKNOWN;
+                }
+                goLeft = value <= threshold[node];
+            } else {
+                int code = data.getCategoryColumn(f)[row];
+                if (code == FeatureMatrix.MISSING) {
+                    return UNKNOWN;
+                }
+                goLeft = inCategorySet(categoryMask[node], code);
+            }
+            node = goLeft ? left[node] : right[node];
+        }
+        return leafClass[node];
+    }
+
+    // Check whether a category code is set in a split's bitmask; negative codes (unseen) and codes past the mask are not
+    static boolean inCategorySet(long mask, int code) {
+        return (code & -MAX_MASK_CATEGORIES) == 0 && (mask >>> code & 1L) != 0;
+    }
+
+    public int getNodeCount() {
+        return feature.length;
+    }
+
+    // Raw arrays, used by ModelFile to write the tree
+    int[] getFeatures() {
+        return feature;
+    }
+
+    double[] getThresholds() {
+        return threshold;
+    }
+
+    long[] getCategoryMasks() {
+        return categoryMask;
+    }
+
+    int[] getLeftChildren() {
+        return left;
+    }
+
+    int[] getRightChildren() {
+        return right;
+    }
+
+    int[] getLeafClasses() {
+        return leafClass;
+    }
+}
@@ -0,0 +1,317 @@
+package com.gyamjoDechen.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary file format for a columnar dataset, written block by block so datasets of any size can be
+ * streamed to disk, and loaded straight into a FeatureMatrix without parsing text.
+ *
+ * Layout (big-endian):
+ *   header: int magic "FRDS", int version, long row count, long footer offset
+ *   blocks: for up to MAX_BLOCK_ROWS rows, every numeric column as doubles (NaN when missing),
+ *           every categorical column and then the labels as int codes (FeatureMatrix.MISSING when missing)
+ *   footer: feature schema with dictionaries (as in ModelFile), int block count,
+ *           then per block its row count and the CRC32C of its bytes
+ *
+ * The dictionaries go in the footer because a writer only knows every category once all rows are written.
+ * Loading maps each block separately, verifies its checksum and bulk-copies its columns into place,
+ * with the blocks handled in parallel.
+ */
+public class DatasetFile {
+    // Largest number of rows in one block; keeps blocks small enough to map and checksum in parallel
+    public static final int MAX_BLOCK_ROWS = 1 << 16;
+
+    private static final int MAGIC = 0x46524453;  // "FRDS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    private DatasetFile() {
+    }
+
+    // Write a whole matrix to the given file, replacing any existing file
+    public static void save(FeatureMatrix data, String filePath) throws IOException {
+        try (Writer writer = new Writer(filePath, data.getSchema())) {
+            writer.write(data);
+        }
+    }
+
+    // Check whether the file starts with the dataset magic number, e.g. to tell it apart from a CSV file
+    public static boolean isDatasetFile(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filePath))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // Load a dataset file; rejects files with a bad magic number, version or checksum
+    public static FeatureMatrix load(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long[] header = readHeader(channel, filePath);
+            long numRows = header[0];
+            long footerOffset = header[1];
+
+            // Read the schema and the block table from the footer
+            FeatureSchema schema;
+            int[] blockRows;
+            long[] checksums;
+            try {
+                ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, fileSize - footerOffset);
+                schema = ModelFile.readSchema(footer);
+                blockRows = new int[footer.getInt()];
+                checksums = new long[blockRows.length];
+                for (int b = 0; b < blockRows.length; b++) {
+                    blockRows[b] = footer.getInt();
+                    checksums[b] = footer.getLong();
+                }
+            } catch (RuntimeException e) {
+                throw new IOException(filePath + " does not contain a valid dataset footer", e);
+            }
+
+            // Lay out the blocks and check that they fill the file exactly up to the footer
+            int numFeatures = schema.getFeatureCount();
+            long rowBytes = rowBytes(schema);
+            long[] blockOffsets = new long[blockRows.length];
+            int[] firstRows = new int[blockRows.length];
+            long offset = HEADER_SIZE;
+            long rows = 0;
+            for (int b = 0; b < blockRows.length; b++) {
+                if (blockRows[b] <= 0 || blockRows[b] > MAX_BLOCK_ROWS || rows + blockRows[b] > numRows) {
+                    throw new IOException(filePath + " has an invalid block " + b);
+                }
+                blockOffsets[b] = offset;
+                firstRows[b] = (int) rows;
+                offset += blockRows[b] * rowBytes;
+                rows += blockRows[b];
+            }
+            if (rows != numRows || offset != footerOffset) {
+                throw new IOException(filePath + " is truncated or has inconsistent blocks");
+            }
+
+            double[][] numericColumns = new double[numFeatures][];
+            int[][] categoryColumns = new int[numFeatures][];
+            for (int f = 0; f < numFeatures; f++) {
+                if (schema.isNumeric(f)) {
+                    numericColumns[f] = new double[(int) numRows];
+                } else {
+                    categoryColumns[f] = new int[(int) numRows];
+                }
+            }
+            int[] labels = new int[(int) numRows];
+
+            // Map, verify and copy the blocks in parallel; each block fills its own row range of the columns
+            List<ForkJoinTask<Void>> tasks = new ArrayList<>(blockRows.length);
+            for (int b = 0; b < blockRows.length; b++) {
+                int block = b;
+                tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                    MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, blockOffsets[block], blockRows[block] * rowBytes);
+                    CRC32C crc = new CRC32C();
+                    crc.update(bytes.duplicate());
+                    if (crc.getValue() != checksums[block]) {
+                        throw new IOException(filePath + " is corrupt (checksum mismatch in block " + block + ")");
+                    }
+                    readBlock(bytes, schema, firstRows[block], blockRows[block], numericColumns, categoryColumns, labels);
+                    return null;
+                }));
+            }
+            for (ForkJoinTask<Void> task : tasks) {
+                try {
+                    task.join();
+                } catch (RuntimeException e) {
+                    // The pool wraps a block's IOException; report the original failure
+                    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                        if (cause instanceof IOException) {
+                            throw (IOException) cause;
+                        }
+                    }
+                    throw e;
+                }
+            }
+
+            // Reject codes that the dictionaries cannot decode
+            for (int f = 0; f < numFeatures; f++) {
+                if (!schema.isNumeric(f)) {
+                    checkCodes(categoryColumns[f], schema.getDictionary(f), filePath);
+                }
+            }
+            checkCodes(labels, schema.getLabels(), filePath);
+            return new FeatureMatrix(schema, (int) numRows, numericColumns, categoryColumns, labels);
+        }
+    }
+
+    // Bytes per row in a block: a double per numeric feature and an int per categorical feature and label
+    // Load only the schema of a dataset file, e.g. to check a saved model's columns without reading the rows
+    public static FeatureSchema loadSchema(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long footerOffset = readHeader(channel, filePath)[1];
+            try {
+                return ModelFile.readSchema(channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, channel.size() - footerOffset));
+            } catch (RuntimeException e) {
+                throw new IOException(filePath + " does not contain a valid dataset footer", e);
+            }
+        }
+    }
+
+    // Validate the file header and return its row count and footer offset
+    private static long[] readHeader(FileChannel channel, String filePath) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            throw new IOException(filePath + " is not a dataset file (too short)");
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException(filePath + " is not a dataset file (bad magic number)");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException(filePath + " has dataset format version " + version + ", expected " + VERSION);
+        }
+        long numRows = header.getLong();
+        long footerOffset = header.getLong();
+        if (numRows < 0 || numRows > Integer.MAX_VALUE - 8 || footerOffset < HEADER_SIZE || footerOffset >= fileSize) {
+            throw new IOException(filePath + " is truncated or was not closed");
+        }
+        return new long[]{numRows, footerOffset};
+    }
+
+    private static long rowBytes(FeatureSchema schema) {
+        long bytes = Integer.BYTES;
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            bytes += schema.isNumeric(f) ? Double.BYTES : Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    private static void readBlock(ByteBuffer in, FeatureSchema schema, int firstRow, int rows,
+                                  double[][] numericColumns, int[][] categoryColumns, int[] labels) {
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            if (schema.isNumeric(f)) {
+                in.asDoubleBuffer().get(numericColumns[f], firstRow, rows);
+                in.position(in.position() + rows * Double.BYTES);
+            }
+        }
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            if (!schema.isNumeric(f)) {
+                in.asIntBuffer().get(categoryColumns[f], firstRow, rows);
+                in.position(in.position() + rows * Integer.BYTES);
+            }
+        }
+        in.asIntBuffer().get(labels, firstRow, rows);
+    }
+
+    private static void checkCodes(int[] codes, CategoryDictionary dictionary, String filePath) throws IOException {
+        int size = dictionary.size();
+        for (int code : codes) {
+            if (code != FeatureMatrix.MISSING && (code < 0 || code >= size)) {
+                throw new IOException(filePath + " contains an unknown category code " + code);
+            }
+        }
+    }
+
+    /**
+     * Streams FeatureMatrix blocks that share one schema into a dataset file.
+     * Categories may keep being added to the schema's dictionaries between writes; they are saved on close.
+     * The file is only valid once the writer has been closed.
+     */
+    public static class Writer implements Closeable {
+        private final String filePath;
+        private final FeatureSchema schema;
+        private final FileChannel channel;
+        private final List<Integer> blockRows = new ArrayList<>();
+        private final List<Long> checksums = new ArrayList<>();
+        private long numRows;
+
+        public Writer(String filePath, FeatureSchema schema) throws IOException {
+            if (schema.getTargetFeature() == null) {
+                throw new IllegalArgumentException("A dataset file needs a target column");
+            }
+            this.filePath = filePath;
+            this.schema = schema;
+            this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE);  // The header is written on close, once the sizes are known
+        }
+
+        // Append every row of the data, whose schema must be the writer's schema
+        public void write(FeatureMatrix data) throws IOException {
+            if (data.getSchema() != schema) {
+                throw new IllegalArgumentException("Data must use the writer's schema; align it with FeatureMatrix.alignTo first");
+            }
+            if (numRows + data.getNumRows() > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("A dataset file holds at most " + (Integer.MAX_VALUE - 8) + " rows");
+            }
+            for (int first = 0; first < data.getNumRows(); first += MAX_BLOCK_ROWS) {
+                writeBlock(data, first, Math.min(MAX_BLOCK_ROWS, data.getNumRows() - first));
+            }
+        }
+
+        private void writeBlock(FeatureMatrix data, int first, int rows) throws IOException {
+            ByteBuffer block = ByteBuffer.allocate((int) (rows * rowBytes(schema)));
+            for (int f = 0; f < schema.getFeatureCount(); f++) {
+                if (schema.isNumeric(f)) {
+                    block.asDoubleBuffer().put(data.getNumericColumn(f), first, rows);
+                    block.position(block.position() + rows * Double.BYTES);
+                }
+            }
+            for (int f = 0; f < schema.getFeatureCount(); f++) {
+                if (!schema.isNumeric(f)) {
+                    block.asIntBuffer().put(data.getCategoryColumn(f), first, rows);
+                    block.position(block.position() + rows * Integer.BYTES);
+                }
+            }
+            block.asIntBuffer().put(data.getLabels(), first, rows);
+            block.position(0);
+
+            CRC32C crc = new CRC32C();
+            crc.update(block.duplicate());
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+            blockRows.add(rows);
+            checksums.add(crc.getValue());
+            numRows += rows;
+        }
+
+        // Write the footer and header and close the file
+        @Override
+        public void close() throws IOException {
+            try {
+                long footerOffset = channel.position();
+                ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+                try (DataOutputStream footer = new DataOutputStream(footerBytes)) {
+                    ModelFile.writeSchema(footer, schema);
+                    footer.writeInt(blockRows.size());
+                    for (int b = 0; b < blockRows.size(); b++) {
+                        footer.writeInt(blockRows.get(b));
+                        footer.writeLong(checksums.get(b));
+                    }
+                }
+                ByteBuffer footer = ByteBuffer.wrap(footerBytes.toByteArray());
+                while (footer.hasRemaining()) {
+                    channel.write(footer);
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putLong(numRows).putLong(footerOffset).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            } catch (IOException e) {
+                throw new IOException("Failed to finish " + filePath, e);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
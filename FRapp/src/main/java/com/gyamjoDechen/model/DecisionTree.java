@@ -1,20 +1,257 @@
 package com.gyamjoDechen.model;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
 
 public class DecisionTree {
     private TreeNode root;
+    private CompiledTree compiledTree;  // Flat-array form of root, rebuilt after every training run
+    private FeatureSchema schema;
+    private SplitStrategy splitStrategy = SplitStrategy.EXACT;
+    private SplitCriterion splitCriterion = SplitCriterion.ENTROPY;
+    private HistogramBins histogramBins;  // Bin edges used by the HISTOGRAM strategy, null otherwise
+
+    // Nodes with at least this many rows search features and build subtrees as parallel ForkJoin tasks
+    private int parallelThreshold = 20_000;
+
+    // Growth limits; the defaults search every feature and grow until the leaves are pure
+    private int mtry = 0;                              // Features sampled per node, 0 for all of them
+    private int maxDepth = Integer.MAX_VALUE;          // Depth of the deepest split (the root is depth 0)
+    private int minSamplesSplit = 2;                   // Smallest weighted node size that may be split
+    private int minSamplesLeaf = 1;                    // Smallest weighted size of either child of a split
+    private int maxLeafNodes = Integer.MAX_VALUE;      // Leaf budget; a limit grows the tree best-first
+
+    // Seed for sampling features at each node; a fixed seed gives the same tree at any thread count
+    private long seed = new SplittableRandom().nextLong();
+
+    // Receives an event for every node split; the default ignores them
+    private ForestListener listener = ForestListener.NONE;
+
+    // Create an untrained DecisionTree
+    public DecisionTree() {
+    }
+
+    // Create a DecisionTree from its compiled form only, e.g. when loaded from a model file
+    DecisionTree(FeatureSchema schema, CompiledTree compiledTree) {
+        this.schema = schema;
+        this.compiledTree = compiledTree;
+    }
+
+    // Untrained tree with the same growth settings and listener, e.g. to retrain this tree's slot in a forest
+    DecisionTree untrainedCopy() {
+        DecisionTree copy = new DecisionTree();
+        copy.splitStrategy = splitStrategy;
+        copy.splitCriterion = splitCriterion;
+        copy.parallelThreshold = parallelThreshold;
+        copy.mtry = mtry;
+        copy.maxDepth = maxDepth;
+        copy.minSamplesSplit = minSamplesSplit;
+        copy.minSamplesLeaf = minSamplesLeaf;
+        copy.maxLeafNodes = maxLeafNodes;
+        copy.listener = listener;
+        return copy;
+    }
+
+    // Select how numeric features are searched for split thresholds
+    public void setSplitStrategy(SplitStrategy splitStrategy) {
+        this.splitStrategy = splitStrategy;
+    }
+
+    public SplitStrategy getSplitStrategy() {
+        return splitStrategy;
+    }
+
+    // Select the impurity measure splits are chosen by
+    public void setSplitCriterion(SplitCriterion splitCriterion) {
+        this.splitCriterion = splitCriterion;
+    }
+
+    public SplitCriterion getSplitCriterion() {
+        return splitCriterion;
+    }
+
+    // Set the node size from which training runs in parallel; smaller nodes stay sequential so task overhead doesn't dominate
+    // Tasks are forked into the pool of the training thread, or the common pool when called from a plain thread
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    // Number of features sampled at random for each node, or 0 to search every feature
+    // If none of the sampled features can split a node the remaining ones are tried, so mtry never creates extra leaves
+    public void setMtry(int mtry) {
+        if (mtry < 0) {
+            throw new IllegalArgumentException("mtry must be 0 (all features) or positive");
+        }
+        this.mtry = mtry;
+    }
+
+    public int getMtry() {
+        return mtry;
+    }
+
+    // Stop splitting at this depth; a tree of depth 1 is a single split
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must not be negative");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    // Nodes with fewer (weighted) rows than this become leaves
+    public void setMinSamplesSplit(int minSamplesSplit) {
+        if (minSamplesSplit < 2) {
+            throw new IllegalArgumentException("minSamplesSplit must be at least 2");
+        }
+        this.minSamplesSplit = minSamplesSplit;
+    }
+
+    public int getMinSamplesSplit() {
+        return minSamplesSplit;
+    }
+
+    // Only consider splits that leave at least this many (weighted) rows on each side
+    public void setMinSamplesLeaf(int minSamplesLeaf) {
+        if (minSamplesLeaf < 1) {
+            throw new IllegalArgumentException("minSamplesLeaf must be at least 1");
+        }
+        this.minSamplesLeaf = minSamplesLeaf;
+    }
+
+    public int getMinSamplesLeaf() {
+        return minSamplesLeaf;
+    }
+
+    // Grow at most this many leaves, always splitting the node whose split reduces weighted impurity the most
+    public void setMaxLeafNodes(int maxLeafNodes) {
+        if (maxLeafNodes < 2) {
+            throw new IllegalArgumentException("maxLeafNodes must be at least 2");
+        }
+        this.maxLeafNodes = maxLeafNodes;
+    }
+
+    public int getMaxLeafNodes() {
+        return maxLeafNodes;
+    }
+
+    // Set the seed for feature sampling so training with mtry is reproducible
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Send node split events to the listener
+    public void setListener(ForestListener listener) {
+        this.listener = listener;
+    }
+
+    // Bin edges the tree was trained with, or null if it was not trained with the HISTOGRAM strategy
+    public HistogramBins getHistogramBins() {
+        return histogramBins;
+    }
 
     // Train the DecisionTree on the provided data
     public void train(List<Map<String, Object>> data, String targetFeature) {
-        root = buildTree(data, targetFeature);  // Start building the tree from root
+        train(FeatureMatrix.fromRows(data, targetFeature));  // Adapt the rows onto the columnar format
+    }
+
+    // Train the DecisionTree on every labelled row of a columnar dataset
+    public void train(FeatureMatrix data) {
+        train(data, data.labelledRows());
+    }
+
+    // Train the DecisionTree on the given rows of a columnar dataset (rows may repeat, e.g. for a bootstrap sample)
+    public void train(FeatureMatrix data, int[] rows) {
+        int[] weights = new int[data.getNumRows()];
+        for (int row : rows) {
+            weights[row]++;  // A repeated row is trained on once with a higher weight
+        }
+        trainWeighted(data, weights);
+    }
+
+    // Train the DecisionTree on a columnar dataset where weights[row] is how many times each row counts (0 leaves it out)
+    public void trainWeighted(FeatureMatrix data, int[] weights) {
+        trainWeighted(data, weights, null);
+    }
+
+    // Train on weighted rows, reusing bins already computed for the dataset (e.g. shared by a RandomForest)
+    void trainWeighted(FeatureMatrix data, int[] weights, HistogramBins bins) {
+        // Only rows with a positive weight are stored in the tree's row arrays
+        int numDistinct = 0;
+        for (int weight : weights) {
+            if (weight > 0) {
+                numDistinct++;
+            }
+        }
+        if (numDistinct == 0) {
+            throw new IllegalArgumentException("Cannot train a DecisionTree on an empty dataset");
+        }
+        int[] rows = new int[numDistinct];
+        int next = 0;
+        for (int row = 0; row < weights.length; row++) {
+            if (weights[row] > 0) {
+                rows[next++] = row;
+            }
+        }
+
+        schema = data.getSchema();
+        SplitFinder splitFinder;
+        if (splitStrategy == SplitStrategy.HISTOGRAM) {
+            histogramBins = bins != null ? bins : HistogramBins.build(data);  // Quantize the numeric columns once
+            splitFinder = new HistogramSplitFinder(data, weights, histogramBins, numDistinct);
+        } else {
+            histogramBins = null;
+            splitFinder = new PresortedSplitFinder(data, weights, numDistinct);
+        }
+        splitFinder.setMinSamplesLeaf(minSamplesLeaf);
+        splitFinder.setCriterion(splitCriterion);
+
+        // Start building the tree from root, depth-first unless the number of leaves is limited
+        SplitFinder.Node rootNode = splitFinder.createRoot(rows);
+        SplittableRandom random = new SplittableRandom(seed);
+        if (maxLeafNodes == Integer.MAX_VALUE) {
+            root = buildTree(splitFinder, rootNode, 0, random);
+        } else {
+            root = buildTreeBestFirst(splitFinder, rootNode, random);
+        }
+        compiledTree = compile();  // Flatten the trained tree for fast inference
+    }
+
+    // Flat-array form of the trained tree
+    public CompiledTree getCompiledTree() {
+        return compiledTree;
+    }
+
+    // Schema of the data the tree was trained on
+    public FeatureSchema getSchema() {
+        return schema;
     }
 
     // Predict the label for the given input
     public String predict(Map<String, Object> input) {
+        if (root == null) {
+            // Loaded trees only have their compiled form
+            int prediction = compiledTree.predict(schema.encode(input));
+            return prediction == CompiledTree.UNKNOWN ? "Unknown" : schema.getLabels().decode(prediction);
+        }
         return predict(root, input);  // Start prediction from the root node
     }
 
+    // Predict the label index for a row of a columnar dataset that shares this tree's schema, or -1 if a feature is missing
+    public int predictClass(FeatureMatrix data, int row) {
+        return compiledTree.predict(data, row);
+    }
+
     // Recursive prediction based on node traversal
     private String predict(TreeNode node, Map<String, Object> input) {
         if (node.isLeaf()) {
@@ -25,8 +262,11 @@ public class DecisionTree {
                 return "Unknown";  // Return "Unknown" if the feature is missing
             }
 
-            // If the feature is numeric, compare it to the threshold
-            if (value instanceof Number) {
+            // If the feature is numeric, compare it to the threshold; the schema decides, not the value's type
+            if (schema.isNumeric(node.getFeatureIndex())) {
+                if (!(value instanceof Number)) {
+                    return "Unknown";  // A numeric feature given as text counts as missing, as in FeatureSchema.encode
+                }
                 double numericValue = ((Number) value).doubleValue();
                 double threshold = ((Number) node.getSplitValue()).doubleValue();
                 if (numericValue <= threshold) {
@@ -35,139 +275,250 @@ public class DecisionTree {
                     return predict(node.getRightChild(), input);  // Traverse to right child otherwise
                 }
             } else {
-                // If the feature is categorical, compare it to the threshold
-                if (value.equals(node.getSplitValue())) {
-                    return predict(node.getLeftChild(), input);  // Traverse to left child if values match
+                // If the feature is categorical, look up its code and check whether the node sends it left
+                int code = schema.getDictionary(node.getFeatureIndex()).lookup(value.toString());
+                if (CompiledTree.inCategorySet(node.getCategoryMask(), code)) {
+                    return predict(node.getLeftChild(), input);  // Traverse to left child if the category is in the set
                 } else {
-                    return predict(node.getRightChild(), input);  // Traverse to right child if values do not match
+                    return predict(node.getRightChild(), input);  // Traverse to right child otherwise
                 }
             }
         }
     }
 
     // Build the decision tree recursively
-    private TreeNode buildTree(List<Map<String, Object>> data, String targetFeature) {
-        if (allSameLabel(data, targetFeature)) {
-            return new TreeNode(data.get(0).get(targetFeature).toString());  // If all labels are the same, create a leaf node
-        } else if (data.isEmpty()) {
-            return new TreeNode(getMajorityLabel(data, targetFeature));  // If no data is left, return majority label
+    private TreeNode buildTree(SplitFinder splitFinder, SplitFinder.Node node, int depth, SplittableRandom random) {
+        int majority = argMax(node.counts);
+        if (node.counts[majority] == node.size) {
+            return createLeaf(majority);  // If all labels are the same, create a leaf node
+        }
+        if (node.size < minSamplesSplit || depth >= maxDepth) {
+            return createLeaf(majority);  // Growth limit reached, return majority label
         }
 
-        // Find the best feature to split the data on
-        SplitResult bestSplit = findBestSplit(data, targetFeature);
-        if (bestSplit.feature == null) {
-            return new TreeNode(getMajorityLabel(data, targetFeature));  // If no valid split found, return majority label
+        // Find the best feature to split the data on, evaluating features in parallel for large nodes
+        boolean parallel = node.size >= parallelThreshold;
+        Split bestSplit = findSplit(splitFinder, node, random);
+        if (bestSplit == null) {
+            return createLeaf(majority);  // If no valid split found, return majority label
         }
 
-        // Partition the data into two subsets based on the best split
-        Map<Boolean, List<Map<String, Object>>> partitions = partitionData(data, bestSplit.feature, bestSplit.threshold);
-        TreeNode leftNode = buildTree(partitions.get(true), targetFeature);  // Recursively build the left subtree
-        TreeNode rightNode = buildTree(partitions.get(false), targetFeature);  // Recursively build the right subtree
+        // Partition the rows into two subsets based on the best split
+        listener.nodeSplit(depth, node.size, bestSplit.feature, bestSplit.gain);
+        SplitFinder.Node[] children = splitFinder.split(node, bestSplit);
+        SplittableRandom leftRandom = random.split();
+        SplittableRandom rightRandom = random.split();
+        TreeNode leftNode;
+        TreeNode rightNode;
+        if (parallel) {
+            // Children hold disjoint row ranges, so the left subtree can be built in a forked task
+            ForkJoinTask<TreeNode> leftTask = ForkJoinTask.adapt(() -> buildTree(splitFinder, children[0], depth + 1, leftRandom)).fork();
+            rightNode = buildTree(splitFinder, children[1], depth + 1, rightRandom);
+            leftNode = leftTask.join();
+        } else {
+            leftNode = buildTree(splitFinder, children[0], depth + 1, leftRandom);  // Recursively build the left subtree
+            rightNode = buildTree(splitFinder, children[1], depth + 1, rightRandom);  // Recursively build the right subtree
+        }
+        return createSplitNode(bestSplit, leftNode, rightNode);
+    }
 
-        // Create and return a tree node with the best split and child nodes
-        return new TreeNode(bestSplit.feature, bestSplit.threshold, leftNode, rightNode);
+    /**
+     * Build the decision tree best-first until it has maxLeafNodes leaves.
+     * Open nodes wait in a queue ordered by how much their best split reduces weighted impurity, and the best
+     * one is split next. Nodes are searched exactly as in buildTree, so a budget the tree never reaches
+     * produces the same tree as depth-first growth.
+     */
+    private TreeNode buildTreeBestFirst(SplitFinder splitFinder, SplitFinder.Node rootNode, SplittableRandom random) {
+        PriorityQueue<Candidate> open = new PriorityQueue<>();
+        int order = 0;
+        Candidate root = evaluate(splitFinder, rootNode, 0, random, order++);
+        if (root.split != null) {
+            open.add(root);
+        }
+        int leaves = 1;
+        while (!open.isEmpty() && leaves < maxLeafNodes) {
+            Candidate candidate = open.poll();
+            listener.nodeSplit(candidate.depth, candidate.node.size, candidate.split.feature, candidate.split.gain);
+            SplitFinder.Node[] children = splitFinder.split(candidate.node, candidate.split);
+            SplittableRandom leftRandom = candidate.random.split();
+            SplittableRandom rightRandom = candidate.random.split();
+            candidate.left = evaluate(splitFinder, children[0], candidate.depth + 1, leftRandom, order++);
+            candidate.right = evaluate(splitFinder, children[1], candidate.depth + 1, rightRandom, order++);
+            leaves++;  // One leaf became two
+            for (Candidate child : new Candidate[]{candidate.left, candidate.right}) {
+                if (child.split != null) {
+                    open.add(child);
+                }
+            }
+        }
+        return toTreeNode(root);
     }
 
-    // Check if all labels in the data are the same
-    private boolean allSameLabel(List<Map<String, Object>> data, String targetFeature) {
-        return data.stream().map(point -> point.get(targetFeature)).distinct().count() == 1;  // Returns true if only one unique label exists
+    // Find the best split of a node for best-first growth, or none if the node has to stay a leaf
+    private Candidate evaluate(SplitFinder splitFinder, SplitFinder.Node node, int depth, SplittableRandom random, int order) {
+        Split split = null;
+        int majority = argMax(node.counts);
+        if (node.counts[majority] != node.size && node.size >= minSamplesSplit && depth < maxDepth) {
+            split = findSplit(splitFinder, node, random);
+        }
+        return new Candidate(node, depth, random, split, order);
     }
 
-    // Get the majority label in the data
-    private String getMajorityLabel(List<Map<String, Object>> data, String targetFeature) {
-        Map<Object, Integer> labelCounts = new HashMap<>();
-        data.forEach(point -> labelCounts.merge(point.get(targetFeature), 1, Integer::sum));  // Count occurrences of each label
-        return Collections.max(labelCounts.entrySet(), Map.Entry.comparingByValue()).getKey().toString();  // Return the label with the highest count
+    // Convert a grown candidate and its descendants into tree nodes
+    private TreeNode toTreeNode(Candidate candidate) {
+        if (candidate.left == null) {
+            return createLeaf(argMax(candidate.node.counts));
+        }
+        return createSplitNode(candidate.split, toTreeNode(candidate.left), toTreeNode(candidate.right));
     }
 
-    // Find the best feature to split on by calculating information gain
-    private SplitResult findBestSplit(List<Map<String, Object>> data, String targetFeature) {
-        double bestGain = Double.NEGATIVE_INFINITY;
-        String bestFeature = null;
-        Object bestThreshold = null;
+    // Search a node's features (or a random sample of mtry of them) for the best split
+    private Split findSplit(SplitFinder splitFinder, SplitFinder.Node node, SplittableRandom random) {
+        int numFeatures = schema.getFeatureCount();
+        int[] features = new int[numFeatures];
+        for (int f = 0; f < numFeatures; f++) {
+            features[f] = f;
+        }
+        int sampled = numFeatures;
+        if (mtry > 0 && mtry < numFeatures) {
+            // Shuffle the features; the first mtry are the sample and the rest are the fallback order
+            for (int i = 0; i < numFeatures - 1; i++) {
+                int j = i + random.nextInt(numFeatures - i);
+                int swap = features[i];
+                features[i] = features[j];
+                features[j] = swap;
+            }
+            sampled = mtry;
+        }
 
-        // Iterate through each feature in the data to find the one with the best information gain
-        for (String feature : data.get(0).keySet()) {
-            if (feature.equals(targetFeature)) continue;  // Skip the target feature
+        int[] sample = sampled == numFeatures ? features : Arrays.copyOf(features, sampled);
+        boolean parallel = node.size >= parallelThreshold;
+        Split best = parallel ? splitFinder.findBestSplitInParallel(node, sample) : splitFinder.findBestSplit(node, sample);
 
-            Set<Object> uniqueValues = new HashSet<>();
-            data.forEach(point -> uniqueValues.add(point.get(feature)));  // Collect unique values for the feature
+        // If the sample cannot split the node, keep looking through the remaining features one at a time
+        for (int i = sampled; best == null && i < numFeatures; i++) {
+            best = splitFinder.findBestSplit(node, features[i]);
+        }
+        return best;
+    }
 
-            // Evaluate each unique value of the feature as a possible split threshold
-            for (Object value : uniqueValues) {
-                double gain = calculateInformationGain(data, targetFeature, feature, value);  // Calculate information gain for this split
-                if (gain > bestGain) {
-                    bestGain = gain;  // Update the best gain if this split is better
-                    bestFeature = feature;  // Set the feature with the best gain
-                    bestThreshold = value;  // Set the threshold for the best split
-                }
+    // Create a tree node with the given split and child nodes
+    private TreeNode createSplitNode(Split split, TreeNode leftNode, TreeNode rightNode) {
+        String featureName = schema.getFeatureName(split.feature);
+        if (schema.isNumeric(split.feature)) {
+            return new TreeNode(featureName, split.feature, split.threshold, leftNode, rightNode);
+        }
+        Set<String> categories = new LinkedHashSet<>();
+        for (long mask = split.categories; mask != 0; mask &= mask - 1) {
+            categories.add(schema.getDictionary(split.feature).decode(Long.numberOfTrailingZeros(mask)));
+        }
+        return new TreeNode(featureName, split.feature, categories, split.categories, leftNode, rightNode);
+    }
+
+    // Flatten the tree into arrays in pre-order, so the root is node 0
+    private CompiledTree compile() {
+        int nodeCount = countNodes();
+        int[] feature = new int[nodeCount];
+        double[] threshold = new double[nodeCount];
+        long[] categoryMask = new long[nodeCount];
+        int[] left = new int[nodeCount];
+        int[] right = new int[nodeCount];
+        int[] leafClass = new int[nodeCount];
+
+        // Each stack entry is a node to place, together with the parent slot that must point at it
+        Deque<TreeNode> nodes = new ArrayDeque<>();
+        Deque<int[]> parentSlots = new ArrayDeque<>();
+        nodes.push(root);
+        parentSlots.push(new int[]{-1, 0});
+        int next = 0;
+        while (!nodes.isEmpty()) {
+            TreeNode node = nodes.pop();
+            int[] parentSlot = parentSlots.pop();
+            int index = next++;
+            if (parentSlot[0] >= 0) {
+                (parentSlot[1] == 0 ? left : right)[parentSlot[0]] = index;
+            }
+
+            if (node.isLeaf()) {
+                feature[index] = CompiledTree.LEAF;
+                leafClass[index] = node.getLabelIndex();
+            } else {
+                feature[index] = node.getFeatureIndex();
+                threshold[index] = node.getThreshold();
+                categoryMask[index] = node.getCategoryMask();
+                leafClass[index] = CompiledTree.UNKNOWN;
+
+                // Push right first so the left child is placed directly after its parent
+                nodes.push(node.getRightChild());
+                parentSlots.push(new int[]{index, 1});
+                nodes.push(node.getLeftChild());
+                parentSlots.push(new int[]{index, 0});
             }
         }
-        return new SplitResult(bestFeature, bestThreshold);  // Return the best feature and threshold to split on
-    }
-
-    // Calculate the information gain for a specific split
-    private double calculateInformationGain(List<Map<String, Object>> data, String targetFeature, String splitFeature, Object threshold) {
-        double totalEntropy = calculateEntropy(data, targetFeature);  // Calculate the entropy before the split
-        Map<Boolean, List<Map<String, Object>>> partitions = partitionData(data, splitFeature, threshold);  // Partition the data based on the split
-        double weightedEntropy = partitions.values().stream()
-                .mapToDouble(subset -> ((double) subset.size() / data.size()) * calculateEntropy(subset, targetFeature))  // Calculate the weighted entropy for each partition
-                .sum();
-        return totalEntropy - weightedEntropy;  // Information gain is the reduction in entropy
-    }
-
-    // Partition the data based on the value of a feature
-    private Map<Boolean, List<Map<String, Object>>> partitionData(List<Map<String, Object>> data, String feature, Object threshold) {
-        Map<Boolean, List<Map<String, Object>>> partitions = new HashMap<>();
-        partitions.put(true, new ArrayList<>());
-        partitions.put(false, new ArrayList<>());
-
-        // Split the data into two partitions based on the feature value
-        for (Map<String, Object> point : data) {
-            Object value = point.get(feature);
-            if (value != null) {
-                if (value instanceof Number && threshold instanceof Number) {
-                    double numericValue = ((Number) value).doubleValue();
-                    double numericThreshold = ((Number) threshold).doubleValue();
-                    if (numericValue <= numericThreshold) {
-                        partitions.get(true).add(point);  // Add to left partition if value is less than or equal to the threshold
-                    } else {
-                        partitions.get(false).add(point);  // Add to right partition otherwise
-                    }
-                } else if (value.equals(threshold)) {
-                    partitions.get(true).add(point);  // Add to left partition if value equals the threshold
-                } else {
-                    partitions.get(false).add(point);  // Add to right partition otherwise
-                }
+
+        boolean[] numericFeature = new boolean[schema.getFeatureCount()];
+        for (int f = 0; f < numericFeature.length; f++) {
+            numericFeature[f] = schema.isNumeric(f);
+        }
+        return new CompiledTree(feature, threshold, categoryMask, left, right, leafClass, numericFeature);
+    }
+
+    // Count the nodes of the tree without recursion
+    private int countNodes() {
+        int count = 0;
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            count++;
+            if (!node.isLeaf()) {
+                stack.push(node.getLeftChild());
+                stack.push(node.getRightChild());
             }
         }
-        return partitions;  // Return the two partitions
+        return count;
     }
 
-    // Calculate the entropy for a given set of data
-    private double calculateEntropy(List<Map<String, Object>> data, String targetFeature) {
-        Map<Object, Integer> labelCounts = new HashMap<>();
-        data.forEach(point -> labelCounts.merge(point.get(targetFeature), 1, Integer::sum));  // Count occurrences of each label
+    // Create a leaf node for the given label index
+    private TreeNode createLeaf(int labelIndex) {
+        return new TreeNode(schema.getLabels().decode(labelIndex), labelIndex);
+    }
 
-        double entropy = 0.0;
-        int size = data.size();
-        for (int count : labelCounts.values()) {
-            if (count > 0) {
-                double proportion = (double) count / size;
-                entropy -= proportion * Math.log(proportion) / Math.log(2);  // Calculate entropy using the formula
+    // Index of the largest count
+    private static int argMax(int[] counts) {
+        int best = 0;
+        for (int c = 1; c < counts.length; c++) {
+            if (counts[c] > counts[best]) {
+                best = c;
             }
         }
-        return entropy;  // Return the calculated entropy
+        return best;
     }
 
-    // Inner class representing the result of a split (feature and threshold)
-    private static class SplitResult {
-        String feature;
-        Object threshold;
+    // A node waiting to be split during best-first growth, ordered by the impurity reduction of its split
+    private static class Candidate implements Comparable<Candidate> {
+        final SplitFinder.Node node;
+        final int depth;
+        final SplittableRandom random;
+        final Split split;       // Null when the node stays a leaf
+        final double priority;   // Split gain weighted by node size
+        final int order;         // Creation order, breaking ties so growth is deterministic
+        Candidate left;
+        Candidate right;
+
+        Candidate(SplitFinder.Node node, int depth, SplittableRandom random, Split split, int order) {
+            this.node = node;
+            this.depth = depth;
+            this.random = random;
+            this.split = split;
+            this.priority = split == null ? 0.0 : split.gain * node.size;
+            this.order = order;
+        }
 
-        SplitResult(String feature, Object threshold) {
-            this.feature = feature;
-            this.threshold = threshold;
+        @Override
+        public int compareTo(Candidate other) {
+            int byPriority = Double.compare(other.priority, priority);
+            return byPriority != 0 ? byPriority : Integer.compare(order, other.order);
         }
     }
 }
@@ -175,22 +526,42 @@ public class DecisionTree {
 // Class representing a node in the decision tree
 class TreeNode {
     private String feature;
+    private int featureIndex;
     private Object splitValue;
+    private double threshold;
+    private long categoryMask;
     private TreeNode leftChild;
     private TreeNode rightChild;
     private String label;
+    private int labelIndex;
     private boolean isLeaf;
 
     // Constructor for leaf node with a label
-    public TreeNode(String label) {
+    public TreeNode(String label, int labelIndex) {
         this.label = label;
+        this.labelIndex = labelIndex;
         this.isLeaf = true;  // A leaf node contains a label
     }
 
-    // Constructor for non-leaf node with feature and split value
-    public TreeNode(String feature, Object splitValue, TreeNode leftChild, TreeNode rightChild) {
+    // Constructor for non-leaf node splitting a numeric feature on a threshold
+    public TreeNode(String feature, int featureIndex, double threshold, TreeNode leftChild, TreeNode rightChild) {
+        this.feature = feature;
+        this.featureIndex = featureIndex;
+        this.splitValue = threshold;
+        this.threshold = threshold;
+        this.categoryMask = 0L;
+        this.leftChild = leftChild;
+        this.rightChild = rightChild;
+        this.isLeaf = false;  // Non-leaf nodes contain a feature and split value
+    }
+
+    // Constructor for non-leaf node sending a set of categories of a categorical feature left, with their codes as a bitmask
+    public TreeNode(String feature, int featureIndex, Set<String> categories, long categoryMask, TreeNode leftChild, TreeNode rightChild) {
         this.feature = feature;
-        this.splitValue = splitValue;
+        this.featureIndex = featureIndex;
+        this.splitValue = Collections.unmodifiableSet(categories);
+        this.threshold = Double.NaN;
+        this.categoryMask = categoryMask;
         this.leftChild = leftChild;
         this.rightChild = rightChild;
         this.isLeaf = false;  // Non-leaf nodes contain a feature and split value
@@ -205,10 +576,22 @@ class TreeNode {
         return feature;
     }
 
+    public int getFeatureIndex() {
+        return featureIndex;
+    }
+
     public Object getSplitValue() {
         return splitValue;
     }
 
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public long getCategoryMask() {
+        return categoryMask;
+    }
+
     public TreeNode getLeftChild() {
         return leftChild;
     }
@@ -220,4 +603,8 @@ class TreeNode {
     public String getLabel() {
         return label;
     }
+
+    public int getLabelIndex() {
+        return labelIndex;
+    }
 }
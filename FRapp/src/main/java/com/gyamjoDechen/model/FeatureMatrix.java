@@ -0,0 +1,320 @@
+package com.gyamjoDechen.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar dataset used for training and scoring.
+ * Numeric features are stored as primitive double[] columns (NaN when missing), categorical
+ * features and the target label as dictionary-encoded int[] columns (MISSING when missing).
+ */
+public class FeatureMatrix {
+    // Code stored in categorical and label columns for a missing value
+    public static final int MISSING = -1;
+
+    private final FeatureSchema schema;
+    private final int numRows;
+    private final double[][] numericColumns;  // [feature][row], null for categorical features
+    private final int[][] categoryColumns;    // [feature][row], null for numeric features
+    private final int[] labels;
+    private ColumnStats columnStats;          // Imputation statistics, when known
+
+    public FeatureMatrix(FeatureSchema schema, int numRows, double[][] numericColumns, int[][] categoryColumns, int[] labels) {
+        this.schema = schema;
+        this.numRows = numRows;
+        this.numericColumns = numericColumns;
+        this.categoryColumns = categoryColumns;
+        this.labels = labels;
+    }
+
+    /**
+     * Converts map-based rows into a columnar matrix.
+     * A feature is treated as numeric when its first non-null value is a Number.
+     */
+    public static FeatureMatrix fromRows(List<Map<String, Object>> rows, String targetFeature) {
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Cannot build a FeatureMatrix from an empty dataset");
+        }
+
+        // Work out the feature columns and their types from the data
+        List<String> names = new ArrayList<>();
+        for (String key : rows.get(0).keySet()) {
+            if (!key.equals(targetFeature)) {
+                names.add(key);
+            }
+        }
+        String[] featureNames = names.toArray(new String[0]);
+        boolean[] numeric = new boolean[featureNames.length];
+        for (int f = 0; f < featureNames.length; f++) {
+            for (Map<String, Object> row : rows) {
+                Object value = row.get(featureNames[f]);
+                if (value != null) {
+                    numeric[f] = value instanceof Number;
+                    break;
+                }
+            }
+        }
+
+        FeatureSchema schema = new FeatureSchema(featureNames, numeric, targetFeature);
+        int numRows = rows.size();
+        double[][] numericColumns = new double[featureNames.length][];
+        int[][] categoryColumns = new int[featureNames.length][];
+        for (int f = 0; f < featureNames.length; f++) {
+            if (numeric[f]) {
+                numericColumns[f] = new double[numRows];
+            } else {
+                categoryColumns[f] = new int[numRows];
+            }
+        }
+        int[] labels = new int[numRows];
+
+        // Copy every cell into its column
+        for (int r = 0; r < numRows; r++) {
+            Map<String, Object> row = rows.get(r);
+            for (int f = 0; f < featureNames.length; f++) {
+                Object value = row.get(featureNames[f]);
+                if (numeric[f]) {
+                    numericColumns[f][r] = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+                } else {
+                    categoryColumns[f][r] = value == null ? MISSING : schema.getDictionary(f).encode(value.toString());
+                }
+            }
+            Object label = row.get(targetFeature);
+            labels[r] = label == null ? MISSING : schema.getLabels().encode(label.toString());
+        }
+        return new FeatureMatrix(schema, numRows, numericColumns, categoryColumns, labels);
+    }
+
+    public FeatureSchema getSchema() {
+        return schema;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumClasses() {
+        return schema.getLabels().size();
+    }
+
+    public double[] getNumericColumn(int feature) {
+        return numericColumns[feature];
+    }
+
+    public int[] getCategoryColumn(int feature) {
+        return categoryColumns[feature];
+    }
+
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns this data expressed in another schema, e.g. a model's training schema, so that the columns
+     * line up by feature index and categorical codes come from the target dictionaries.
+     * Numeric columns are shared, not copied. Features absent from this matrix are missing, and
+     * categories or labels the target schema has never seen become CategoryDictionary.UNSEEN / MISSING.
+     */
+    public FeatureMatrix alignTo(FeatureSchema target) {
+        if (target == schema) {
+            return this;
+        }
+        int numFeatures = target.getFeatureCount();
+        double[][] alignedNumeric = new double[numFeatures][];
+        int[][] alignedCategories = new int[numFeatures][];
+        for (int f = 0; f < numFeatures; f++) {
+            int source = schema.indexOf(target.getFeatureName(f));
+            if (target.isNumeric(f)) {
+                if (source >= 0 && schema.isNumeric(source)) {
+                    alignedNumeric[f] = numericColumns[source];
+                } else {
+                    alignedNumeric[f] = new double[numRows];
+                    Arrays.fill(alignedNumeric[f], Double.NaN);
+                }
+            } else if (source >= 0 && !schema.isNumeric(source)) {
+                alignedCategories[f] = remap(categoryColumns[source], schema.getDictionary(source), target.getDictionary(f), CategoryDictionary.UNSEEN);
+            } else {
+                alignedCategories[f] = new int[numRows];
+                Arrays.fill(alignedCategories[f], MISSING);
+            }
+        }
+        int[] alignedLabels = remap(labels, schema.getLabels(), target.getLabels(), MISSING);
+        return new FeatureMatrix(target, numRows, alignedNumeric, alignedCategories, alignedLabels);
+    }
+
+    // Translate codes of one dictionary into another through a lookup table
+    private static int[] remap(int[] codes, CategoryDictionary from, CategoryDictionary to, int unseen) {
+        int[] table = new int[from.size()];
+        for (int code = 0; code < table.length; code++) {
+            int mapped = to.lookup(from.decode(code));
+            table[code] = mapped == CategoryDictionary.UNSEEN ? unseen : mapped;
+        }
+        int[] remapped = new int[codes.length];
+        for (int r = 0; r < codes.length; r++) {
+            int code = codes[r];
+            remapped[r] = code < 0 ? code : table[code];
+        }
+        return remapped;
+    }
+
+    /**
+     * Returns a new matrix holding this matrix's rows followed by the rows of another, matched by feature name.
+     * The result has a copy of this schema whose dictionaries keep every existing code and add the other
+     * rows' new categories and labels after them, so models trained on this matrix still apply to the result.
+     * Features the other matrix lacks are missing in its rows. If this matrix has imputation statistics, the
+     * result's statistics add those of the other rows, whose missing cells are recorded after this matrix's rows.
+     */
+    public FeatureMatrix append(FeatureMatrix more) {
+        FeatureSchema combined = schema.copy();
+        FeatureSchema source = more.getSchema();
+        int total = numRows + more.numRows;
+        int numFeatures = combined.getFeatureCount();
+        double[][] appendedNumeric = new double[numFeatures][];
+        int[][] appendedCategories = new int[numFeatures][];
+        for (int f = 0; f < numFeatures; f++) {
+            int other = source.indexOf(combined.getFeatureName(f));
+            if (combined.isNumeric(f)) {
+                appendedNumeric[f] = Arrays.copyOf(numericColumns[f], total);
+                if (other >= 0 && source.isNumeric(other)) {
+                    System.arraycopy(more.numericColumns[other], 0, appendedNumeric[f], numRows, more.numRows);
+                } else {
+                    Arrays.fill(appendedNumeric[f], numRows, total, Double.NaN);
+                }
+            } else {
+                appendedCategories[f] = Arrays.copyOf(categoryColumns[f], total);
+                if (other >= 0 && !source.isNumeric(other)) {
+                    int[] codes = encodeInto(more.categoryColumns[other], source.getDictionary(other), combined.getDictionary(f));
+                    System.arraycopy(codes, 0, appendedCategories[f], numRows, more.numRows);
+                } else {
+                    Arrays.fill(appendedCategories[f], numRows, total, MISSING);
+                }
+            }
+        }
+        int[] appendedLabels = Arrays.copyOf(labels, total);
+        System.arraycopy(encodeInto(more.labels, source.getLabels(), combined.getLabels()), 0, appendedLabels, numRows, more.numRows);
+
+        FeatureMatrix appended = new FeatureMatrix(combined, total, appendedNumeric, appendedCategories, appendedLabels);
+        if (columnStats != null) {
+            // Existing codes keep their values in the combined dictionaries, so the codes map to themselves
+            boolean[] numeric = new boolean[numFeatures];
+            int[][] codeMaps = new int[numFeatures][];
+            for (int f = 0; f < numFeatures; f++) {
+                numeric[f] = combined.isNumeric(f);
+                if (!numeric[f]) {
+                    codeMaps[f] = new int[combined.getDictionary(f).size()];
+                    Arrays.setAll(codeMaps[f], code -> code);
+                }
+            }
+            ColumnStats merged = new ColumnStats(numeric);
+            merged.merge(columnStats, 0, codeMaps);
+            merged.merge(ColumnStats.of(appended, numRows, total), 0, codeMaps);
+            appended.setColumnStats(merged);
+        }
+        return appended;
+    }
+
+    /**
+     * Sets the missing cells of rows [fromRow, numRows) to the mean or mode in the given statistics, as
+     * DataManager.cleanMatrix does for every row, and removes them from this matrix's missing-cell bitmaps.
+     * Categorical features without a mode stay missing.
+     */
+    void imputeRows(int fromRow, ColumnStats stats) {
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            if (schema.isNumeric(f)) {
+                double mean = stats.getMean(f);
+                double[] column = numericColumns[f];
+                for (int r = fromRow; r < numRows; r++) {
+                    if (Double.isNaN(column[r])) {
+                        column[r] = mean;
+                    }
+                }
+            } else {
+                int mode = stats.getMode(f);
+                if (mode == MISSING) {
+                    continue;
+                }
+                int[] column = categoryColumns[f];
+                for (int r = fromRow; r < numRows; r++) {
+                    if (column[r] == MISSING) {
+                        column[r] = mode;
+                    }
+                }
+            }
+            if (columnStats != null) {
+                columnStats.getMissing(f).clear(fromRow, numRows);
+            }
+        }
+    }
+
+    // Translate codes of one dictionary into another, adding the values the other dictionary lacks
+    private static int[] encodeInto(int[] codes, CategoryDictionary from, CategoryDictionary to) {
+        int[] table = new int[from.size()];
+        for (int code = 0; code < table.length; code++) {
+            table[code] = to.encode(from.decode(code));
+        }
+        int[] encoded = new int[codes.length];
+        for (int r = 0; r < codes.length; r++) {
+            int code = codes[r];
+            encoded[r] = code < 0 ? code : table[code];
+        }
+        return encoded;
+    }
+
+    // Statistics used to impute missing values, or null if they have not been gathered
+    public ColumnStats getColumnStats() {
+        return columnStats;
+    }
+
+    public void setColumnStats(ColumnStats columnStats) {
+        this.columnStats = columnStats;
+    }
+
+    // Returns the indices of all rows that have a label, i.e. the rows usable for training
+    public int[] labelledRows() {
+        int count = 0;
+        for (int r = 0; r < numRows; r++) {
+            if (labels[r] != MISSING) {
+                count++;
+            }
+        }
+        int[] rows = new int[count];
+        int next = 0;
+        for (int r = 0; r < numRows; r++) {
+            if (labels[r] != MISSING) {
+                rows[next++] = r;
+            }
+        }
+        return rows;
+    }
+
+    // Returns a single row as a map from column name to value (null for missing values)
+    public Map<String, Object> getRow(int row) {
+        Map<String, Object> dataPoint = new HashMap<>();
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            if (schema.isNumeric(f)) {
+                double value = numericColumns[f][row];
+                dataPoint.put(schema.getFeatureName(f), Double.isNaN(value) ? null : value);
+            } else {
+                int code = categoryColumns[f][row];
+                dataPoint.put(schema.getFeatureName(f), code == MISSING ? null : schema.getDictionary(f).decode(code));
+            }
+        }
+        if (schema.getTargetFeature() != null) {
+            int label = labels[row];
+            dataPoint.put(schema.getTargetFeature(), label == MISSING ? null : schema.getLabels().decode(label));
+        }
+        return dataPoint;
+    }
+
+    // Converts the matrix back into map-based rows for code that still works on maps
+    public List<Map<String, Object>> toRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(numRows);
+        for (int r = 0; r < numRows; r++) {
+            rows.add(getRow(r));
+        }
+        return rows;
+    }
+}
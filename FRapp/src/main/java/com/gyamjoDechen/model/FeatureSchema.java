@@ -0,0 +1,107 @@
+package com.gyamjoDechen.model;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Describes the columns of a FeatureMatrix: which features are numeric, which are
+ * dictionary-encoded categoricals, and how the target labels are encoded.
+ */
+public class FeatureSchema {
+    private final String[] featureNames;
+    private final boolean[] numeric;
+    private final CategoryDictionary[] dictionaries;  // null entries for numeric features
+    private final String targetFeature;
+    private final CategoryDictionary labels;
+
+    public FeatureSchema(String[] featureNames, boolean[] numeric, String targetFeature) {
+        this.featureNames = featureNames.clone();
+        this.numeric = numeric.clone();
+        this.dictionaries = new CategoryDictionary[featureNames.length];
+        for (int f = 0; f < featureNames.length; f++) {
+            if (!numeric[f]) {
+                dictionaries[f] = new CategoryDictionary();
+            }
+        }
+        this.targetFeature = targetFeature;
+        this.labels = new CategoryDictionary();
+    }
+
+    public int getFeatureCount() {
+        return featureNames.length;
+    }
+
+    public String getFeatureName(int feature) {
+        return featureNames[feature];
+    }
+
+    // Returns the index of the named feature, or -1 if the schema does not contain it
+    public int indexOf(String featureName) {
+        for (int f = 0; f < featureNames.length; f++) {
+            if (featureNames[f].equals(featureName)) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isNumeric(int feature) {
+        return numeric[feature];
+    }
+
+    public CategoryDictionary getDictionary(int feature) {
+        return dictionaries[feature];
+    }
+
+    public String getTargetFeature() {
+        return targetFeature;
+    }
+
+    public CategoryDictionary getLabels() {
+        return labels;
+    }
+
+    // Independent copy whose dictionaries start with the same codes, so they can grow without changing this schema
+    public FeatureSchema copy() {
+        FeatureSchema copy = new FeatureSchema(featureNames, numeric, targetFeature);
+        for (int f = 0; f < featureNames.length; f++) {
+            if (dictionaries[f] != null) {
+                copyCodes(dictionaries[f], copy.dictionaries[f]);
+            }
+        }
+        copyCodes(labels, copy.labels);
+        return copy;
+    }
+
+    private static void copyCodes(CategoryDictionary from, CategoryDictionary to) {
+        for (int code = 0; code < from.size(); code++) {
+            to.encode(from.decode(code));
+        }
+    }
+
+    // Check whether another schema has the same features, in the same order and of the same types, and the same target
+    public boolean hasSameColumns(FeatureSchema other) {
+        return Arrays.equals(featureNames, other.featureNames) && Arrays.equals(numeric, other.numeric)
+                && targetFeature.equals(other.targetFeature);
+    }
+
+    /**
+     * Encodes a single input row into one value per feature.
+     * Numeric features keep their value, categorical features hold their dictionary code
+     * (CategoryDictionary.UNSEEN for unknown values) and missing features are NaN.
+     */
+    public double[] encode(Map<String, Object> input) {
+        double[] encoded = new double[featureNames.length];
+        for (int f = 0; f < featureNames.length; f++) {
+            Object value = input.get(featureNames[f]);
+            if (value == null) {
+                encoded[f] = Double.NaN;
+            } else if (numeric[f]) {
+                encoded[f] = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+            } else {
+                encoded[f] = dictionaries[f].lookup(value.toString());
+            }
+        }
+        return encoded;
+    }
+}
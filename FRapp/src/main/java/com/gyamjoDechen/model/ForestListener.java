@@ -0,0 +1,96 @@
+package com.gyamjoDechen.model;
+
+/**
+ * Receives training and prediction events from a RandomForest and its trees.
+ * Every method has an empty default, so an implementation only overrides the events it needs and
+ * the default NONE listener costs nothing on the hot paths (the forest does not even read the clock
+ * for it). Trees train and predict concurrently, so implementations must be thread-safe.
+ */
+public interface ForestListener {
+    // Listener that ignores every event
+    ForestListener NONE = new ForestListener() {
+    };
+
+    // A forest started training numTrees trees on numRows labelled rows
+    default void trainingStarted(int numTrees, int numRows) {
+    }
+
+    // One tree finished training on its bootstrap sample
+    default void treeTrained(int treeIndex, long nanos, int nodeCount, int inBagRows, int oobRows) {
+    }
+
+    // Every tree of the forest finished training
+    default void trainingFinished(int numTrees, long nanos) {
+    }
+
+    // A tree split a node of the given (weighted) size at the given depth
+    default void nodeSplit(int depth, int nodeSize, int feature, double gain) {
+    }
+
+    // A single input was predicted
+    default void predictionMade(String prediction, long nanos) {
+    }
+
+    // A batch of rows was predicted
+    default void batchPredicted(int numRows, long nanos) {
+    }
+
+    // The forest's out-of-bag error was evaluated
+    default void oobEvaluated(OOBReport report, long nanos) {
+    }
+
+    // Forward every event to each of the given listeners in order
+    static ForestListener of(ForestListener... listeners) {
+        ForestListener[] targets = listeners.clone();
+        return new ForestListener() {
+            @Override
+            public void trainingStarted(int numTrees, int numRows) {
+                for (ForestListener listener : targets) {
+                    listener.trainingStarted(numTrees, numRows);
+                }
+            }
+
+            @Override
+            public void treeTrained(int treeIndex, long nanos, int nodeCount, int inBagRows, int oobRows) {
+                for (ForestListener listener : targets) {
+                    listener.treeTrained(treeIndex, nanos, nodeCount, inBagRows, oobRows);
+                }
+            }
+
+            @Override
+            public void trainingFinished(int numTrees, long nanos) {
+                for (ForestListener listener : targets) {
+                    listener.trainingFinished(numTrees, nanos);
+                }
+            }
+
+            @Override
+            public void nodeSplit(int depth, int nodeSize, int feature, double gain) {
+                for (ForestListener listener : targets) {
+                    listener.nodeSplit(depth, nodeSize, feature, gain);
+                }
+            }
+
+            @Override
+            public void predictionMade(String prediction, long nanos) {
+                for (ForestListener listener : targets) {
+                    listener.predictionMade(prediction, nanos);
+                }
+            }
+
+            @Override
+            public void batchPredicted(int numRows, long nanos) {
+                for (ForestListener listener : targets) {
+                    listener.batchPredicted(numRows, nanos);
+                }
+            }
+
+            @Override
+            public void oobEvaluated(OOBReport report, long nanos) {
+                for (ForestListener listener : targets) {
+                    listener.oobEvaluated(report, nanos);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.gyamjoDechen.model;
+
+import java.util.Arrays;
+
+/**
+ * Quantized copy of the numeric columns of a FeatureMatrix used by the histogram split strategy.
+ * Each numeric feature gets at most 255 value bins plus one bin for missing values, stored as one
+ * byte per row. Bin b holds the values v with edges[b - 1] < v <= edges[b], so a split "bin <= b"
+ * is the same test as "value <= edges[b]" on raw values.
+ */
+public class HistogramBins {
+    // Largest number of value bins per feature (the last byte value is reserved for missing values)
+    public static final int MAX_BINS = 255;
+    // Bin holding missing (NaN) values
+    public static final int MISSING_BIN = 255;
+
+    private final double[][] edges;  // [feature][bin] upper edge of each bin, null for categorical features
+    private final byte[][] bins;     // [feature][row] bin of each row, null for categorical features
+
+    private HistogramBins(double[][] edges, byte[][] bins) {
+        this.edges = edges;
+        this.bins = bins;
+    }
+
+    // Quantize every numeric column of the dataset
+    public static HistogramBins build(FeatureMatrix data) {
+        FeatureSchema schema = data.getSchema();
+        double[][] edges = new double[schema.getFeatureCount()][];
+        byte[][] bins = new byte[schema.getFeatureCount()][];
+        for (int feature = 0; feature < schema.getFeatureCount(); feature++) {
+            if (schema.isNumeric(feature)) {
+                double[] column = data.getNumericColumn(feature);
+                edges[feature] = computeEdges(column);
+                bins[feature] = quantize(column, edges[feature]);
+            }
+        }
+        return new HistogramBins(edges, bins);
+    }
+
+    // Number of value bins of a numeric feature (excluding the missing bin)
+    public int getNumBins(int feature) {
+        return edges[feature].length;
+    }
+
+    // Upper edges of the value bins of a numeric feature
+    public double[] getEdges(int feature) {
+        return edges[feature];
+    }
+
+    byte[] getBins(int feature) {
+        return bins[feature];
+    }
+
+    // Choose bin edges: every distinct value if there are few enough, otherwise equal-frequency quantiles
+    private static double[] computeEdges(double[] column) {
+        double[] values = new double[column.length];
+        int count = 0;
+        for (double value : column) {
+            if (!Double.isNaN(value)) {
+                values[count++] = value;
+            }
+        }
+        if (count == 0) {
+            return new double[0];
+        }
+        Arrays.sort(values, 0, count);
+
+        // Collect the distinct values, stopping early once there are more than fit in the bins
+        double[] distinct = new double[MAX_BINS];
+        int numDistinct = 0;
+        boolean tooMany = false;
+        for (int i = 0; i < count; i++) {
+            if (numDistinct == 0 || values[i] > distinct[numDistinct - 1]) {
+                if (numDistinct == MAX_BINS) {
+                    tooMany = true;
+                    break;
+                }
+                distinct[numDistinct++] = values[i];
+            }
+        }
+        if (!tooMany) {
+            return Arrays.copyOf(distinct, numDistinct);
+        }
+
+        // Too many distinct values: use the values at evenly spaced ranks as upper edges
+        double[] edges = new double[MAX_BINS];
+        int numEdges = 0;
+        for (int b = 1; b <= MAX_BINS; b++) {
+            double edge = values[(int) ((long) b * count / MAX_BINS) - 1];
+            if (numEdges == 0 || edge > edges[numEdges - 1]) {
+                edges[numEdges++] = edge;
+            }
+        }
+        return Arrays.copyOf(edges, numEdges);
+    }
+
+    // Map every value to the first bin whose upper edge is not below it
+    private static byte[] quantize(double[] column, double[] edges) {
+        byte[] binned = new byte[column.length];
+        for (int r = 0; r < column.length; r++) {
+            double value = column[r];
+            if (Double.isNaN(value)) {
+                binned[r] = (byte) MISSING_BIN;
+                continue;
+            }
+            int low = 0;
+            int high = edges.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (edges[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            binned[r] = (byte) low;
+        }
+        return binned;
+    }
+}
@@ -0,0 +1,145 @@
+package com.gyamjoDechen.model;
+
+/**
+ * Approximate split search over quantized numeric columns.
+ * Every node holds one label-count histogram per feature (bins for numeric features, categories
+ * for categorical ones) and thresholds are only evaluated at bin edges. When a node is split only
+ * the smaller child is scanned; the larger child's histograms are the parent's minus the sibling's.
+ */
+class HistogramSplitFinder extends SplitFinder {
+    private final HistogramBins bins;
+    private final int[] rows;     // Node rows in partition order
+    private final int[] scratch;  // Buffer for stable partitioning
+    private final int[] slots;    // Number of histogram slots per feature
+
+    HistogramSplitFinder(FeatureMatrix data, int[] weights, HistogramBins bins, int sampleSize) {
+        super(data, weights);
+        this.bins = bins;
+        this.rows = new int[sampleSize];
+        this.scratch = new int[sampleSize];
+        this.slots = new int[schema.getFeatureCount()];
+        for (int feature = 0; feature < slots.length; feature++) {
+            // Numeric slots are indexed by bin (missing is bin 255); categorical slots by code + 1 (missing is slot 0)
+            slots[feature] = schema.isNumeric(feature) ? HistogramBins.MISSING_BIN + 1 : schema.getDictionary(feature).size() + 1;
+        }
+    }
+
+    @Override
+    Node createRoot(int[] sample) {
+        System.arraycopy(sample, 0, rows, 0, sample.length);
+        int[] counts = new int[numClasses];
+        for (int row : sample) {
+            counts[labels[row]] += weights[row];
+        }
+        return new HistogramNode(0, sample.length, counts, buildHistograms(0, sample.length));
+    }
+
+    @Override
+    Split findBestSplit(Node node, int feature) {
+        int[] histogram = ((HistogramNode) node).histograms[feature];
+        if (!schema.isNumeric(feature)) {
+            int[][] categoryCounts = new int[slots[feature] - 1][numClasses];
+            for (int category = 0; category < categoryCounts.length; category++) {
+                System.arraycopy(histogram, (category + 1) * numClasses, categoryCounts[category], 0, numClasses);
+            }
+            return findBestCategorySplit(node, feature, categoryCounts);
+        }
+
+        // Sweep the bins, moving one bin at a time from the right side to the left side
+        double[] edges = bins.getEdges(feature);
+        int[] leftCounts = new int[numClasses];
+        double totalImpurity = criterion.impurity(node.counts, null, node.size);
+        Split best = null;
+        for (int bin = 0; bin < edges.length - 1; bin++) {
+            int binSize = 0;
+            for (int c = 0; c < numClasses; c++) {
+                int count = histogram[bin * numClasses + c];
+                leftCounts[c] += count;
+                binSize += count;
+            }
+            if (binSize == 0) {
+                continue;  // The left side did not change, so neither did the gain
+            }
+            double gain = splitGain(totalImpurity, node.counts, leftCounts, node.size);
+            if (!Double.isNaN(gain) && (best == null || gain > best.gain)) {
+                best = new Split(feature, edges[bin], 0L, gain);
+            }
+        }
+        return best;
+    }
+
+    @Override
+    Node[] split(Node node, Split split) {
+        HistogramNode parent = (HistogramNode) node;
+
+        // Stably move the rows going left to the front of the node's range
+        int[] leftCounts = new int[numClasses];
+        int mid = node.start;
+        int rightCount = 0;
+        for (int i = node.start; i < node.end; i++) {
+            int row = rows[i];
+            if (goesLeft(row, split)) {
+                rows[mid++] = row;
+                leftCounts[labels[row]] += weights[row];
+            } else {
+                scratch[node.start + rightCount++] = row;
+            }
+        }
+        System.arraycopy(scratch, node.start, rows, mid, rightCount);
+
+        int[] rightCounts = new int[numClasses];
+        for (int c = 0; c < numClasses; c++) {
+            rightCounts[c] = node.counts[c] - leftCounts[c];
+        }
+
+        // Scan only the smaller child; the larger child reuses the parent's histograms minus the smaller one's
+        boolean leftIsSmaller = mid - node.start <= node.end - mid;
+        int[][] smaller = leftIsSmaller ? buildHistograms(node.start, mid) : buildHistograms(mid, node.end);
+        int[][] larger = parent.histograms;
+        parent.histograms = null;
+        for (int feature = 0; feature < larger.length; feature++) {
+            int[] target = larger[feature];
+            int[] subtract = smaller[feature];
+            for (int i = 0; i < target.length; i++) {
+                target[i] -= subtract[i];
+            }
+        }
+
+        HistogramNode leftNode = new HistogramNode(node.start, mid, leftCounts, leftIsSmaller ? smaller : larger);
+        HistogramNode rightNode = new HistogramNode(mid, node.end, rightCounts, leftIsSmaller ? larger : smaller);
+        return new Node[]{leftNode, rightNode};
+    }
+
+    // Build the weighted label-count histograms of every feature for rows[start, end)
+    private int[][] buildHistograms(int start, int end) {
+        int[][] histograms = new int[slots.length][];
+        for (int feature = 0; feature < slots.length; feature++) {
+            int[] histogram = new int[slots[feature] * numClasses];
+            if (schema.isNumeric(feature)) {
+                byte[] binned = bins.getBins(feature);
+                for (int i = start; i < end; i++) {
+                    int row = rows[i];
+                    histogram[(binned[row] & 0xFF) * numClasses + labels[row]] += weights[row];
+                }
+            } else {
+                int[] column = data.getCategoryColumn(feature);
+                for (int i = start; i < end; i++) {
+                    int row = rows[i];
+                    histogram[(column[row] + 1) * numClasses + labels[row]] += weights[row];
+                }
+            }
+            histograms[feature] = histogram;
+        }
+        return histograms;
+    }
+
+    // A node under construction together with its per-feature label-count histograms
+    private static class HistogramNode extends Node {
+        int[][] histograms;
+
+        HistogramNode(int start, int end, int[] counts, int[][] histograms) {
+            super(start, end, counts);
+            this.histograms = histograms;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.gyamjoDechen.model;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ForestListener that writes events to java.util.logging.
+ * Training runs and OOB results are logged at INFO, trees and predictions at FINE and node splits at
+ * FINEST; each message is only built when its level is enabled.
+ */
+public class LoggingListener implements ForestListener {
+    private final Logger logger;
+
+    // Log to the RandomForest class's logger
+    public LoggingListener() {
+        this(Logger.getLogger(RandomForest.class.getName()));
+    }
+
+    public LoggingListener(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void trainingStarted(int numTrees, int numRows) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("Training " + numTrees + " trees on " + numRows + " rows");
+        }
+    }
+
+    @Override
+    public void treeTrained(int treeIndex, long nanos, int nodeCount, int inBagRows, int oobRows) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(String.format("Tree %d trained in %.1f ms: %d nodes, %d distinct in-bag rows, %d OOB rows",
+                    treeIndex + 1, nanos / 1e6, nodeCount, inBagRows, oobRows));
+        }
+    }
+
+    @Override
+    public void trainingFinished(int numTrees, long nanos) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info(String.format("Trained %d trees in %.1f ms", numTrees, nanos / 1e6));
+        }
+    }
+
+    @Override
+    public void nodeSplit(int depth, int nodeSize, int feature, double gain) {
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("Split node of size " + nodeSize + " at depth " + depth + " on feature " + feature + " (gain " + gain + ")");
+        }
+    }
+
+    @Override
+    public void predictionMade(String prediction, long nanos) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(String.format("Predicted %s in %.3f ms", prediction, nanos / 1e6));
+        }
+    }
+
+    @Override
+    public void batchPredicted(int numRows, long nanos) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(String.format("Predicted %d rows in %.1f ms", numRows, nanos / 1e6));
+        }
+    }
+
+    @Override
+    public void oobEvaluated(OOBReport report, long nanos) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info(String.format("OOB accuracy %.4f over %d rows (%.1f ms)", report.getAccuracy(), report.getScoredRows(), nanos / 1e6));
+        }
+    }
+}
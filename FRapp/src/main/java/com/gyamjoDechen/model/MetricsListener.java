@@ -0,0 +1,135 @@
+package com.gyamjoDechen.model;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ForestListener that keeps counters and timers of training and prediction.
+ * Counters are LongAdders so concurrent trees and prediction threads do not contend on one variable.
+ */
+public class MetricsListener implements ForestListener {
+    private final LongAdder trainingRuns = new LongAdder();
+    private final LongAdder treesTrained = new LongAdder();
+    private final LongAdder nodesTrained = new LongAdder();
+    private final LongAdder nodeSplits = new LongAdder();
+    private final LongAdder batchRows = new LongAdder();
+    private final Timer treeTraining = new Timer();
+    private final Timer forestTraining = new Timer();
+    private final Timer predictions = new Timer();
+    private final Timer batches = new Timer();
+
+    @Override
+    public void treeTrained(int treeIndex, long nanos, int nodeCount, int inBagRows, int oobRows) {
+        treesTrained.increment();
+        nodesTrained.add(nodeCount);
+        treeTraining.record(nanos);
+    }
+
+    @Override
+    public void trainingFinished(int numTrees, long nanos) {
+        trainingRuns.increment();
+        forestTraining.record(nanos);
+    }
+
+    @Override
+    public void nodeSplit(int depth, int nodeSize, int feature, double gain) {
+        nodeSplits.increment();
+    }
+
+    @Override
+    public void predictionMade(String prediction, long nanos) {
+        predictions.record(nanos);
+    }
+
+    @Override
+    public void batchPredicted(int numRows, long nanos) {
+        batchRows.add(numRows);
+        batches.record(nanos);
+    }
+
+    public long getTrainingRuns() {
+        return trainingRuns.sum();
+    }
+
+    public long getTreesTrained() {
+        return treesTrained.sum();
+    }
+
+    // Total number of nodes (splits and leaves) of all trained trees
+    public long getNodesTrained() {
+        return nodesTrained.sum();
+    }
+
+    public long getNodeSplits() {
+        return nodeSplits.sum();
+    }
+
+    // Total number of rows scored by batch predictions
+    public long getBatchRows() {
+        return batchRows.sum();
+    }
+
+    // Time spent training individual trees
+    public Timer getTreeTraining() {
+        return treeTraining;
+    }
+
+    // Wall-clock time of whole training runs
+    public Timer getForestTraining() {
+        return forestTraining;
+    }
+
+    // Latency of single predictions
+    public Timer getPredictions() {
+        return predictions;
+    }
+
+    // Latency of batch predictions
+    public Timer getBatches() {
+        return batches;
+    }
+
+    @Override
+    public String toString() {
+        return "trees trained: " + getTreesTrained() + " (" + treeTraining + "), nodes: " + getNodesTrained()
+                + ", predictions: " + predictions + ", batch rows: " + getBatchRows() + " (" + batches + ")";
+    }
+
+    /**
+     * Count, total and maximum of recorded durations in nanoseconds.
+     */
+    public static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        // Mean duration in nanoseconds, or 0 if nothing was recorded
+        public double getMeanNanos() {
+            long n = getCount();
+            return n == 0 ? 0.0 : (double) getTotalNanos() / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count %d, mean %.3f ms, max %.3f ms", getCount(), getMeanNanos() / 1e6, getMaxNanos() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.gyamjoDechen.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary file format for a trained RandomForest.
+ *
+ * Layout (big-endian):
+ *   header:  int magic "FRMF", int version, long CRC32 of the payload, long payload length
+ *   payload: feature schema with category dictionaries, label dictionary,
+ *            then every tree in compiled form as whole primitive arrays
+ *
+ * Version 2 stores each categorical split as a bitmask of the categories that go left. Files of other versions
+ * are rejected, so ModelManager retrains instead of loading them.
+ *
+ * Loading maps the file read-only, verifies the checksum over the mapped bytes and copies each tree's
+ * arrays out in bulk, so there is no per-node parsing and no retraining before the first prediction.
+ */
+public class ModelFile {
+    private static final int MAGIC = 0x46524D46;  // "FRMF"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+
+    private ModelFile() {
+    }
+
+    // Write a trained forest to the given file, replacing any existing file. The forest is written to a temporary
+    // file next to it that is then moved over the old file, so a reader sees either the old or the new model in full
+    public static void save(RandomForest forest, String filePath) throws IOException {
+        // Build the payload first so its checksum can go in the header
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        try (DataOutputStream payload = new DataOutputStream(payloadBytes)) {
+            writeSchema(payload, forest.getSchema());
+            payload.writeInt(forest.getTrees().size());
+            for (DecisionTree tree : forest.getTrees()) {
+                writeTree(payload, tree.getCompiledTree());
+            }
+        }
+        byte[] bytes = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(crc.getValue());
+                out.writeLong(bytes.length);
+                out.write(bytes);
+                out.flush();
+                channel.force(true);  // On disk before it replaces the old model
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Map a model file and rebuild the forest; rejects files with a bad magic number, version or checksum
+    public static RandomForest load(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(filePath + " is not a model file (too short)");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            // Validate the header
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(filePath + " is not a model file (bad magic number)");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(filePath + " has model format version " + version + ", expected " + VERSION);
+            }
+            long checksum = buffer.getLong();
+            long payloadLength = buffer.getLong();
+            if (payloadLength != channel.size() - HEADER_SIZE) {
+                throw new IOException(filePath + " is truncated or has trailing data");
+            }
+
+            // Verify the checksum over the mapped payload without copying it
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException(filePath + " is corrupt (checksum mismatch)");
+            }
+
+            try {
+                FeatureSchema schema = readSchema(payload);
+                int numTrees = payload.getInt();
+                List<DecisionTree> trees = new ArrayList<>(numTrees);
+                for (int i = 0; i < numTrees; i++) {
+                    trees.add(new DecisionTree(schema, readTree(payload, schema)));
+                }
+                return new RandomForest(schema, trees);
+            } catch (RuntimeException e) {
+                throw new IOException(filePath + " does not contain a valid model", e);
+            }
+        }
+    }
+
+    // Also used by DatasetFile, so both formats describe columns the same way
+    static void writeSchema(DataOutputStream out, FeatureSchema schema) throws IOException {
+        out.writeInt(schema.getFeatureCount());
+        for (int f = 0; f < schema.getFeatureCount(); f++) {
+            writeString(out, schema.getFeatureName(f));
+            out.writeBoolean(schema.isNumeric(f));
+            if (!schema.isNumeric(f)) {
+                writeDictionary(out, schema.getDictionary(f));
+            }
+        }
+        writeString(out, schema.getTargetFeature());
+        writeDictionary(out, schema.getLabels());
+    }
+
+    static FeatureSchema readSchema(ByteBuffer in) {
+        int numFeatures = in.getInt();
+        String[] names = new String[numFeatures];
+        boolean[] numeric = new boolean[numFeatures];
+        List<String[]> dictionaries = new ArrayList<>();
+        for (int f = 0; f < numFeatures; f++) {
+            names[f] = readString(in);
+            numeric[f] = in.get() != 0;
+            dictionaries.add(numeric[f] ? null : readDictionary(in));
+        }
+        FeatureSchema schema = new FeatureSchema(names, numeric, readString(in));
+
+        // Re-encode the values in code order so every code means the same category as when saved
+        for (int f = 0; f < numFeatures; f++) {
+            if (!numeric[f]) {
+                for (String value : dictionaries.get(f)) {
+                    schema.getDictionary(f).encode(value);
+                }
+            }
+        }
+        for (String label : readDictionary(in)) {
+            schema.getLabels().encode(label);
+        }
+        return schema;
+    }
+
+    private static void writeTree(DataOutputStream out, CompiledTree tree) throws IOException {
+        int nodeCount = tree.getNodeCount();
+        out.writeInt(nodeCount);
+        writeInts(out, tree.getFeatures());
+        for (double threshold : tree.getThresholds()) {
+            out.writeDouble(threshold);
+        }
+        for (long categoryMask : tree.getCategoryMasks()) {
+            out.writeLong(categoryMask);
+        }
+        writeInts(out, tree.getLeftChildren());
+        writeInts(out, tree.getRightChildren());
+        writeInts(out, tree.getLeafClasses());
+    }
+
+    private static CompiledTree readTree(ByteBuffer in, FeatureSchema schema) {
+        int nodeCount = in.getInt();
+        int[] feature = readInts(in, nodeCount);
+        double[] threshold = new double[nodeCount];
+        in.asDoubleBuffer().get(threshold);
+        in.position(in.position() + nodeCount * Double.BYTES);
+        long[] categoryMask = readLongs(in, nodeCount);
+        int[] left = readInts(in, nodeCount);
+        int[] right = readInts(in, nodeCount);
+        int[] leafClass = readInts(in, nodeCount);
+
+        // Reject trees whose indices would send prediction outside the arrays
+        for (int n = 0; n < nodeCount; n++) {
+            if (feature[n] != CompiledTree.LEAF) {
+                if (feature[n] < 0 || feature[n] >= schema.getFeatureCount()
+                        || left[n] <= n || left[n] >= nodeCount || right[n] <= n || right[n] >= nodeCount) {
+                    throw new IllegalStateException("Invalid node " + n);
+                }
+            } else if (leafClass[n] < 0 || leafClass[n] >= schema.getLabels().size()) {
+                throw new IllegalStateException("Invalid leaf " + n);
+            }
+        }
+
+        boolean[] numericFeature = new boolean[schema.getFeatureCount()];
+        for (int f = 0; f < numericFeature.length; f++) {
+            numericFeature[f] = schema.isNumeric(f);
+        }
+        return new CompiledTree(feature, threshold, categoryMask, left, right, leafClass, numericFeature);
+    }
+
+    // Bulk-copy a long array out of the buffer and advance past it
+    private static long[] readLongs(ByteBuffer in, int count) {
+        long[] values = new long[count];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + count * Long.BYTES);
+        return values;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    // Bulk-copy an int array out of the buffer and advance past it
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static void writeDictionary(DataOutputStream out, CategoryDictionary dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (int code = 0; code < dictionary.size(); code++) {
+            writeString(out, dictionary.decode(code));
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer in) {
+        String[] values = new String[in.getInt()];
+        for (int code = 0; code < values.length; code++) {
+            values[code] = readString(in);
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,81 @@
+package com.gyamjoDechen.model;
+
+/**
+ * Forest-level out-of-bag evaluation of a trained RandomForest.
+ * Every training row is predicted by a majority vote of only the trees that did not see it, and the
+ * results are summarised as accuracy, a confusion matrix and the error rate of each true class.
+ * Rows that were in-bag for every tree have no OOB prediction and are not counted.
+ */
+public class OOBReport {
+    private final CategoryDictionary labels;
+    private final long[][] confusion;  // [true class][predicted class], last column counts "Unknown"
+    private final long scoredRows;
+    private final long correctRows;
+
+    OOBReport(CategoryDictionary labels, long[][] confusion) {
+        this.labels = labels;
+        this.confusion = confusion;
+        long scored = 0;
+        long correct = 0;
+        for (int actual = 0; actual < confusion.length; actual++) {
+            for (int predicted = 0; predicted < confusion[actual].length; predicted++) {
+                scored += confusion[actual][predicted];
+            }
+            correct += confusion[actual][actual];
+        }
+        this.scoredRows = scored;
+        this.correctRows = correct;
+    }
+
+    // Fraction of scored rows whose OOB majority vote matches their label
+    public double getAccuracy() {
+        return scoredRows == 0 ? Double.NaN : (double) correctRows / scoredRows;
+    }
+
+    // Number of rows that received at least one OOB vote
+    public long getScoredRows() {
+        return scoredRows;
+    }
+
+    // Counts of [true class][predicted class] by label index; the extra last column counts "Unknown" predictions
+    public long[][] getConfusionMatrix() {
+        long[][] copy = new long[confusion.length][];
+        for (int actual = 0; actual < confusion.length; actual++) {
+            copy[actual] = confusion[actual].clone();
+        }
+        return copy;
+    }
+
+    // Fraction of scored rows of the given true class that were predicted as something else
+    public double getClassError(int labelIndex) {
+        long total = 0;
+        for (long count : confusion[labelIndex]) {
+            total += count;
+        }
+        return total == 0 ? Double.NaN : 1.0 - (double) confusion[labelIndex][labelIndex] / total;
+    }
+
+    public CategoryDictionary getLabels() {
+        return labels;
+    }
+
+    // Accuracy, confusion matrix and per-class error as a printable table
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("OOB accuracy: %.4f over %d rows%n", getAccuracy(), scoredRows));
+        report.append(String.format("%-12s", "true\\pred"));
+        for (int c = 0; c < labels.size(); c++) {
+            report.append(String.format("%12s", labels.decode(c)));
+        }
+        report.append(String.format("%12s%12s%n", "Unknown", "error"));
+        for (int actual = 0; actual < confusion.length; actual++) {
+            report.append(String.format("%-12s", labels.decode(actual)));
+            for (long count : confusion[actual]) {
+                report.append(String.format("%12d", count));
+            }
+            report.append(String.format("%12.4f%n", getClassError(actual)));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,189 @@
+package com.gyamjoDechen.model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded least-recently-used cache of forest predictions, keyed on the encoded feature vector
+ * (FeatureSchema.encode), so inputs that differ only in ignored keys, map order or which unseen category
+ * they hold share an entry.
+ *
+ * Every entry is also keyed on the generation of the forest that made it. RandomForest moves to a new,
+ * globally unique generation whenever it is retrained, so stale predictions are never returned and
+ * predictions computed while training are filed under a generation that is never looked up again.
+ * Several forests, such as the old and new snapshot of a ModelHolder during a swap, can share one cache
+ * without evicting each other's entries; those of a retired generation simply age out.
+ *
+ * Caches of 128 entries or more are split by hash into up to MAX_SEGMENTS segments, each an LRU map with its
+ * own lock and an equal share of maxEntries, so concurrent lookups, hits included, only wait for lookups in the same segment.
+ * Eviction is least-recently-used within a segment.
+ */
+public class PredictionCache {
+    // Most segments a cache is split into, and the fewest entries each segment holds, so small caches are not
+    // split into segments too small to absorb an uneven spread of keys
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+
+    private final int maxEntries;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public PredictionCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        int numSegments = Math.max(1, Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxEntries / MIN_SEGMENT_ENTRIES)));  // A power of two, so a mask picks the segment
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(maxEntries / numSegments + (i < maxEntries % numSegments ? 1 : 0), evictions);
+        }
+    }
+
+    // Returns the prediction cached for the encoded input by the given generation of the forest, or null
+    public String get(double[] encoded, long generation) {
+        Key key = new Key(encoded, generation);
+        Segment segment = segmentFor(key);
+        String prediction;
+        synchronized (segment) {
+            prediction = segment.get(key);  // Moves the entry to the back of the segment's LRU order
+        }
+        if (prediction != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return prediction;
+    }
+
+    // Stores a prediction made by the given generation of the forest
+    public void put(double[] encoded, long generation, String prediction) {
+        Key key = new Key(encoded, generation);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, prediction);
+        }
+    }
+
+    // Drops every entry
+    public void clear() {
+        boolean cleared = false;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                cleared |= !segment.isEmpty();
+                segment.clear();
+            }
+        }
+        if (cleared) {
+            invalidations.increment();
+        }
+    }
+
+    // The segment holding a key, chosen by the top bits of its mixed hash so it is independent of the segment's own buckets
+    private Segment segmentFor(Key key) {
+        return segments[((key.hash * 0x9E3779B9) >>> 24) & (segments.length - 1)];
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // Entries dropped because the cache was full
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Times a non-empty cache was emptied by clear()
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    // Fraction of lookups that were hits, or 0 before the first lookup
+    public double getHitRate() {
+        long lookups = getHits() + getMisses();
+        return lookups == 0 ? 0.0 : (double) getHits() / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations",
+                size(), maxEntries, getHits(), getMisses(), 100 * getHitRate(), getEvictions(), getInvalidations());
+    }
+
+    // One LRU map of the cache, guarded by its own monitor
+    private static final class Segment extends LinkedHashMap<Key, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final transient LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Encoded input and forest generation with value equality. -0.0 is folded into 0.0 and every NaN
+     * compares equal, matching how the trees treat those values.
+     */
+    private static final class Key {
+        private final double[] values;
+        private final long generation;
+        private final int hash;
+
+        Key(double[] encoded, long generation) {
+            values = encoded.clone();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == 0.0) {
+                    values[i] = 0.0;
+                }
+            }
+            this.generation = generation;
+            hash = 31 * Arrays.hashCode(values) + Long.hashCode(generation);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && generation == ((Key) other).generation && Arrays.equals(values, ((Key) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
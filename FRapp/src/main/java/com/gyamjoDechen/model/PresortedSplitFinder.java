@@ -0,0 +1,163 @@
+package com.gyamjoDechen.model;
+
+/**
+ * Exact split search using presorted numeric columns.
+ * Each numeric column is sorted once for the root; every node keeps its rows in the same
+ * [start, end) range of the per-feature sorted arrays, which are stably partitioned on each split.
+ * All thresholds of a feature are then evaluated in a single sweep with running label counts,
+ * so a node costs O(features * rows) instead of O(features * unique values * rows).
+ */
+class PresortedSplitFinder extends SplitFinder {
+    private final int[] rows;          // Node rows in partition order, used for categorical features
+    private final int[][] sortedRows;  // [feature][position] rows ordered by value, null for categorical features
+    private final boolean[] left;      // Side of the current split for each row id
+    private final int[] scratch;       // Buffer for stable partitioning
+
+    PresortedSplitFinder(FeatureMatrix data, int[] weights, int sampleSize) {
+        super(data, weights);
+        this.rows = new int[sampleSize];
+        this.sortedRows = new int[schema.getFeatureCount()][];
+        this.left = new boolean[data.getNumRows()];
+        this.scratch = new int[sampleSize];
+    }
+
+    @Override
+    Node createRoot(int[] sample) {
+        System.arraycopy(sample, 0, rows, 0, sample.length);
+
+        // Presort each numeric column once
+        for (int feature = 0; feature < schema.getFeatureCount(); feature++) {
+            if (schema.isNumeric(feature)) {
+                int[] sorted = sample.clone();
+                sortByValue(sorted, data.getNumericColumn(feature), scratch);
+                sortedRows[feature] = sorted;
+            }
+        }
+        return new Node(0, sample.length, countLabels(0, sample.length));
+    }
+
+    @Override
+    Split findBestSplit(Node node, int feature) {
+        if (!schema.isNumeric(feature)) {
+            // Count labels per category in one pass over the node
+            int[] column = data.getCategoryColumn(feature);
+            int[][] categoryCounts = new int[schema.getDictionary(feature).size()][numClasses];
+            for (int i = node.start; i < node.end; i++) {
+                int row = rows[i];
+                if (column[row] != FeatureMatrix.MISSING) {
+                    categoryCounts[column[row]][labels[row]] += weights[row];
+                }
+            }
+            return findBestCategorySplit(node, feature, categoryCounts);
+        }
+
+        // Sweep the sorted rows, moving one row at a time from the right side to the left side
+        double[] column = data.getNumericColumn(feature);
+        int[] sorted = sortedRows[feature];
+        int[] leftCounts = new int[numClasses];
+        double totalImpurity = criterion.impurity(node.counts, null, node.size);
+        Split best = null;
+        for (int i = node.start; i < node.end - 1; i++) {
+            int row = sorted[i];
+            leftCounts[labels[row]] += weights[row];
+            double value = column[row];
+            double next = column[sorted[i + 1]];
+            if (Double.isNaN(value)) {
+                break;  // Missing values are sorted last and always go right
+            }
+            if (!(next > value) && !Double.isNaN(next)) {
+                continue;  // Only evaluate a threshold between two distinct values
+            }
+            double gain = splitGain(totalImpurity, node.counts, leftCounts, node.size);
+            if (!Double.isNaN(gain) && (best == null || gain > best.gain)) {
+                best = new Split(feature, value, 0L, gain);
+            }
+        }
+        return best;
+    }
+
+    @Override
+    Node[] split(Node node, Split split) {
+        // Mark the side of every row in the node
+        int[] leftCounts = new int[numClasses];
+        for (int i = node.start; i < node.end; i++) {
+            int row = rows[i];
+            boolean goLeft = goesLeft(row, split);
+            left[row] = goLeft;
+            if (goLeft) {
+                leftCounts[labels[row]] += weights[row];
+            }
+        }
+
+        // Stably partition the node's range of every row array
+        int mid = partition(rows, node.start, node.end);
+        for (int[] sorted : sortedRows) {
+            if (sorted != null) {
+                partition(sorted, node.start, node.end);
+            }
+        }
+
+        int[] rightCounts = new int[numClasses];
+        for (int c = 0; c < numClasses; c++) {
+            rightCounts[c] = node.counts[c] - leftCounts[c];
+        }
+        return new Node[]{new Node(node.start, mid, leftCounts), new Node(mid, node.end, rightCounts)};
+    }
+
+    // Stably move rows marked left to the front of [start, end); returns the start of the right side
+    private int partition(int[] array, int start, int end) {
+        int mid = start;
+        int rightCount = 0;
+        for (int i = start; i < end; i++) {
+            int row = array[i];
+            if (left[row]) {
+                array[mid++] = row;
+            } else {
+                scratch[start + rightCount++] = row;
+            }
+        }
+        System.arraycopy(scratch, start, array, mid, rightCount);
+        return mid;
+    }
+
+    // Weighted count of each label in rows[start, end)
+    private int[] countLabels(int start, int end) {
+        int[] counts = new int[numClasses];
+        for (int i = start; i < end; i++) {
+            int row = rows[i];
+            counts[labels[row]] += weights[row];
+        }
+        return counts;
+    }
+
+    // Stable merge sort of row ids by their value in the column, with missing (NaN) values last
+    static void sortByValue(int[] rows, double[] column, int[] buffer) {
+        int n = rows.length;
+        int[] from = rows;
+        int[] to = buffer;
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo;
+                int j = mid;
+                int k = lo;
+                while (i < mid && j < hi) {
+                    to[k++] = Double.compare(column[from[j]], column[from[i]]) < 0 ? from[j++] : from[i++];
+                }
+                while (i < mid) {
+                    to[k++] = from[i++];
+                }
+                while (j < hi) {
+                    to[k++] = from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != rows) {
+            System.arraycopy(from, 0, rows, 0, n);
+        }
+    }
+}
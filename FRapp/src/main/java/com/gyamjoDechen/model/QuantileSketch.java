@@ -0,0 +1,136 @@
+package com.gyamjoDechen.model;
+
+/**
+ * Streaming quantile sketch with a relative error guarantee, built from logarithmic buckets.
+ * A value v > 0 is counted in bucket ceil(log(v) / log(gamma)) with gamma = (1 + accuracy) / (1 - accuracy),
+ * negative values in a mirrored set of buckets and zero on its own, and every quantile is answered with a
+ * value within the relative accuracy of the true one. Buckets only hold counts, so a value can be removed
+ * again exactly, and the memory and query time depend on the range of the values, not on how many there are.
+ */
+public class QuantileSketch {
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private final double representativeScale;  // Maps gamma^index to the middle of the bucket
+    private final Buckets positive = new Buckets();
+    private final Buckets negative = new Buckets();  // Indexed by the magnitude of the value
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0.0 && relativeAccuracy < 1.0)) {
+            throw new IllegalArgumentException("relativeAccuracy must be strictly between 0 and 1");
+        }
+        double gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = Math.log(gamma);
+        this.representativeScale = 2 / (1 + gamma);
+    }
+
+    public void add(double value) {
+        update(value, 1);
+    }
+
+    // Remove a value that was added before
+    public void remove(double value) {
+        update(value, -1);
+    }
+
+    private void update(double value, int delta) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Cannot add " + value + " to a quantile sketch");
+        }
+        double magnitude = Math.abs(value);
+        if (magnitude < Double.MIN_NORMAL) {
+            if (zeroCount + delta < 0) {
+                throw new IllegalStateException("Removed a value that was not added: " + value);
+            }
+            zeroCount += delta;
+        } else {
+            (value > 0 ? positive : negative).add(index(magnitude), delta, value);
+        }
+        count += delta;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    // Middle of a bucket, within the relative accuracy of every value in it
+    private double representative(int index) {
+        return Math.exp(index * logGamma) * representativeScale;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Returns the value at quantile q (0 = minimum, 0.5 = median, 1 = maximum), or NaN when the sketch is empty.
+     */
+    public double getQuantile(double q) {
+        if (!(q >= 0.0 && q <= 1.0)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));  // Zero-based rank of the requested value
+
+        // Walk the buckets in increasing order of value: large negatives, zero, then positives
+        long seen = 0;
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return -representative(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0.0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return representative(positive.offset + i);
+            }
+        }
+        return representative(positive.offset + positive.counts.length - 1);  // Unreachable while counts are consistent
+    }
+
+    /**
+     * Counts per bucket index in a dense array covering the indices seen so far.
+     */
+    private static final class Buckets {
+        private long[] counts = new long[0];
+        private int offset;  // Bucket index of counts[0]
+
+        void add(int index, int delta, double value) {
+            if (counts.length == 0) {
+                counts = new long[8];
+                offset = index - 4;
+            } else if (index < offset || index >= offset + counts.length) {
+                grow(index);
+            }
+            if (counts[index - offset] + delta < 0) {
+                throw new IllegalStateException("Removed a value that was not added: " + value);
+            }
+            counts[index - offset] += delta;
+        }
+
+        // Widen the array so it covers the index, with room to spare on both sides
+        private void grow(int index) {
+            int low = Math.min(offset, index);
+            int high = Math.max(offset + counts.length, index + 1);
+            int spare = (high - low) / 2;
+            long[] grown = new long[high - low + 2 * spare];
+            int newOffset = low - spare;
+            System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+            counts = grown;
+            offset = newOffset;
+        }
+    }
+}
@@ -1,126 +1,627 @@
 package com.gyamjoDechen.model;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RandomForest {
-    // List of DecisionTree objects that make up the RandomForest
-    public List<DecisionTree> trees;
+    // Trees, their OOB rows and the data and schema they were trained on, replaced as a whole by train and refresh
+    private volatile State state;
 
-    // List to hold Out-Of-Bag (OOB) samples for each tree
-    public List<List<Map<String, Object>>> oobSamples;
+    // How the trees search numeric features for split thresholds
+    private SplitStrategy splitStrategy = SplitStrategy.EXACT;
+
+    // Pool the trees are trained on; trees are independent so they are built concurrently
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // Number of rows scored together by one batch prediction task
+    private static final int BATCH_BLOCK_SIZE = 4096;
+
+    // Whether predict walks the flat-array form of the trees instead of their node objects
+    private boolean useCompiledTrees = true;
+
+    // Seed from which every tree's random generator is split; a fixed seed gives identical forests at any thread count
+    private long seed = new SplittableRandom().nextLong();
+
+    // Set when the forest is published as a read-only snapshot; a frozen forest is never trained again
+    private volatile boolean frozen;
+
+    // Receives training and prediction events; the default ignores them
+    private ForestListener listener = ForestListener.NONE;
+
+    // Optional cache in front of predict, and the generation of the trees, which is part of every cache key.
+    // Generations are unique across all forests; training moves to a new one when it starts and again when it finishes
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+    private PredictionCache predictionCache;
+    private volatile long generation = GENERATIONS.incrementAndGet();
 
     // Constructor to initialize the RandomForest with a specified number of trees
     public RandomForest(int numTrees) {
-        System.out.println("Initializing RandomForest with " + numTrees + " trees...");
-        trees = new ArrayList<>(numTrees);
+        List<DecisionTree> trees = new ArrayList<>(numTrees);
 
         // Create the specified number of DecisionTree objects
         for (int i = 0; i < numTrees; i++) {
             trees.add(new DecisionTree());
-            System.out.println("Tree " + (i + 1) + " created.");
         }
-        System.out.println("RandomForest initialized successfully!");
+        state = new State(null, null, trees, List.of(), 0);
+    }
+
+    // Create a RandomForest from already trained trees, e.g. when loaded from a model file
+    RandomForest(FeatureSchema schema, List<DecisionTree> trees) {
+        state = new State(schema, null, trees, List.of(), 0);
+    }
+
+    // Schema of the data the forest was trained on
+    public FeatureSchema getSchema() {
+        return state.schema;
+    }
+
+    // The trees that make up the forest (read-only)
+    public List<DecisionTree> getTrees() {
+        return state.trees;
+    }
+
+    // Out-Of-Bag (OOB) row indices into the training data for each tree, empty for a forest not trained in this session
+    public List<int[]> getOobSamples() {
+        return state.oobSamples;
+    }
+
+    // Select how the trees search numeric features for split thresholds
+    public void setSplitStrategy(SplitStrategy splitStrategy) {
+        checkNotFrozen();
+        this.splitStrategy = splitStrategy;
+    }
+
+    public SplitStrategy getSplitStrategy() {
+        return splitStrategy;
+    }
+
+    // Select the impurity measure every tree chooses its splits by
+    public void setSplitCriterion(SplitCriterion splitCriterion) {
+        checkNotFrozen();
+        for (DecisionTree tree : state.trees) {
+            tree.setSplitCriterion(splitCriterion);
+        }
+    }
+
+    // Set the node size from which each tree also parallelizes its own construction (useful for small forests on many cores)
+    public void setParallelThreshold(int parallelThreshold) {
+        checkNotFrozen();
+        for (DecisionTree tree : state.trees) {
+            tree.setParallelThreshold(parallelThreshold);
+        }
+    }
+
+    // Sample this many features at each node of every tree, or 0 to search every feature (sqrt of the feature count is typical)
+    public void setMtry(int mtry) {
+        checkNotFrozen();
+        for (DecisionTree tree : state.trees) {
+            tree.setMtry(mtry);
+        }
+    }
+
+    // Limit the depth of every tree
+    public void setMaxDepth(int maxDepth) {
+        checkNotFrozen();
+        for (DecisionTree tree : state.trees) {
+            tree.setMaxDepth(maxDepth);
+        }
+    }
+
+    // Stop splitting nodes of every tree that hold fewer (weighted) rows than this
+    public void setMinSamplesSplit(int minSamplesSplit) {
+        checkNotFrozen();
+        for (DecisionTree tree : state.trees) {
+            tree.setMinSamplesSplit(minSamplesSplit);
+        }
+    }
+
+    // Require every leaf of every tree to hold at least this many (weighted) rows
+    public void setMinSamplesLeaf(int minSamplesLeaf) {
+        checkNotFrozen();
+        for (DecisionTree tree : state.trees) {
+            tree.setMinSamplesLeaf(minSamplesLeaf);
+        }
     }
 
-    // Train method for the RandomForest; iterates through trees and trains them
+    // Grow every tree best-first up to this many leaves
+    public void setMaxLeafNodes(int maxLeafNodes) {
+        checkNotFrozen();
+        for (DecisionTree tree : state.trees) {
+            tree.setMaxLeafNodes(maxLeafNodes);
+        }
+    }
+
+    // Send training and prediction events of the forest and its trees to the listener (ForestListener.NONE to stop)
+    public void setListener(ForestListener listener) {
+        checkNotFrozen();
+        this.listener = listener;
+        for (DecisionTree tree : state.trees) {
+            tree.setListener(listener);
+        }
+    }
+
+    public ForestListener getListener() {
+        return listener;
+    }
+
+    // Cache predict results in the given cache (null to stop caching); after retraining, the old entries are never hit
+    public void setPredictionCache(PredictionCache predictionCache) {
+        checkNotFrozen();
+        this.predictionCache = predictionCache;
+    }
+
+    public PredictionCache getPredictionCache() {
+        return predictionCache;
+    }
+
+    // Choose between the compiled flat-array trees (default) and the original node walk for predict
+    public void setUseCompiledTrees(boolean useCompiledTrees) {
+        checkNotFrozen();
+        this.useCompiledTrees = useCompiledTrees;
+    }
+
+    // Set the pool used to train trees concurrently (e.g. new ForkJoinPool(1) to train sequentially)
+    public void setPool(ForkJoinPool pool) {
+        checkNotFrozen();
+        this.pool = pool;
+    }
+
+    // Set the seed for bootstrap sampling so training is reproducible
+    public void setSeed(long seed) {
+        checkNotFrozen();
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Train method for the RandomForest; adapts map-based rows onto the columnar format
     public void train(List<Map<String, Object>> data, String targetFeature) {
-        System.out.println("\nStarting training process for RandomForest...");
-        oobSamples = new ArrayList<>();
+        train(FeatureMatrix.fromRows(data, targetFeature));
+    }
 
-        // For each tree, create bootstrap sample, train the tree, and store OOB samples
+    // Train method for the RandomForest; iterates through trees and trains them.
+    // The trees are retrained in place, so predictions must not run meanwhile; a ModelHolder trains a new forest instead
+    public synchronized void train(FeatureMatrix data) {
+        checkNotFrozen();
+        long startTime = System.nanoTime();
+        generation = GENERATIONS.incrementAndGet();  // Cached predictions of the old trees are stale from here on
+        try {
+            trainTrees(data);
+        } finally {
+            generation = GENERATIONS.incrementAndGet();  // Predictions made while the trees were changing are never hit either
+        }
+        listener.trainingFinished(state.trees.size(), System.nanoTime() - startTime);
+    }
+
+    private void trainTrees(FeatureMatrix data) {
+        List<DecisionTree> trees = state.trees;
+        int[] labelledRows = data.labelledRows();
+        listener.trainingStarted(trees.size(), labelledRows.length);
+
+        // With the histogram strategy the numeric columns are quantized once and shared by every tree
+        HistogramBins bins = splitStrategy == SplitStrategy.HISTOGRAM ? HistogramBins.build(data) : null;
+
+        // Give each tree its own generator, split off in tree order so the samples do not depend on scheduling
+        SplittableRandom seeds = new SplittableRandom(seed);
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<>(trees.size());
         for (int i = 0; i < trees.size(); i++) {
-            System.out.println("\nTraining tree " + (i + 1) + "...");
+            int treeIndex = i;
+            SplittableRandom random = seeds.split();
+            DecisionTree tree = trees.get(i);
+            tree.setSplitStrategy(splitStrategy);
+            tasks.add(pool.submit(() -> trainTree(treeIndex, tree, data, labelledRows, bins, random)));
+        }
 
-            // Create bootstrap and OOB samples for training
-            Map<String, List<Map<String, Object>>> sampleResult = createBootstrapSampleWithOOB(data);
-            List<Map<String, Object>> inBag = sampleResult.get("inBag");
-            List<Map<String, Object>> oob = sampleResult.get("oob");
+        // Wait for every tree and store the OOB samples in tree order for later accuracy calculation
+        List<int[]> oobSamples = new ArrayList<>(trees.size());
+        for (ForkJoinTask<int[]> task : tasks) {
+            oobSamples.add(task.join());
+        }
+        state = new State(data.getSchema(), data, trees, oobSamples, 0);
+    }
 
-            System.out.println("Bootstrap sample created for tree " + (i + 1) + ": In-bag size = " + inBag.size() + ", OOB size = " + oob.size());
+    /**
+     * Appends newly labelled rows to the stored training data and retrains only the treesToRetrain trees that
+     * have gone longest without training, each on a fresh bootstrap of the combined data; the other trees are
+     * kept as they are, so the tree-building cost grows with treesToRetrain rather than the forest size.
+     * Missing cells of the new rows are imputed with the means and modes of the training data, as
+     * DataManager.cleanMatrix does. Categories the forest has not seen are
+     * added to its schema, while a risk rating it has not seen needs a full train. The retrained trees are
+     * built beside the current ones and published together with the new data and schema in one State, so
+     * predictions keep running meanwhile and each sees either the old forest or the new one.
+     */
+    public synchronized void refresh(FeatureMatrix newRows, int treesToRetrain) {
+        checkNotFrozen();
+        State current = state;
+        if (current.trainingData == null) {
+            throw new IllegalStateException("Refreshing needs a forest trained in this session");
+        }
+        if (treesToRetrain < 0 || treesToRetrain > current.trees.size()) {
+            throw new IllegalArgumentException("treesToRetrain must be between 0 and " + current.trees.size());
+        }
+        long startTime = System.nanoTime();
+        state = refreshTrees(current, newRows, treesToRetrain);
+        // The old trees serve until the swap, so one move afterwards is enough; a prediction that reads the new generation reads the new state too
+        generation = GENERATIONS.incrementAndGet();
+        listener.trainingFinished(treesToRetrain, System.nanoTime() - startTime);
+    }
 
-            // Train the current tree using the bootstrap sample (in-bag data)
-            trees.get(i).train(inBag, targetFeature);
-            System.out.println("Tree " + (i + 1) + " training complete.");
+    private State refreshTrees(State current, FeatureMatrix newRows, int treesToRetrain) {
+        List<DecisionTree> trees = current.trees;
+        int oldNumRows = current.trainingData.getNumRows();
+        FeatureMatrix data = current.trainingData.append(newRows);
+        ColumnStats trainingStats = current.trainingData.getColumnStats();
+        data.imputeRows(oldNumRows, trainingStats != null ? trainingStats : ColumnStats.of(current.trainingData));
+        if (data.getNumClasses() != current.schema.getLabels().size()) {
+            throw new IllegalArgumentException("New rows have a risk rating the forest was not trained on; train it again instead");
+        }
+        int[] labelledRows = data.labelledRows();
+        listener.trainingStarted(treesToRetrain, labelledRows.length);
+        HistogramBins bins = splitStrategy == SplitStrategy.HISTOGRAM ? HistogramBins.build(data) : null;
+
+        // Oldest trees first; the sort is stable, so equally old trees go in tree order and refreshes cycle through the forest
+        Integer[] byAge = new Integer[trees.size()];
+        for (int i = 0; i < byAge.length; i++) {
+            byAge[i] = i;
+        }
+        long[] rounds = current.trainedInRound;
+        Arrays.sort(byAge, Comparator.comparingLong(i -> rounds[i]));
 
-            // Store the OOB samples for later accuracy calculation
-            oobSamples.add(oob);
+        // Train replacements for the oldest trees with generators split off this round's seed, in tree order
+        long round = current.refreshRound + 1;
+        SplittableRandom seeds = new SplittableRandom(seed + round * 0x9E3779B97F4A7C15L);
+        DecisionTree[] replacements = new DecisionTree[trees.size()];
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<>(trees.size());
+        for (int k = 0; k < treesToRetrain; k++) {
+            int treeIndex = byAge[k];
+            SplittableRandom random = seeds.split();
+            DecisionTree tree = trees.get(treeIndex).untrainedCopy();
+            tree.setSplitStrategy(splitStrategy);
+            replacements[treeIndex] = tree;
+            tasks.add(pool.submit(() -> trainTree(treeIndex, tree, data, labelledRows, bins, random)));
+        }
+        int[][] replacementOob = new int[trees.size()][];
+        for (int k = 0; k < treesToRetrain; k++) {
+            replacementOob[byAge[k]] = tasks.get(k).join();
         }
 
-        System.out.println("\nTraining complete for all trees in the RandomForest.");
+        // The appended rows were never drawn by the kept trees, so they join those trees' OOB rows
+        int firstAdded = Arrays.binarySearch(labelledRows, oldNumRows);
+        int[] addedRows = Arrays.copyOfRange(labelledRows, firstAdded < 0 ? -firstAdded - 1 : firstAdded, labelledRows.length);
+        List<DecisionTree> refreshedTrees = new ArrayList<>(trees);
+        List<int[]> refreshedOob = new ArrayList<>(trees.size());
+        long[] refreshedRounds = rounds.clone();
+        for (int t = 0; t < trees.size(); t++) {
+            if (replacements[t] != null) {
+                refreshedTrees.set(t, replacements[t]);
+                refreshedOob.add(replacementOob[t]);
+                refreshedRounds[t] = round;
+            } else {
+                int[] oob = current.oobSamples.get(t);
+                int[] extended = Arrays.copyOf(oob, oob.length + addedRows.length);
+                System.arraycopy(addedRows, 0, extended, oob.length, addedRows.length);
+                refreshedOob.add(extended);
+            }
+        }
+
+        return new State(data.getSchema(), data, refreshedTrees, refreshedOob, refreshedRounds, round);
     }
 
-    // Method to create bootstrap sample and separate OOB data
-    private Map<String, List<Map<String, Object>>> createBootstrapSampleWithOOB(List<Map<String, Object>> data) {
-        System.out.println("Creating bootstrap sample with OOB data...");
+    /**
+     * Makes the forest read-only so it can be shared as an immutable snapshot, e.g. by a ModelHolder:
+     * train, refresh and every setter throw from now on, so neither the trees nor the settings predictions
+     * read can change. Prediction is unaffected.
+     */
+    public synchronized void freeze() {
+        frozen = true;
+    }
 
-        // List to hold the in-bag data (data used for training the tree)
-        List<Map<String, Object>> inBag = new ArrayList<>();
-        // Set to hold the OOB data (data not selected for the bootstrap sample)
-        Set<Map<String, Object>> oobSet = new HashSet<>(data);
-        Random random = new Random();
+    public boolean isFrozen() {
+        return frozen;
+    }
 
-        // Randomly sample from the data to create the bootstrap sample (in-bag data)
-        for (int i = 0; i < data.size(); i++) {
-            Map<String, Object> sampledPoint = data.get(random.nextInt(data.size()));
-            inBag.add(sampledPoint);
-            oobSet.remove(sampledPoint); // Remove sampled point from OOB set
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The forest is frozen; train a new forest instead");
         }
+    }
+
+    // Create a bootstrap sample, train one tree on it and return the tree's OOB rows
+    private int[] trainTree(int treeIndex, DecisionTree tree, FeatureMatrix data, int[] labelledRows, HistogramBins bins, SplittableRandom random) {
+        long startTime = System.nanoTime();
+
+        // Create bootstrap and OOB samples for training
+        BootstrapSample sample = createBootstrapSampleWithOOB(labelledRows, data.getNumRows(), random);
+
+        // Train the tree on the distinct in-bag rows, each weighted by how often it was drawn
+        tree.setSeed(random.nextLong());  // Feature sampling continues the tree's own random sequence
+        tree.trainWeighted(data, sample.weights, bins);
+        listener.treeTrained(treeIndex, System.nanoTime() - startTime, tree.getCompiledTree().getNodeCount(),
+                labelledRows.length - sample.oob.length, sample.oob.length);
+        return sample.oob;
+    }
 
-        System.out.println("Bootstrap sample created: In-bag size = " + inBag.size() + ", OOB size = " + oobSet.size());
+    // Method to create bootstrap sample and separate OOB rows
+    // The sample is a multinomial draw stored as a count per row instead of a list of copied rows
+    private BootstrapSample createBootstrapSampleWithOOB(int[] rows, int numRows, SplittableRandom random) {
+        // Number of times each row was drawn into the bootstrap sample (in-bag data)
+        int[] weights = new int[numRows];
+        for (int i = 0; i < rows.length; i++) {
+            weights[rows[random.nextInt(rows.length)]]++;
+        }
 
-        // Return a map containing both in-bag and OOB samples
-        Map<String, List<Map<String, Object>>> result = new HashMap<>();
-        result.put("inBag", inBag);
-        result.put("oob", new ArrayList<>(oobSet));
-        return result;
+        // Rows that were never drawn form the OOB data
+        int oobCount = 0;
+        for (int row : rows) {
+            if (weights[row] == 0) {
+                oobCount++;
+            }
+        }
+        int[] oob = new int[oobCount];
+        int next = 0;
+        for (int row : rows) {
+            if (weights[row] == 0) {
+                oob[next++] = row;
+            }
+        }
+        return new BootstrapSample(weights, oob);
     }
 
     // Method to predict the class label for a given input using majority voting from all trees
     public String predict(Map<String, Object> input) {
-        System.out.println("\nStarting prediction process...");
+        boolean timed = listener != ForestListener.NONE;  // Only read the clock for a real listener
+        long startTime = timed ? System.nanoTime() : 0;
+        String finalPrediction;
+        PredictionCache cache = predictionCache;
+        if (cache != null) {
+            // Read the generation before predicting, so a retrain that starts meanwhile files the result under a retired generation
+            long currentGeneration = generation;
+            State current = state;
+            double[] row = current.schema.encode(input);
+            finalPrediction = cache.get(row, currentGeneration);
+            if (finalPrediction == null) {
+                finalPrediction = useCompiledTrees ? predictEncoded(current, row) : predictWithNodes(current, input);
+                cache.put(row, currentGeneration, finalPrediction);
+            }
+        } else {
+            State current = state;
+            finalPrediction = useCompiledTrees ? predictEncoded(current, current.schema.encode(input)) : predictWithNodes(current, input);
+        }
+        if (timed) {
+            listener.predictionMade(finalPrediction, System.nanoTime() - startTime);
+        }
+        return finalPrediction;
+    }
+
+    // Prediction by voting with the flat-array trees on an input encoded by the schema
+    private static String predictEncoded(State current, double[] row) {
+        // Count votes per class index, with the last slot for "Unknown"
+        CategoryDictionary labels = current.schema.getLabels();
+        int[] votes = new int[labels.size() + 1];
+        for (DecisionTree tree : current.trees) {
+            int prediction = tree.getCompiledTree().predict(row);
+            votes[prediction == CompiledTree.UNKNOWN ? labels.size() : prediction]++;
+        }
+
+        // Find the class label with the most votes from the trees
+        int best = majorityVote(votes, 0, votes.length);
+        return best == CompiledTree.UNKNOWN ? "Unknown" : labels.decode(best);
+    }
+
+    /**
+     * Predicts the label of every row of a columnar block, e.g. a whole portfolio.
+     * Rows are split into blocks scored concurrently on the forest's pool; within a block the trees are
+     * the outer loop so each tree's arrays stay hot in cache while all rows of the block pass through it.
+     * Returns "Unknown" for rows whose majority of trees hit a missing feature.
+     */
+    public String[] predictBatch(FeatureMatrix data) {
+        State current = state;  // Decode with the schema the rows were scored with
+        int[] classes = predictBatchClasses(current, data, null);
+        CategoryDictionary labels = current.schema.getLabels();
+        String[] predictions = new String[classes.length];
+        for (int r = 0; r < classes.length; r++) {
+            predictions[r] = classes[r] == CompiledTree.UNKNOWN ? "Unknown" : labels.decode(classes[r]);
+        }
+        return predictions;
+    }
+
+    // Same as predictBatch but returns label indices of the training schema (CompiledTree.UNKNOWN for "Unknown")
+    public int[] predictBatchClasses(FeatureMatrix data) {
+        return predictBatchClasses(data, null);
+    }
+
+    /**
+     * Same as predictBatchClasses, and also stores in voteShares (when not null, one slot per row) the
+     * fraction of trees that voted for each row's predicted class.
+     */
+    public int[] predictBatchClasses(FeatureMatrix data, double[] voteShares) {
+        return predictBatchClasses(state, data, voteShares);
+    }
+
+    private int[] predictBatchClasses(State current, FeatureMatrix data, double[] voteShares) {
+        if (voteShares != null && voteShares.length < data.getNumRows()) {
+            throw new IllegalArgumentException("voteShares needs a slot for each of the " + data.getNumRows() + " rows");
+        }
+        long startTime = System.nanoTime();
+        FeatureMatrix aligned = data.alignTo(current.schema);  // Match the training columns and category codes
+        int numRows = aligned.getNumRows();
+        int[] predictions = new int[numRows];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int start = 0; start < numRows; start += BATCH_BLOCK_SIZE) {
+            int blockStart = start;
+            int blockEnd = Math.min(start + BATCH_BLOCK_SIZE, numRows);
+            tasks.add(pool.submit(() -> predictBlock(current, aligned, blockStart, blockEnd, predictions, voteShares)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        listener.batchPredicted(numRows, System.nanoTime() - startTime);
+        return predictions;
+    }
+
+    // Score rows [start, end) tree by tree, accumulating votes per row, then take each row's majority
+    private static void predictBlock(State current, FeatureMatrix data, int start, int end, int[] predictions, double[] voteShares) {
+        List<DecisionTree> trees = current.trees;
+        int numVotes = current.schema.getLabels().size() + 1;  // Last slot counts "Unknown"
+        int unknownSlot = numVotes - 1;
+        int[] votes = new int[(end - start) * numVotes];
+        for (DecisionTree tree : trees) {
+            CompiledTree compiledTree = tree.getCompiledTree();
+            for (int r = start; r < end; r++) {
+                int prediction = compiledTree.predict(data, r);
+                votes[(r - start) * numVotes + (prediction == CompiledTree.UNKNOWN ? unknownSlot : prediction)]++;
+            }
+        }
+        for (int r = start; r < end; r++) {
+            int offset = (r - start) * numVotes;
+            predictions[r] = majorityVote(votes, offset, numVotes);
+            if (voteShares != null) {
+                int slot = predictions[r] == CompiledTree.UNKNOWN ? unknownSlot : predictions[r];
+                voteShares[r] = trees.isEmpty() ? 0.0 : (double) votes[offset + slot] / trees.size();
+            }
+        }
+    }
+
+    // Class with the most votes in votes[offset, offset + numVotes), ties going to the lower index;
+    // the last slot counts "Unknown" votes and maps to CompiledTree.UNKNOWN
+    private static int majorityVote(int[] votes, int offset, int numVotes) {
+        int best = 0;
+        for (int c = 1; c < numVotes; c++) {
+            if (votes[offset + c] > votes[offset + best]) {
+                best = c;
+            }
+        }
+        return best == numVotes - 1 ? CompiledTree.UNKNOWN : best;
+    }
+
+    // Prediction by walking each tree's node objects with the raw input map
+    private static String predictWithNodes(State current, Map<String, Object> input) {
         Map<String, Integer> votes = new HashMap<>();
 
         // Get predictions from each tree and count the votes
-        for (int i = 0; i < trees.size(); i++) {
-            System.out.println("Getting prediction from tree " + (i + 1) + "...");
-            String prediction = trees.get(i).predict(input);
+        for (DecisionTree tree : current.trees) {
+            String prediction = tree.predict(input);
             votes.put(prediction, votes.getOrDefault(prediction, 0) + 1);
         }
 
         // Find the class label with the most votes from the trees
-        String finalPrediction = Collections.max(votes.entrySet(), Map.Entry.comparingByValue()).getKey();
-        System.out.println("Final prediction: " + finalPrediction);
-        return finalPrediction;
+        return Collections.max(votes.entrySet(), Map.Entry.comparingByValue()).getKey();
     }
 
     // Method to calculate the Out-Of-Bag (OOB) accuracy of the RandomForest
+    // The labels come from the training data, so targetFeature is only kept for compatibility
     public double calculateOOBAccuracy(String targetFeature) {
-        System.out.println("\nCalculating OOB accuracy...");
-        int correctPredictions = 0;
-        int totalOOBSamples = 0;
-
-        // Iterate over all trees and their corresponding OOB data
-        for (int treeIndex = 0; treeIndex < trees.size(); treeIndex++) {
-            System.out.println("Processing OOB data for tree " + (treeIndex + 1) + "...");
-            DecisionTree tree = trees.get(treeIndex);
-            List<Map<String, Object>> oobData = oobSamples.get(treeIndex);
-
-            // Check the predictions for each OOB sample
-            for (Map<String, Object> oobSample : oobData) {
-                String trueLabel = oobSample.get(targetFeature).toString();
-                String prediction = tree.predict(oobSample);
-
-                System.out.println("OOB Sample: True Label = " + trueLabel + ", Predicted = " + prediction);
-                if (prediction.equals(trueLabel)) {
-                    correctPredictions++;
+        return evaluateOOB().getAccuracy();
+    }
+
+    /**
+     * Evaluates the forest on its out-of-bag rows: each training row is predicted by a majority vote of the
+     * trees whose bootstrap sample left it out. Rows are split into blocks scored concurrently on the forest's
+     * pool; each block keeps its slice of the per-row, per-class vote matrix and walks the compiled trees over
+     * the block's OOB rows, so the whole evaluation costs one compiled prediction per (tree, OOB row) pair.
+     */
+    public OOBReport evaluateOOB() {
+        State current = state;
+        if (current.trainingData == null) {
+            throw new IllegalStateException("OOB evaluation needs a forest trained in this session");
+        }
+        long startTime = System.nanoTime();
+        int numRows = current.trainingData.getNumRows();
+        List<ForkJoinTask<long[][]>> tasks = new ArrayList<>();
+        for (int start = 0; start < numRows; start += BATCH_BLOCK_SIZE) {
+            int blockStart = start;
+            int blockEnd = Math.min(start + BATCH_BLOCK_SIZE, numRows);
+            tasks.add(pool.submit(() -> evaluateOOBBlock(current, blockStart, blockEnd)));
+        }
+
+        // Add up the blocks' confusion matrices
+        int numClasses = current.schema.getLabels().size();
+        long[][] confusion = new long[numClasses][numClasses + 1];
+        for (ForkJoinTask<long[][]> task : tasks) {
+            long[][] blockConfusion = task.join();
+            for (int actual = 0; actual < numClasses; actual++) {
+                for (int predicted = 0; predicted <= numClasses; predicted++) {
+                    confusion[actual][predicted] += blockConfusion[actual][predicted];
                 }
-                totalOOBSamples++;
             }
         }
+        OOBReport report = new OOBReport(current.schema.getLabels(), confusion);
+        listener.oobEvaluated(report, System.nanoTime() - startTime);
+        return report;
+    }
+
+    // Count OOB votes for rows [start, end) and return their confusion matrix
+    private static long[][] evaluateOOBBlock(State current, int start, int end) {
+        List<DecisionTree> trees = current.trees;
+        FeatureMatrix trainingData = current.trainingData;
+        int numClasses = current.schema.getLabels().size();
+        int numVotes = numClasses + 1;  // Last slot counts "Unknown"
+        int[] votes = new int[(end - start) * numVotes];
+        boolean[] voted = new boolean[end - start];
+        for (int t = 0; t < trees.size(); t++) {
+            CompiledTree compiledTree = trees.get(t).getCompiledTree();
+            int[] oob = current.oobSamples.get(t);  // Ascending row indices
+
+            // Visit only the tree's OOB rows that fall in this block
+            int i = Arrays.binarySearch(oob, start);
+            for (i = i < 0 ? -i - 1 : i; i < oob.length && oob[i] < end; i++) {
+                int row = oob[i];
+                int prediction = compiledTree.predict(trainingData, row);
+                votes[(row - start) * numVotes + (prediction == CompiledTree.UNKNOWN ? numClasses : prediction)]++;
+                voted[row - start] = true;
+            }
+        }
+
+        int[] labels = trainingData.getLabels();
+        long[][] confusion = new long[numClasses][numVotes];
+        for (int row = start; row < end; row++) {
+            if (voted[row - start]) {
+                int prediction = majorityVote(votes, (row - start) * numVotes, numVotes);
+                confusion[labels[row]][prediction == CompiledTree.UNKNOWN ? numClasses : prediction]++;
+            }
+        }
+        return confusion;
+    }
+
+    /**
+     * Everything predictions and OOB evaluation read, published as a whole with one volatile write so that a
+     * reader never combines new trees with an old schema or old training data.
+     */
+    private static final class State {
+        final FeatureSchema schema;        // Null until the forest is trained
+        final FeatureMatrix trainingData;  // Null unless trained in this session
+        final List<DecisionTree> trees;
+        final List<int[]> oobSamples;
+        final long[] trainedInRound;       // Refresh round each tree was last trained in (0 for the initial training)
+        final long refreshRound;
 
-        // Calculate and return the OOB accuracy
-        double oobAccuracy = (double) correctPredictions / totalOOBSamples;
-        System.out.println("OOB accuracy calculated: " + oobAccuracy);
-        return oobAccuracy;
+        State(FeatureSchema schema, FeatureMatrix trainingData, List<DecisionTree> trees, List<int[]> oobSamples, long refreshRound) {
+            this(schema, trainingData, trees, oobSamples, new long[trees.size()], refreshRound);
+        }
+
+        State(FeatureSchema schema, FeatureMatrix trainingData, List<DecisionTree> trees, List<int[]> oobSamples,
+              long[] trainedInRound, long refreshRound) {
+            this.schema = schema;
+            this.trainingData = trainingData;
+            this.trees = Collections.unmodifiableList(trees);
+            this.oobSamples = Collections.unmodifiableList(oobSamples);
+            this.trainedInRound = trainedInRound;
+            this.refreshRound = refreshRound;
+        }
+    }
+
+    // Inner class holding the in-bag counts and OOB row indices of one bootstrap sample
+    private static class BootstrapSample {
+        int[] weights;
+        int[] oob;
+
+        BootstrapSample(int[] weights, int[] oob) {
+            this.weights = weights;
+            this.oob = oob;
+        }
     }
 }
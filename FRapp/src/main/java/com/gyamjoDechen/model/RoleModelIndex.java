@@ -0,0 +1,518 @@
+package com.gyamjoDechen.model;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Nearest-neighbour index over role-model profiles.
+ * Numeric features are z-score normalised and every categorical feature the two profiles disagree on adds
+ * CATEGORY_MISMATCH_PENALTY to the squared distance. Profiles are partitioned by their categorical values and
+ * each partition is a KD-tree, so a query searches the partition matching the user first and only visits the
+ * others while their mismatch penalty alone could still beat the k-th best distance found so far.
+ *
+ * Profiles are added to and removed from the trees in place: an addition goes into a leaf (rebuilding the
+ * highest subtree it pushes out of balance) and a removal leaves a tombstone. Everything is rebuilt, and the
+ * normalisation refreshed, only once the changes since the last rebuild reach REBUILD_FRACTION of the profiles
+ * it indexed. Queries share a read lock, so they run in parallel and only wait for writers.
+ */
+public class RoleModelIndex {
+    // Squared distance added per categorical feature on which two profiles differ
+    public static final double CATEGORY_MISMATCH_PENALTY = 1.0;
+
+    // Largest number of points a KD-tree leaf holds before it is split
+    private static final int LEAF_SIZE = 16;
+
+    // Share of its subtree a child may hold before additions make the subtree be rebuilt
+    private static final double BALANCE = 0.75;
+
+    // Changes (additions and removals) since the last rebuild, as a share of the profiles it indexed, that trigger a full rebuild
+    private static final double REBUILD_FRACTION = 0.25;
+
+    private final String[] numericKeys;
+    private final String[] categoricalKeys;
+
+    // Queries take the read lock; add, remove and rebuilds take the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<List<Object>, Partition> partitions = new LinkedHashMap<>();
+    private long nextId;
+    private int indexedAtRebuild;
+    private int changesSinceRebuild;
+    private int rebuilds;
+
+    // Normalisation of the last rebuild, also used for the profiles added since
+    private final double[] means;
+    private final double[] scales;
+
+    public RoleModelIndex(String[] numericKeys, String[] categoricalKeys) {
+        if (numericKeys.length == 0) {
+            throw new IllegalArgumentException("At least one numeric feature is needed");
+        }
+        this.numericKeys = numericKeys.clone();
+        this.categoricalKeys = categoricalKeys.clone();
+        this.means = new double[numericKeys.length];
+        this.scales = new double[numericKeys.length];
+        Arrays.fill(scales, 1.0);
+    }
+
+    /**
+     * Adds a profile and returns the id it can be removed with.
+     */
+    public long add(Map<String, Object> profile) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = new Entry(nextId++, profile, Arrays.asList(categories(profile)));
+            entry.coordinates = normalize(profile);
+            entries.put(entry.id, entry);
+            partitions.computeIfAbsent(entry.categories, key -> new Partition(key.toArray())).insert(entry);
+            changed();
+            return entry.id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the profile added under the given id and returns it.
+     */
+    public Map<String, Object> remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(id);
+            if (entry == null) {
+                throw new IllegalArgumentException("No role model with id " + id);
+            }
+            entry.removed = true;
+            partitions.get(entry.categories).live--;
+            changed();
+            return entry.profile;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Number of full rebuilds so far
+    public int getRebuilds() {
+        lock.readLock().lock();
+        try {
+            return rebuilds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the k profiles closest to the given one, nearest first (fewer if the index holds fewer).
+     */
+    public List<Map<String, Object>> nearest(Map<String, Object> profile, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        lock.readLock().lock();
+        try {
+            double[] query = normalize(profile);
+            Object[] categories = categories(profile);
+
+            // Visit the partitions by increasing mismatch penalty; stop once the penalty alone is too large
+            Partition[] order = partitions.values().toArray(new Partition[0]);
+            double[] penalties = new double[order.length];
+            for (int p = 0; p < order.length; p++) {
+                penalties[p] = order[p].penalty(categories);
+            }
+            Integer[] byPenalty = new Integer[order.length];
+            for (int p = 0; p < order.length; p++) {
+                byPenalty[p] = p;
+            }
+            Arrays.sort(byPenalty, Comparator.comparingDouble(p -> penalties[p]));
+
+            Neighbours neighbours = new Neighbours(k);
+            for (int p : byPenalty) {
+                if (neighbours.isFull() && penalties[p] >= neighbours.worst()) {
+                    break;
+                }
+                if (order[p].live > 0) {
+                    search(order[p].root, query, penalties[p], neighbours);
+                }
+            }
+            return neighbours.sorted();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Distance between two profiles as the index measures it (square root of the normalised squared distance
+     * plus the category penalties), using the normalisation of the last rebuild.
+     */
+    public double distance(Map<String, Object> a, Map<String, Object> b) {
+        lock.readLock().lock();
+        try {
+            double squared = squaredDistance(normalize(a), normalize(b));
+            Object[] categoriesA = categories(a);
+            Object[] categoriesB = categories(b);
+            for (int c = 0; c < categoriesA.length; c++) {
+                if (!Objects.equals(categoriesA[c], categoriesB[c])) {
+                    squared += CATEGORY_MISMATCH_PENALTY;
+                }
+            }
+            return Math.sqrt(squared);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Counts a change and rebuilds once enough of the index has changed since the last rebuild
+    private void changed() {
+        changesSinceRebuild++;
+        if (changesSinceRebuild > REBUILD_FRACTION * indexedAtRebuild) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        // Mean and standard deviation of every numeric feature, for the z-scores
+        int dims = numericKeys.length;
+        double[] sums = new double[dims];
+        double[] squares = new double[dims];
+        long[] counts = new long[dims];
+        for (Entry entry : entries.values()) {
+            for (int d = 0; d < dims; d++) {
+                Object value = entry.profile.get(numericKeys[d]);
+                if (value != null) {
+                    sums[d] += ((Number) value).doubleValue();
+                    counts[d]++;
+                }
+            }
+        }
+        for (int d = 0; d < dims; d++) {
+            means[d] = counts[d] > 0 ? sums[d] / counts[d] : 0.0;
+        }
+        for (Entry entry : entries.values()) {
+            for (int d = 0; d < dims; d++) {
+                Object value = entry.profile.get(numericKeys[d]);
+                if (value != null) {
+                    double deviation = ((Number) value).doubleValue() - means[d];
+                    squares[d] += deviation * deviation;
+                }
+            }
+        }
+        for (int d = 0; d < dims; d++) {
+            double deviation = counts[d] > 1 ? Math.sqrt(squares[d] / counts[d]) : 0.0;
+            scales[d] = deviation > 0.0 ? 1.0 / deviation : 1.0;  // Constant features keep their raw differences
+        }
+
+        // Group the live profiles by their categorical values and build a balanced tree per group
+        Map<List<Object>, List<Entry>> groups = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            entry.coordinates = normalize(entry.profile);
+            groups.computeIfAbsent(entry.categories, key -> new ArrayList<>()).add(entry);
+        }
+        partitions.clear();
+        for (Map.Entry<List<Object>, List<Entry>> group : groups.entrySet()) {
+            Partition partition = new Partition(group.getKey().toArray());
+            Entry[] members = group.getValue().toArray(new Entry[0]);
+            partition.root = build(members, 0, members.length);
+            partition.live = members.length;
+            partitions.put(group.getKey(), partition);
+        }
+        indexedAtRebuild = entries.size();
+        changesSinceRebuild = 0;
+        rebuilds++;
+    }
+
+    // Normalised numeric coordinates; a missing value sits at the mean
+    private double[] normalize(Map<String, Object> profile) {
+        double[] point = new double[numericKeys.length];
+        for (int d = 0; d < point.length; d++) {
+            Object value = profile.get(numericKeys[d]);
+            point[d] = value != null ? (((Number) value).doubleValue() - means[d]) * scales[d] : 0.0;
+        }
+        return point;
+    }
+
+    private Object[] categories(Map<String, Object> profile) {
+        Object[] values = new Object[categoricalKeys.length];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = profile.get(categoricalKeys[c]);
+        }
+        return values;
+    }
+
+    // Builds a balanced KD-tree over entries [lo, hi), reordering them
+    private static Node build(Entry[] entries, int lo, int hi) {
+        Node node = new Node();
+        node.size = hi - lo;
+        int dim = hi - lo > LEAF_SIZE ? widestDimension(entries, lo, hi) : -1;
+        if (dim < 0) {
+            // Points that cannot be told apart on any dimension share an oversized leaf, which grows by doubling
+            node.entries = new Entry[hi - lo > LEAF_SIZE ? 2 * (hi - lo) : LEAF_SIZE];
+            System.arraycopy(entries, lo, node.entries, 0, hi - lo);
+            return node;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(entries, lo, hi - 1, mid, dim);
+        node.splitDim = dim;
+        node.splitValue = entries[mid].coordinates[dim];
+        node.lower = build(entries, lo, mid);
+        node.upper = build(entries, mid, hi);
+        return node;
+    }
+
+    // Dimension with the widest spread over entries [lo, hi), or -1 if all of them are the same point
+    private static int widestDimension(Entry[] entries, int lo, int hi) {
+        int dims = entries[lo].coordinates.length;
+        int dim = -1;
+        double widest = 0.0;
+        for (int d = 0; d < dims; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                double value = entries[i].coordinates[d];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                dim = d;
+            }
+        }
+        return dim;
+    }
+
+    // Quickselect: move the entry with rank k on dim to index k, smaller ones before it and larger ones after
+    private static void select(Entry[] entries, int lo, int hi, int k, int dim) {
+        while (hi > lo) {
+            double pivot = entries[(lo + hi) >>> 1].coordinates[dim];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (entries[i].coordinates[dim] < pivot) {
+                    i++;
+                }
+                while (entries[j].coordinates[dim] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    Entry entry = entries[i];
+                    entries[i++] = entries[j];
+                    entries[j--] = entry;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void search(Node node, double[] query, double penalty, Neighbours neighbours) {
+        if (node.entries != null) {
+            for (int i = 0; i < node.size; i++) {
+                Entry entry = node.entries[i];
+                if (!entry.removed) {
+                    neighbours.offer(penalty + squaredDistance(query, entry.coordinates), entry.profile);
+                }
+            }
+            return;
+        }
+        double gap = query[node.splitDim] - node.splitValue;
+        Node near = gap <= 0 ? node.lower : node.upper;
+        Node far = gap <= 0 ? node.upper : node.lower;
+        search(near, query, penalty, neighbours);
+        if (!neighbours.isFull() || penalty + gap * gap < neighbours.worst()) {
+            search(far, query, penalty, neighbours);
+        }
+    }
+
+    private static double squaredDistance(double[] x, double[] y) {
+        double squared = 0.0;
+        for (int d = 0; d < x.length; d++) {
+            double difference = x[d] - y[d];
+            squared += difference * difference;
+        }
+        return squared;
+    }
+
+    /**
+     * A profile in the index. Removed entries stay in their leaf as tombstones until the next rebuild.
+     */
+    private static final class Entry {
+        private final long id;
+        private final Map<String, Object> profile;
+        private final List<Object> categories;
+        private double[] coordinates;
+        private boolean removed;
+
+        Entry(long id, Map<String, Object> profile, List<Object> categories) {
+            this.id = id;
+            this.profile = profile;
+            this.categories = categories;
+        }
+    }
+
+    /**
+     * KD-tree node. A leaf keeps its entries in a bucket; an inner node sends points at or below splitValue on
+     * splitDim to its lower child and points at or above it to its upper child.
+     */
+    private static final class Node {
+        private Entry[] entries;  // Null for an inner node
+        private int size;         // Entries in the subtree, tombstones included
+        private int splitDim;
+        private double splitValue;
+        private Node lower;
+        private Node upper;
+    }
+
+    /**
+     * The KD-tree over the profiles of one categorical group.
+     */
+    private static final class Partition {
+        private final Object[] categories;
+        private Node root = build(new Entry[0], 0, 0);
+        private int live;
+
+        Partition(Object[] categories) {
+            this.categories = categories;
+        }
+
+        double penalty(Object[] query) {
+            double penalty = 0.0;
+            for (int c = 0; c < categories.length; c++) {
+                if (!Objects.equals(categories[c], query[c])) {
+                    penalty += CATEGORY_MISMATCH_PENALTY;
+                }
+            }
+            return penalty;
+        }
+
+        void insert(Entry entry) {
+            List<Node> path = new ArrayList<>();
+            Node node = root;
+            while (node.entries == null) {
+                node.size++;
+                path.add(node);
+                node = entry.coordinates[node.splitDim] <= node.splitValue ? node.lower : node.upper;
+            }
+            if (node.size < node.entries.length) {
+                node.entries[node.size++] = entry;
+            } else {
+                // Split the full leaf
+                Entry[] members = Arrays.copyOf(node.entries, node.size + 1);
+                members[node.size] = entry;
+                replace(path.isEmpty() ? null : path.get(path.size() - 1), node, build(members, 0, members.length));
+            }
+            live++;
+
+            // Rebuild the highest subtree on the path whose children the addition has pushed out of balance
+            for (int depth = 0; depth < path.size(); depth++) {
+                Node inner = path.get(depth);
+                if (Math.max(inner.lower.size, inner.upper.size) > BALANCE * inner.size) {
+                    Entry[] members = new Entry[inner.size];
+                    collect(inner, members, 0);
+                    replace(depth == 0 ? null : path.get(depth - 1), inner, build(members, 0, members.length));
+                    break;
+                }
+            }
+        }
+
+        private void replace(Node parent, Node child, Node subtree) {
+            if (parent == null) {
+                root = subtree;
+            } else if (parent.lower == child) {
+                parent.lower = subtree;
+            } else {
+                parent.upper = subtree;
+            }
+        }
+
+        private static int collect(Node node, Entry[] members, int offset) {
+            if (node.entries != null) {
+                System.arraycopy(node.entries, 0, members, offset, node.size);
+                return offset + node.size;
+            }
+            return collect(node.upper, members, collect(node.lower, members, offset));
+        }
+    }
+
+    /**
+     * The k closest profiles seen so far, as a max-heap on squared distance.
+     */
+    private static final class Neighbours {
+        private final double[] distances;
+        private final Object[] profiles;
+        private int size;
+
+        Neighbours(int k) {
+            distances = new double[k];
+            profiles = new Object[k];
+        }
+
+        boolean isFull() {
+            return size == distances.length;
+        }
+
+        double worst() {
+            return distances[0];
+        }
+
+        void offer(double distance, Map<String, Object> profile) {
+            if (size < distances.length) {
+                // Sift the new entry up from the end
+                int i = size++;
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    distances[i] = distances[(i - 1) / 2];
+                    profiles[i] = profiles[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                distances[i] = distance;
+                profiles[i] = profile;
+            } else if (distance < distances[0]) {
+                // Replace the worst entry and sift it down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && distances[child + 1] > distances[child]) {
+                        child++;
+                    }
+                    if (distances[child] <= distance) {
+                        break;
+                    }
+                    distances[i] = distances[child];
+                    profiles[i] = profiles[child];
+                    i = child;
+                }
+                distances[i] = distance;
+                profiles[i] = profile;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> sorted() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingDouble(i -> distances[i]));
+            List<Map<String, Object>> result = new ArrayList<>(size);
+            for (int i : order) {
+                result.add((Map<String, Object>) profiles[i]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.gyamjoDechen.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running aggregates of numeric columns over a population of role-model profiles.
+ * Each column keeps a count, a sum and a QuantileSketch, which are updated as profiles are added or
+ * removed, so means and percentiles are answered without scanning the profiles.
+ */
+public class RoleModelStats {
+    // Relative accuracy of the reported percentiles
+    private static final double PERCENTILE_ACCURACY = 0.01;
+
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private int count;
+
+    public RoleModelStats(String... keys) {
+        for (String key : keys) {
+            columns.put(key, new Column());
+        }
+    }
+
+    // Add a profile; missing (null) values of a column are skipped
+    public synchronized void add(Map<String, Object> profile) {
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            Object value = profile.get(entry.getKey());
+            if (value != null) {
+                entry.getValue().add(((Number) value).doubleValue());
+            }
+        }
+        count++;
+    }
+
+    // Remove a profile that was added before, with the same values
+    public synchronized void remove(Map<String, Object> profile) {
+        if (count == 0) {
+            throw new IllegalStateException("No role models to remove");
+        }
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            Object value = profile.get(entry.getKey());
+            if (value != null) {
+                entry.getValue().remove(((Number) value).doubleValue());
+            }
+        }
+        count--;
+    }
+
+    // Number of profiles
+    public synchronized int getCount() {
+        return count;
+    }
+
+    // Mean of a column over the profiles that have a value, or 0 if none do
+    public synchronized double getMean(String key) {
+        Column column = column(key);
+        return column.sketch.getCount() > 0 ? column.sum / column.sketch.getCount() : 0.0;
+    }
+
+    // Value below which the given percentage (0-100) of the column's values lie, or NaN if there are none
+    public synchronized double getPercentile(String key, double percentile) {
+        return column(key).sketch.getQuantile(percentile / 100.0);
+    }
+
+    private Column column(String key) {
+        Column column = columns.get(key);
+        if (column == null) {
+            throw new IllegalArgumentException("No statistics are kept for " + key);
+        }
+        return column;
+    }
+
+    private static final class Column {
+        private final QuantileSketch sketch = new QuantileSketch(PERCENTILE_ACCURACY);
+        private double sum;
+
+        void add(double value) {
+            sketch.add(value);
+            sum += value;
+        }
+
+        void remove(double value) {
+            sketch.remove(value);
+            sum -= value;
+            if (sketch.getCount() == 0) {
+                sum = 0.0;  // Drop the rounding error left by the removals
+            }
+        }
+    }
+}
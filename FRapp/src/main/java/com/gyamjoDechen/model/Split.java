@@ -0,0 +1,21 @@
+package com.gyamjoDechen.model;
+
+// Best split found for a node: a numeric threshold or a set of categories of one feature, with its gain, the reduction in impurity
+class Split {
+    final int feature;
+    final double threshold;  // NaN for categorical splits
+    final long categories;   // Bitmask of the category codes that go left, 0 for numeric splits
+    final double gain;
+
+    Split(int feature, double threshold, long categories, double gain) {
+        this.feature = feature;
+        this.threshold = threshold;
+        this.categories = categories;
+        this.gain = gain;
+    }
+
+    // Check whether this split beats another one (earlier features win ties)
+    boolean isBetterThan(Split other) {
+        return other == null || gain > other.gain || (gain == other.gain && feature < other.feature);
+    }
+}
@@ -0,0 +1,72 @@
+package com.gyamjoDechen.model;
+
+/**
+ * Impurity measure a DecisionTree minimizes when choosing splits; the gain of a split is the node's
+ * impurity minus the size-weighted impurity of its two sides.
+ * Every variant reads (weighted) class counts straight from primitive arrays and allocates nothing.
+ */
+public enum SplitCriterion {
+    // Shannon entropy in bits, computed with a logarithm per class
+    ENTROPY {
+        @Override
+        double impurity(int[] counts, int[] minus, int size) {
+            double entropy = 0.0;
+            for (int c = 0; c < counts.length; c++) {
+                int count = minus == null ? counts[c] : counts[c] - minus[c];
+                if (count > 0) {
+                    double proportion = (double) count / size;
+                    entropy -= proportion * Math.log(proportion) / LN2;
+                }
+            }
+            return entropy;
+        }
+    },
+    // Gini impurity: the chance that two rows drawn from the node have different classes
+    GINI {
+        @Override
+        double impurity(int[] counts, int[] minus, int size) {
+            double sumOfSquares = 0.0;
+            for (int c = 0; c < counts.length; c++) {
+                double count = minus == null ? counts[c] : counts[c] - minus[c];
+                sumOfSquares += count * count;
+            }
+            return 1.0 - sumOfSquares / ((double) size * size);
+        }
+    },
+    // Entropy in bits rewritten as (n·log2(n) - sum of c·log2(c)) / n, with c·log2(c) looked up for integer counts
+    FAST_ENTROPY {
+        @Override
+        double impurity(int[] counts, int[] minus, int size) {
+            double sum = 0.0;
+            for (int c = 0; c < counts.length; c++) {
+                sum += nLog2n(minus == null ? counts[c] : counts[c] - minus[c]);
+            }
+            return (nLog2n(size) - sum) / size;
+        }
+    };
+
+    private static final double LN2 = Math.log(2);
+
+    /**
+     * Impurity of a node of the given (weighted) size whose class counts are counts[c] - minus[c],
+     * or just counts[c] when minus is null; this gives the right side of a split without building its counts.
+     */
+    abstract double impurity(int[] counts, int[] minus, int size);
+
+    // n·log2(n), with 0·log2(0) = 0; counts below the table size cost one array read
+    static double nLog2n(int n) {
+        return n < Log2Table.SIZE ? Log2Table.N_LOG2_N[n] : n * (Math.log(n) / LN2);
+    }
+
+    // Built on first use, so trees that never use FAST_ENTROPY do not pay for the table
+    private static final class Log2Table {
+        static final int SIZE = 1 << 16;  // 512 KB, covering the counts of all but the largest nodes
+        static final double[] N_LOG2_N = new double[SIZE];
+
+        static {
+            for (int n = 1; n < SIZE; n++) {
+                N_LOG2_N[n] = n * (Math.log(n) / LN2);
+            }
+        }
+    }
+}
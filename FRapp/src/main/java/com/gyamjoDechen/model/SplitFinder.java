@@ -0,0 +1,222 @@
+package com.gyamjoDechen.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Finds the best split for a node of a tree under construction and partitions the node's rows.
+ * Each instance belongs to a single training run; subclasses differ in how they search numeric features.
+ * Rows carry integer weights (how often each row was drawn into the sample), so all label counts are
+ * weighted counts and a node's size is the sum of its rows' weights.
+ * Nodes cover disjoint row ranges, so different nodes may be searched and split concurrently.
+ */
+abstract class SplitFinder {
+    protected final FeatureMatrix data;
+    protected final FeatureSchema schema;
+    protected final int[] labels;
+    protected final int[] weights;  // Weight of each row of the dataset
+    protected final int numClasses;
+    protected int minSamplesLeaf = 1;  // Smallest weighted size either side of a split may have
+    protected SplitCriterion criterion = SplitCriterion.ENTROPY;  // Impurity the splits reduce
+
+    // Most categories whose subsets are all tried when there are more than two classes (2^10 - 1 subsets)
+    static final int MAX_EXHAUSTIVE_CATEGORIES = 10;
+
+    SplitFinder(FeatureMatrix data, int[] weights) {
+        this.data = data;
+        this.schema = data.getSchema();
+        this.labels = data.getLabels();
+        this.weights = weights;
+        this.numClasses = data.getNumClasses();
+    }
+
+    // Creates the root node holding the given distinct training rows
+    abstract Node createRoot(int[] rows);
+
+    // Finds the best split of one feature for the node, or null if the feature cannot separate its rows
+    abstract Split findBestSplit(Node node, int feature);
+
+    // Partitions the node's rows according to the split and returns the left and right child nodes
+    abstract Node[] split(Node node, Split split);
+
+    // Reject splits that leave fewer than minSamplesLeaf (weighted) rows on either side
+    void setMinSamplesLeaf(int minSamplesLeaf) {
+        this.minSamplesLeaf = minSamplesLeaf;
+    }
+
+    // Measure split quality with the given impurity criterion
+    void setCriterion(SplitCriterion criterion) {
+        this.criterion = criterion;
+    }
+
+    // Find the best split over the given features, or null if none of them separates the node's rows
+    Split findBestSplit(Node node, int[] features) {
+        Split best = null;
+        for (int feature : features) {
+            Split candidate = findBestSplit(node, feature);
+            if (candidate != null && candidate.isBetterThan(best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    // Find the best split over the given features with each feature evaluated in its own ForkJoin task
+    Split findBestSplitInParallel(Node node, int[] features) {
+        List<ForkJoinTask<Split>> tasks = new ArrayList<>(features.length);
+        for (int feature : features) {
+            int candidate = feature;
+            tasks.add(ForkJoinTask.adapt(() -> findBestSplit(node, candidate)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        // Reduce in feature order so the result matches the sequential search
+        Split best = null;
+        for (ForkJoinTask<Split> task : tasks) {
+            Split candidate = task.join();
+            if (candidate != null && candidate.isBetterThan(best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the best set of categories to send left, given per-category label counts; missing values and codes
+     * past the mask go right. Up to MAX_EXHAUSTIVE_CATEGORIES present categories with more than two classes
+     * every subset is tried, visited in Gray-code order so each step moves one category across. Otherwise the
+     * categories are sorted by their share of one class and only the k-1 prefixes of that order are tried,
+     * which for two classes is known to contain the best subset.
+     */
+    protected Split findBestCategorySplit(Node node, int feature, int[][] categoryCounts) {
+        // Categories that occur in the node; the others have no rows and stay on the right
+        int[] present = new int[Math.min(categoryCounts.length, CompiledTree.MAX_MASK_CATEGORIES)];
+        int numPresent = 0;
+        for (int category = 0; category < present.length; category++) {
+            for (int count : categoryCounts[category]) {
+                if (count > 0) {
+                    present[numPresent++] = category;
+                    break;
+                }
+            }
+        }
+        if (numPresent == 0) {
+            return null;
+        }
+
+        double totalImpurity = criterion.impurity(node.counts, null, node.size);
+        int[] leftCounts = new int[numClasses];
+        long mask = 0L;
+        Split best = null;
+        if (numClasses > 2 && numPresent <= MAX_EXHAUSTIVE_CATEGORIES) {
+            for (int step = 1; step < 1 << numPresent; step++) {
+                int category = present[Integer.numberOfTrailingZeros(step)];
+                mask ^= 1L << category;
+                int sign = (mask >>> category & 1L) != 0 ? 1 : -1;  // Joining or leaving the left side
+                for (int c = 0; c < numClasses; c++) {
+                    leftCounts[c] += sign * categoryCounts[category][c];
+                }
+                best = betterCategorySplit(best, node, feature, totalImpurity, leftCounts, mask);
+            }
+            return best;
+        }
+
+        // Order the categories by their share of the node's majority class
+        int sortClass = argMax(node.counts);
+        double[] share = new double[numPresent];
+        for (int i = 0; i < numPresent; i++) {
+            int[] counts = categoryCounts[present[i]];
+            int size = 0;
+            for (int count : counts) {
+                size += count;
+            }
+            share[i] = (double) counts[sortClass] / size;
+        }
+        for (int i = 1; i < numPresent; i++) {  // Insertion sort; there are at most 64 categories
+            int category = present[i];
+            double key = share[i];
+            int k = i - 1;
+            for (; k >= 0 && share[k] > key; k--) {
+                present[k + 1] = present[k];
+                share[k + 1] = share[k];
+            }
+            present[k + 1] = category;
+            share[k + 1] = key;
+        }
+        for (int i = 0; i < numPresent; i++) {
+            int category = present[i];
+            mask |= 1L << category;
+            for (int c = 0; c < numClasses; c++) {
+                leftCounts[c] += categoryCounts[category][c];
+            }
+            best = betterCategorySplit(best, node, feature, totalImpurity, leftCounts, mask);
+        }
+        return best;
+    }
+
+    // Return the split sending the masked categories left if it is valid and beats best, otherwise best
+    private Split betterCategorySplit(Split best, Node node, int feature, double totalImpurity, int[] leftCounts, long mask) {
+        double gain = splitGain(totalImpurity, node.counts, leftCounts, node.size);
+        if (!Double.isNaN(gain) && (best == null || gain > best.gain)) {
+            return new Split(feature, Double.NaN, mask, gain);
+        }
+        return best;
+    }
+
+    // Index of the largest count
+    private static int argMax(int[] counts) {
+        int best = 0;
+        for (int c = 1; c < counts.length; c++) {
+            if (counts[c] > counts[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // Check which side of a split a row falls on (missing values go right)
+    protected boolean goesLeft(int row, Split split) {
+        if (schema.isNumeric(split.feature)) {
+            return data.getNumericColumn(split.feature)[row] <= split.threshold;
+        }
+        return CompiledTree.inCategorySet(split.categories, data.getCategoryColumn(split.feature)[row]);
+    }
+
+    // Calculate the gain of a split (the reduction in impurity) given the label counts of the node and of its left side
+    // Returns NaN when the split leaves fewer than minSamplesLeaf rows (at least one) on either side
+    double splitGain(double totalImpurity, int[] counts, int[] leftCounts, int size) {
+        int leftSize = 0;
+        for (int count : leftCounts) {
+            leftSize += count;
+        }
+        int rightSize = size - leftSize;
+        if (leftSize < minSamplesLeaf || rightSize < minSamplesLeaf) {
+            return Double.NaN;
+        }
+
+        double leftImpurity = criterion.impurity(leftCounts, null, leftSize);
+        double rightImpurity = criterion.impurity(counts, leftCounts, rightSize);  // Right counts are the node's minus the left's
+        double weightedImpurity = ((double) leftSize / size) * leftImpurity + ((double) rightSize / size) * rightImpurity;
+        return totalImpurity - weightedImpurity;
+    }
+
+    // A node under construction: the range [start, end) of the finder's row arrays and its weighted label counts
+    static class Node {
+        final int start;
+        final int end;
+        final int[] counts;
+        final int size;
+
+        Node(int start, int end, int[] counts) {
+            this.start = start;
+            this.end = end;
+            this.counts = counts;
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            this.size = total;
+        }
+    }
+}
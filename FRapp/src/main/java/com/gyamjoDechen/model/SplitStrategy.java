@@ -0,0 +1,9 @@
+package com.gyamjoDechen.model;
+
+// How a DecisionTree searches numeric features for split thresholds
+public enum SplitStrategy {
+    // Every distinct value is a candidate threshold (presorted columns, single sweep per feature)
+    EXACT,
+    // Values are quantized into at most 256 bins once and splits are found from per-node histograms
+    HISTOGRAM
+}
@@ -1,6 +1,8 @@
 package com.gyamjoDechen.view;
 
-import com.gyamjoDechen.model.RandomForest;
+import com.gyamjoDechen.controller.ModelHolder;
+import com.gyamjoDechen.controller.RecommendationManager;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -9,18 +11,17 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class InputUI {
 
-    private final RandomForest randomForest;
-    private final List<Map<String, Object>> dataset;
+    private final ModelHolder modelHolder;
+    private final RecommendationManager recommendationManager;
 
-    // Constructor updated to accept the dataset
-    public InputUI(RandomForest randomForest, List<Map<String, Object>> dataset) {
-        this.randomForest = randomForest;
-        this.dataset = dataset;
+    // Constructor updated to accept the serving model and the role models used for recommendations
+    public InputUI(ModelHolder modelHolder, RecommendationManager recommendationManager) {
+        this.modelHolder = modelHolder;
+        this.recommendationManager = recommendationManager;
     }
 
     public void start(Stage primaryStage) {
@@ -47,6 +48,21 @@ public class InputUI {
         predictButton.setStyle("-fx-background-color: #00008B; -fx-text-fill: white;");
         predictButton.setDisable(true); // Disable Predict button until all fields are valid
 
+        // Retrain in the background; predictions keep using the current model until the new one is swapped in
+        Button retrainButton = new Button("Retrain Model");
+        retrainButton.setStyle("-fx-background-color: #00008B; -fx-text-fill: white;");
+        Label modelStatusLabel = new Label("Model version " + modelHolder.current().getVersion() + " is serving");
+        retrainButton.setOnAction(event -> {
+            retrainButton.setDisable(true);
+            modelStatusLabel.setText("Retraining in the background...");
+            modelHolder.retrain().whenComplete((snapshot, error) -> Platform.runLater(() -> {
+                retrainButton.setDisable(false);
+                modelStatusLabel.setText(error == null
+                        ? "Model version " + snapshot.getVersion() + " is serving"
+                        : "Retraining failed, version " + modelHolder.current().getVersion() + " is still serving");
+            }));
+        });
+
         // Field validations and enabling predict button
         Map<String, Control> fieldMap = new HashMap<>();
         fieldMap.put("Gender", (Control) genderBox.getChildren().get(1));
@@ -101,13 +117,14 @@ public class InputUI {
                 return;
             }
 
-            // Predict risk using RandomForest
-            String prediction = randomForest.predict(userInput);
+            // Predict risk using the model currently being served
+            String prediction = modelHolder.predict(userInput).getLabel();
             navigateToResultUI(primaryStage, prediction, userInput);
         });
 
         formLayout.getChildren().addAll(
-                titleLabel, genderBox, educationBox, maritalStatusBox, employmentBox, incomeBox, creditScoreBox, debtRatioBox, predictButton
+                titleLabel, genderBox, educationBox, maritalStatusBox, employmentBox, incomeBox, creditScoreBox, debtRatioBox, predictButton,
+                retrainButton, modelStatusLabel
         );
 
         Scene scene = new Scene(formLayout, 600, 800);
@@ -167,6 +184,6 @@ public class InputUI {
 
     // Method to navigate to the result UI with prediction and user input
     private void navigateToResultUI(Stage primaryStage, String prediction, Map<String, Object> userInput) {
-        new ResultUI(prediction, userInput, dataset).start(primaryStage); // Pass the dataset to ResultUI for further use
+        new ResultUI(prediction, userInput, recommendationManager).start(primaryStage); // Pass the role models to ResultUI for recommendations
     }
 }
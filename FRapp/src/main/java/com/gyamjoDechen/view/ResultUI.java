@@ -9,19 +9,17 @@ import javafx.scene.layout.VBox;
 import javafx.scene.control.ScrollPane;
 import javafx.stage.Stage;
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class ResultUI {
     private final String prediction;
     private final Map<String, Object> userInput;
-    private final List<Map<String, Object>> dataset;
+    private final RecommendationManager recommendationManager;
 
-    public ResultUI(String prediction, Map<String, Object> userInput, List<Map<String, Object>> dataset) {
+    public ResultUI(String prediction, Map<String, Object> userInput, RecommendationManager recommendationManager) {
         this.prediction = prediction;
         this.userInput = userInput;
-        this.dataset = dataset;
+        this.recommendationManager = recommendationManager;
     }
 
     public void start(Stage primaryStage) {
@@ -50,13 +48,8 @@ public class ResultUI {
         Button suggestionButton = new Button("Show Recommendations");
         suggestionButton.setStyle("-fx-background-color: #00008B; -fx-text-fill: white;");
         suggestionButton.setOnAction(event -> {
-            // Filters low-risk profiles to find role models for recommendations
-            List<Map<String, Object>> lowRiskProfiles = dataset.stream()
-                    .filter(entry -> "Low".equalsIgnoreCase((String) entry.get("Risk Rating")))
-                    .collect(Collectors.toList());
-
-            // Uses RecommendationManager to generate recommendations based on user input
-            RecommendationManager recommendationManager = new RecommendationManager(lowRiskProfiles);
+            // Uses RecommendationManager to generate recommendations based on user input; the role-model
+            // statistics were computed when the manager was built, so this does not scan the dataset
             String recommendations = recommendationManager.getRecommendations(prediction, userInput);
 
             // Updates the label with the generated recommendations
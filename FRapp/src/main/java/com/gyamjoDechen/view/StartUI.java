@@ -1,7 +1,11 @@
 package com.gyamjoDechen.view;
 
 import com.gyamjoDechen.controller.DataManager;
-import com.gyamjoDechen.model.RandomForest;
+import com.gyamjoDechen.controller.ModelHolder;
+import com.gyamjoDechen.controller.ModelManager;
+import com.gyamjoDechen.controller.RecommendationManager;
+import com.gyamjoDechen.model.FeatureMatrix;
+import com.gyamjoDechen.model.FeatureSchema;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Pos;
@@ -14,12 +18,9 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import java.io.File;
-import java.util.List;
-import java.util.Map;
+import java.util.function.Supplier;
 
 public class StartUI extends Application {
-    private RandomForest randomForest;
-    private List<Map<String, Object>> dataset;
     private String filePath = "C:\\Users\\sherp\\OneDrive\\Desktop\\FRapp\\src\\main\\java\\com\\gyamjoDechen\\controller\\data.csv"; // Default file path
 
     @Override
@@ -59,22 +60,26 @@ public class StartUI extends Application {
         startButton.setStyle("-fx-background-color: #00008B; -fx-text-fill: white; -fx-font-size: 16px;");
         startButton.setOnAction(event -> {
             filePath = filePathField.getText(); // Get file path from text field
+            String dataFilePath = filePath; // Copy handed to the training thread
             statusLabel.setText("Training model... Please wait!"); // Update status label
 
             // Run the model training process in a separate thread to avoid blocking the UI
             new Thread(() -> {
                 try {
-                    // Load and clean the dataset, then train the model
+                    // Check the saved model against the dataset header, then load and clean the dataset once it is needed
                     DataManager dataManager = new DataManager();
-                    dataset = dataManager.loadData(filePath); // Load dataset from file
-                    dataset = dataManager.cleanData(dataset); // Clean the data
-                    randomForest = new RandomForest(10); // Initialize RandomForest with 10 trees
-                    randomForest.train(dataset, "Risk Rating"); // Train the model
+                    FeatureSchema schema = dataManager.loadSchema(dataFilePath, "Risk Rating"); // Reads only the header row
+                    Supplier<FeatureMatrix> data = dataManager.cleanedMatrix(dataFilePath, "Risk Rating"); // Loaded and cleaned on first use
+                    ModelManager modelManager = new ModelManager();
+                    modelManager.setPredictionCacheSize(10000); // Applicants re-scored from several screens hit the cache
+                    ModelHolder modelHolder = new ModelHolder(modelManager.loadOrTrain(dataFilePath, schema, data, 10)); // Load the saved model or train one with 10 trees
+                    modelHolder.setTrainer(() -> modelManager.trainAndSave(dataFilePath, data.get(), 10)); // Retraining builds a fresh forest in the background
+                    RecommendationManager recommendationManager = RecommendationManager.forLowRiskProfiles(data.get().toRows(), "Risk Rating"); // Role models for the recommendation screens, summarised once
 
-                    // Update status label and navigate to the next UI after training
+                    // Update status label and navigate to the next UI after training; runLater hands the objects to the UI thread safely
                     Platform.runLater(() -> {
                         statusLabel.setText("Training complete!"); // Update training status
-                        navigateToInputUI(primaryStage); // Navigate to the next screen
+                        navigateToInputUI(primaryStage, modelHolder, recommendationManager); // Navigate to the next screen
                     });
                 } catch (Exception e) {
                     // Display error message if training fails
@@ -94,9 +99,9 @@ public class StartUI extends Application {
     }
 
     // Method to navigate to the next UI after training the model
-    private void navigateToInputUI(Stage primaryStage) {
-        // Pass the trained model and dataset to the next UI screen
-        new InputUI(randomForest, dataset).start(primaryStage); // Start the next UI window
+    private void navigateToInputUI(Stage primaryStage, ModelHolder modelHolder, RecommendationManager recommendationManager) {
+        // Pass the serving model and role models to the next UI screen
+        new InputUI(modelHolder, recommendationManager).start(primaryStage); // Start the next UI window
     }
 
     // Main method to launch the JavaFX application